@@ -0,0 +1,44 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the benchmarks through the JMH command line, writing the results as JSON unless another result format is
+ * given by <code>-rf</code>. The results go to <code>jmh-result.json</code>, unless another file is given by
+ * <code>-rff</code>, and can be compared between releases.
+ *
+ * @author Marius Bogoevici
+ */
+public class BenchmarkRunner
+{
+   public static void main(String[] args) throws Exception
+   {
+      List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+      if (!arguments.contains("-rf"))
+      {
+         arguments.addAll(0, Arrays.asList("-rf", "json"));
+      }
+      Main.main(arguments.toArray(new String[arguments.size()]));
+   }
+}
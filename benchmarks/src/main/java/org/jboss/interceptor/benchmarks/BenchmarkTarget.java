@@ -0,0 +1,36 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.benchmarks;
+
+/**
+ * The intercepted class, with a method taking primitive arguments and one taking reference arguments.
+ *
+ * @author Marius Bogoevici
+ */
+public class BenchmarkTarget
+{
+   public int add(int x, int y)
+   {
+      return x + y;
+   }
+
+   public String concat(String x, String y)
+   {
+      return x.concat(y);
+   }
+}
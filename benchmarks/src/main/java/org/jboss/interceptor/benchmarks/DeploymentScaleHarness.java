@@ -0,0 +1,245 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.interceptor.builder.InterceptionModelBuilder;
+import org.jboss.interceptor.proxy.DefaultInvocationContextFactory;
+import org.jboss.interceptor.proxy.DirectClassInterceptorInstantiator;
+import org.jboss.interceptor.proxy.InterceptorProxyCreatorImpl;
+import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
+import org.jboss.interceptor.spi.model.InterceptionModel;
+
+/**
+ * Measures how the setup of interception scales with the size of a deployment, on synthetic deployments (see
+ * {@link SyntheticClasses}) of increasing sizes. For each size, it reports the time taken by reading the interceptor
+ * metadata, building the interception models, creating the proxies and performing the first call on each of them,
+ * as well as the heap and the metaspace retained by all of these.
+ *
+ * The arguments are given as <code>name=value</code> pairs, all optional:
+ * <ul>
+ * <li><code>sizes</code>: the numbers of target classes, separated by commas (default <code>100,1000,10000</code>);</li>
+ * <li><code>depth</code>: the depth of the hierarchy of each target class (default 3);</li>
+ * <li><code>methods</code>: the number of methods declared by each class of a hierarchy (default 10);</li>
+ * <li><code>interceptors</code>: the number of interceptors of each target class (default 3);</li>
+ * <li><code>runs</code>: the number of runs for each size, each on classes loaded anew, of which the fastest is
+ * reported (default 3).</li>
+ * </ul>
+ *
+ * Unlike the JMH benchmarks, these are cold measurements, so the first sizes also pay for the warmup of the JIT
+ * compiler. Running a single size per JVM gives the most representative figures.
+ *
+ * @author Marius Bogoevici
+ */
+public class DeploymentScaleHarness
+{
+   private static final String ROW_FORMAT = "%8s %8s %14s %14s %14s %16s %10s %15s%n";
+
+   // keeps the deployment reachable while its memory is measured
+   private static volatile Object retained;
+
+   public static void main(String[] args) throws Exception
+   {
+      Map<String, String> arguments = new HashMap<String, String>();
+      arguments.put("sizes", "100,1000,10000");
+      arguments.put("depth", "3");
+      arguments.put("methods", "10");
+      arguments.put("interceptors", "3");
+      arguments.put("runs", "3");
+      for (String argument : args)
+      {
+         int separator = argument.indexOf('=');
+         if (separator < 0 || !arguments.containsKey(argument.substring(0, separator)))
+         {
+            throw new IllegalArgumentException("Unknown argument: " + argument + ", expecting name=value with a name among " + arguments.keySet());
+         }
+         arguments.put(argument.substring(0, separator), argument.substring(separator + 1));
+      }
+      int hierarchyDepth = Integer.parseInt(arguments.get("depth"));
+      int methodCount = Integer.parseInt(arguments.get("methods"));
+      int interceptorCount = Integer.parseInt(arguments.get("interceptors"));
+      int runs = Integer.parseInt(arguments.get("runs"));
+
+      System.out.printf("Hierarchy depth %d, %d methods per class, %d interceptors per target class%n", hierarchyDepth, methodCount, interceptorCount);
+      System.out.printf(ROW_FORMAT, "Classes", "Files", "Metadata (ms)", "Models (ms)", "Proxies (ms)", "First call (us)", "Heap (MB)", "Metaspace (MB)");
+      for (String size : arguments.get("sizes").split(","))
+      {
+         SyntheticClasses syntheticClasses = new SyntheticClasses(Integer.parseInt(size.trim()), hierarchyDepth, methodCount, interceptorCount);
+         Measurement fastest = null;
+         for (int run = 0; run < runs; run++)
+         {
+            Measurement measurement = measure(syntheticClasses);
+            fastest = fastest == null || measurement.getTotalTime() < fastest.getTotalTime() ? measurement : fastest;
+         }
+         System.out.printf(ROW_FORMAT, syntheticClasses.getTargetClassNames().size(), syntheticClasses.getClassFileCount(),
+               toMillis(fastest.metadataReadingTime), toMillis(fastest.modelBuildingTime), toMillis(fastest.proxyCreationTime),
+               String.format("%.1f", fastest.firstCallTime / 1000.0 / syntheticClasses.getTargetClassNames().size()),
+               toMegabytes(fastest.heapUsage), fastest.metaspaceUsage < 0 ? "n/a" : toMegabytes(fastest.metaspaceUsage));
+      }
+   }
+
+   private static Measurement measure(SyntheticClasses syntheticClasses) throws Exception
+   {
+      // the classes are loaded beforehand, so that the time of class loading and verification is not measured
+      ClassLoader classLoader = syntheticClasses.newClassLoader();
+      List<Class<?>> targetClasses = loadClasses(syntheticClasses.getTargetClassNames(), classLoader);
+      List<Class<?>> interceptorClasses = loadClasses(syntheticClasses.getInterceptorClassNames(), classLoader);
+      Map<String, Class<?>> interceptorClassesByName = new HashMap<String, Class<?>>();
+      for (Class<?> interceptorClass : interceptorClasses)
+      {
+         interceptorClassesByName.put(interceptorClass.getName(), interceptorClass);
+      }
+      Method[] targetMethods = new Method[targetClasses.size()];
+      for (int i = 0; i < targetMethods.length; i++)
+      {
+         targetMethods[i] = targetClasses.get(i).getMethod(syntheticClasses.getTargetMethodName(), int.class);
+      }
+      Measurement measurement = new Measurement();
+      long heapUsage = getHeapUsage();
+      long metaspaceUsage = getMetaspaceUsage();
+
+      long start = System.nanoTime();
+      DefaultMetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+      for (Class<?> interceptorClass : interceptorClasses)
+      {
+         metadataCachingReader.getInterceptorMetadata(interceptorClass);
+      }
+      for (Class<?> targetClass : targetClasses)
+      {
+         metadataCachingReader.getTargetClassInterceptorMetadata(targetClass);
+      }
+      measurement.metadataReadingTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      List<InterceptionModel<ClassMetadata<?>, ?>> interceptionModels = new ArrayList<InterceptionModel<ClassMetadata<?>, ?>>(targetClasses.size());
+      for (int i = 0; i < targetClasses.size(); i++)
+      {
+         InterceptionModelBuilder<ClassMetadata<?>, ?> builder = InterceptionModelBuilder.<ClassMetadata<?>>newBuilderFor(metadataCachingReader.getClassMetadata(targetClasses.get(i)));
+         List<String> interceptorClassNames = syntheticClasses.getInterceptorClassNames(i);
+         if (!interceptorClassNames.isEmpty())
+         {
+            InterceptorMetadata<?>[] interceptors = new InterceptorMetadata<?>[interceptorClassNames.size()];
+            for (int j = 0; j < interceptors.length; j++)
+            {
+               interceptors[j] = metadataCachingReader.getInterceptorMetadata(interceptorClassesByName.get(interceptorClassNames.get(j)));
+            }
+            builder.interceptAll().with(interceptors);
+         }
+         interceptionModels.add(builder.build());
+      }
+      measurement.modelBuildingTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      Object[] proxies = new Object[targetClasses.size()];
+      for (int i = 0; i < proxies.length; i++)
+      {
+         InterceptorProxyCreatorImpl interceptorProxyCreator = new InterceptorProxyCreatorImpl(new DirectClassInterceptorInstantiator(),
+               new DefaultInvocationContextFactory(), interceptionModels.get(i));
+         interceptorProxyCreator.setMetadataCachingReader(metadataCachingReader);
+         proxies[i] = interceptorProxyCreator.createSubclassingProxy(metadataCachingReader.getClassMetadata(targetClasses.get(i)), new Class<?>[0], new Object[0]);
+      }
+      measurement.proxyCreationTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for (int i = 0; i < proxies.length; i++)
+      {
+         targetMethods[i].invoke(proxies[i], i);
+      }
+      measurement.firstCallTime = System.nanoTime() - start;
+
+      retained = new Object[]{metadataCachingReader, interceptionModels, proxies};
+      measurement.heapUsage = getHeapUsage() - heapUsage;
+      measurement.metaspaceUsage = metaspaceUsage < 0 ? -1 : getMetaspaceUsage() - metaspaceUsage;
+      retained = null;
+      return measurement;
+   }
+
+   private static List<Class<?>> loadClasses(List<String> classNames, ClassLoader classLoader) throws ClassNotFoundException
+   {
+      List<Class<?>> classes = new ArrayList<Class<?>>(classNames.size());
+      for (String className : classNames)
+      {
+         classes.add(Class.forName(className, true, classLoader));
+      }
+      return classes;
+   }
+
+   private static long getHeapUsage()
+   {
+      // several collections, so that the objects released by finalization are collected as well
+      for (int i = 0; i < 3; i++)
+      {
+         System.gc();
+      }
+      return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+   }
+
+   /**
+    * @return the metaspace used, or -1 on JVMs without a metaspace
+    */
+   private static long getMetaspaceUsage()
+   {
+      for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans())
+      {
+         if ("Metaspace".equals(memoryPool.getName()))
+         {
+            return memoryPool.getUsage().getUsed();
+         }
+      }
+      return -1;
+   }
+
+   private static String toMillis(long nanos)
+   {
+      return String.format("%.1f", nanos / 1000000.0);
+   }
+
+   private static String toMegabytes(long bytes)
+   {
+      return String.format("%.1f", bytes / (1024.0 * 1024.0));
+   }
+
+   private static class Measurement
+   {
+      long metadataReadingTime;
+
+      long modelBuildingTime;
+
+      long proxyCreationTime;
+
+      long firstCallTime;
+
+      long heapUsage;
+
+      long metaspaceUsage;
+
+      long getTotalTime()
+      {
+         return metadataReadingTime + modelBuildingTime + proxyCreationTime + firstCallTime;
+      }
+   }
+}
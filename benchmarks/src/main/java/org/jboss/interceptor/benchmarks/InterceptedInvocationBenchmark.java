@@ -0,0 +1,82 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Calls through subclassing and delegating proxies, intercepted by chains of interceptors which only proceed.
+ * A chain of length 0 measures the cost of the proxy alone.
+ *
+ * @author Marius Bogoevici
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class InterceptedInvocationBenchmark
+{
+   @Param({"SUBCLASSING", "DELEGATING"})
+   public ProxyKind proxyKind;
+
+   @Param({"0", "1", "3", "10"})
+   public int chainLength;
+
+   private BenchmarkTarget proxy;
+
+   private int x = 1;
+
+   private int y = 2;
+
+   private String s = "x";
+
+   private String t = "y";
+
+   @Setup
+   public void createProxy() throws Exception
+   {
+      proxy = proxyKind.createProxy(BenchmarkTarget.class, Arrays.copyOf(PassThroughInterceptor.CHAIN, chainLength));
+   }
+
+   @Benchmark
+   public int primitiveArguments()
+   {
+      return proxy.add(x, y);
+   }
+
+   @Benchmark
+   public String referenceArguments()
+   {
+      return proxy.concat(s, t);
+   }
+}
@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Calls intercepted by an around-invoke method of the target class, and by an interceptor overriding the
+ * parameters of the invocation, to be compared with the chains of length 0 and 1 of {@link InterceptedInvocationBenchmark}.
+ *
+ * @author Marius Bogoevici
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class InterceptionFeatureBenchmark
+{
+   @Param({"SUBCLASSING", "DELEGATING"})
+   public ProxyKind proxyKind;
+
+   private BenchmarkTarget selfInterceptingProxy;
+
+   private BenchmarkTarget parameterOverridingProxy;
+
+   private int x = 1;
+
+   private int y = 2;
+
+   private String s = "x";
+
+   private String t = "y";
+
+   @Setup
+   public void createProxies() throws Exception
+   {
+      selfInterceptingProxy = proxyKind.createProxy(SelfInterceptingTarget.class);
+      parameterOverridingProxy = proxyKind.createProxy(BenchmarkTarget.class, ParameterOverridingInterceptor.class);
+   }
+
+   @Benchmark
+   public int targetClassAroundInvokePrimitiveArguments()
+   {
+      return selfInterceptingProxy.add(x, y);
+   }
+
+   @Benchmark
+   public String targetClassAroundInvokeReferenceArguments()
+   {
+      return selfInterceptingProxy.concat(s, t);
+   }
+
+   @Benchmark
+   public int parameterOverridingPrimitiveArguments()
+   {
+      return parameterOverridingProxy.add(x, y);
+   }
+
+   @Benchmark
+   public String parameterOverridingReferenceArguments()
+   {
+      return parameterOverridingProxy.concat(s, t);
+   }
+}
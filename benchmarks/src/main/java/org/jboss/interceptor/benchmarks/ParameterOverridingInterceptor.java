@@ -0,0 +1,38 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.benchmarks;
+
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.InvocationContext;
+
+/**
+ * An interceptor which replaces the parameters of the invocation with a copy of them, so that the benchmarks
+ * measure the cost of {@link InvocationContext#setParameters(Object[])}, including the boxing and the
+ * validation of the parameters.
+ *
+ * @author Marius Bogoevici
+ */
+public class ParameterOverridingInterceptor
+{
+   @AroundInvoke
+   public Object aroundInvoke(InvocationContext invocationContext) throws Exception
+   {
+      invocationContext.setParameters(invocationContext.getParameters().clone());
+      return invocationContext.proceed();
+   }
+}
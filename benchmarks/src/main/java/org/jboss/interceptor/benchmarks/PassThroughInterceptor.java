@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.benchmarks;
+
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.InvocationContext;
+
+/**
+ * An interceptor which only proceeds, so that the benchmarks measure the cost of the interception itself.
+ * Chains of several interceptors are built from its subclasses (see {@link #CHAIN}), since an interceptor
+ * class can only appear once in a chain.
+ *
+ * @author Marius Bogoevici
+ */
+public class PassThroughInterceptor
+{
+   public static final Class<?>[] CHAIN = {
+         PassThroughInterceptor1.class,
+         PassThroughInterceptor2.class,
+         PassThroughInterceptor3.class,
+         PassThroughInterceptor4.class,
+         PassThroughInterceptor5.class,
+         PassThroughInterceptor6.class,
+         PassThroughInterceptor7.class,
+         PassThroughInterceptor8.class,
+         PassThroughInterceptor9.class,
+         PassThroughInterceptor10.class};
+
+   @AroundInvoke
+   public Object aroundInvoke(InvocationContext invocationContext) throws Exception
+   {
+      return invocationContext.proceed();
+   }
+
+   public static class PassThroughInterceptor1 extends PassThroughInterceptor
+   {
+   }
+
+   public static class PassThroughInterceptor2 extends PassThroughInterceptor
+   {
+   }
+
+   public static class PassThroughInterceptor3 extends PassThroughInterceptor
+   {
+   }
+
+   public static class PassThroughInterceptor4 extends PassThroughInterceptor
+   {
+   }
+
+   public static class PassThroughInterceptor5 extends PassThroughInterceptor
+   {
+   }
+
+   public static class PassThroughInterceptor6 extends PassThroughInterceptor
+   {
+   }
+
+   public static class PassThroughInterceptor7 extends PassThroughInterceptor
+   {
+   }
+
+   public static class PassThroughInterceptor8 extends PassThroughInterceptor
+   {
+   }
+
+   public static class PassThroughInterceptor9 extends PassThroughInterceptor
+   {
+   }
+
+   public static class PassThroughInterceptor10 extends PassThroughInterceptor
+   {
+   }
+}
@@ -0,0 +1,119 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.interceptor.builder.InterceptionModelBuilder;
+import org.jboss.interceptor.proxy.DefaultInvocationContextFactory;
+import org.jboss.interceptor.proxy.DirectClassInterceptorInstantiator;
+import org.jboss.interceptor.proxy.InterceptorProxyCreatorImpl;
+import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
+import org.jboss.interceptor.reader.cache.MetadataCachingReader;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
+import org.jboss.interceptor.spi.model.InterceptionModel;
+
+/**
+ * The ways of creating an intercepted instance.
+ *
+ * @author Marius Bogoevici
+ */
+public enum ProxyKind
+{
+   /**
+    * An instance of a subclass of the target class, see {@link InterceptorProxyCreatorImpl#createSubclassingProxy(ClassMetadata, Class[], Object[])}.
+    */
+   SUBCLASSING
+   {
+      @Override
+      <T> T createProxy(InterceptorProxyCreatorImpl interceptorProxyCreator, ClassMetadata<T> targetClass) throws Exception
+      {
+         return interceptorProxyCreator.createSubclassingProxy(targetClass, new Class<?>[0], new Object[0]);
+      }
+   },
+
+   /**
+    * A proxy forwarding to a separate target instance, see {@link InterceptorProxyCreatorImpl#createDelegatingProxy(Object, ClassMetadata)}.
+    */
+   DELEGATING
+   {
+      @Override
+      <T> T createProxy(InterceptorProxyCreatorImpl interceptorProxyCreator, ClassMetadata<T> targetClass) throws Exception
+      {
+         return interceptorProxyCreator.createDelegatingProxy(targetClass.getJavaClass().newInstance(), targetClass);
+      }
+   };
+
+   abstract <T> T createProxy(InterceptorProxyCreatorImpl interceptorProxyCreator, ClassMetadata<T> targetClass) throws Exception;
+
+   /**
+    * Creates an intercepted instance of the given class, whose methods are intercepted by the given interceptors.
+    */
+   public <T> T createProxy(Class<T> targetClass, Class<?>... interceptorClasses) throws Exception
+   {
+      return createProxies(targetClass, 1, interceptorClasses).get(0);
+   }
+
+   /**
+    * Creates intercepted instances of the given class, whose methods are intercepted by the given interceptors. The
+    * instances share their {@link InterceptorProxyCreatorImpl}, and so their proxy class and interception chains.
+    */
+   public <T> List<T> createProxies(Class<T> targetClass, int count, Class<?>... interceptorClasses) throws Exception
+   {
+      MetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+      ClassMetadata<T> targetClassMetadata = metadataCachingReader.getClassMetadata(targetClass);
+      InterceptionModelBuilder<ClassMetadata<?>, ?> builder = InterceptionModelBuilder.<ClassMetadata<?>>newBuilderFor(targetClassMetadata);
+      if (interceptorClasses.length > 0)
+      {
+         InterceptorMetadata<?>[] interceptors = new InterceptorMetadata<?>[interceptorClasses.length];
+         for (int i = 0; i < interceptorClasses.length; i++)
+         {
+            interceptors[i] = metadataCachingReader.getInterceptorMetadata(interceptorClasses[i]);
+         }
+         builder.interceptAll().with(interceptors);
+      }
+      InterceptorProxyCreatorImpl interceptorProxyCreator = newInterceptorProxyCreator(builder.build(), metadataCachingReader);
+      List<T> proxies = new ArrayList<T>(count);
+      for (int i = 0; i < count; i++)
+      {
+         proxies.add(createProxy(interceptorProxyCreator, targetClassMetadata));
+      }
+      return proxies;
+   }
+
+   /**
+    * Creates an intercepted instance of the given class, as described by the given interception model, whose
+    * interceptors have been read by the given reader.
+    */
+   public <T> T createProxy(ClassMetadata<T> targetClass, InterceptionModel<ClassMetadata<?>, ?> interceptionModel,
+                            MetadataCachingReader metadataCachingReader) throws Exception
+   {
+      return createProxy(newInterceptorProxyCreator(interceptionModel, metadataCachingReader), targetClass);
+   }
+
+   private static InterceptorProxyCreatorImpl newInterceptorProxyCreator(InterceptionModel<ClassMetadata<?>, ?> interceptionModel,
+                                                                         MetadataCachingReader metadataCachingReader)
+   {
+      InterceptorProxyCreatorImpl interceptorProxyCreator = new InterceptorProxyCreatorImpl(new DirectClassInterceptorInstantiator(),
+            new DefaultInvocationContextFactory(), interceptionModel);
+      interceptorProxyCreator.setMetadataCachingReader(metadataCachingReader);
+      return interceptorProxyCreator;
+   }
+}
@@ -0,0 +1,207 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.annotation.Annotation;
+
+/**
+ * Generates the class files of a synthetic deployment, made of target classes intercepted by interceptor classes.
+ *
+ * Each target class is the leaf of its own hierarchy of the given depth, in which every class declares the given number
+ * of methods. The interceptor classes declare an around-invoke method which only proceeds, and each target class is
+ * intercepted by the given number of them, taken in turns from a pool ten times larger, so that the interceptor classes
+ * are shared between target classes as in a real deployment.
+ *
+ * The class files are generated once, and can be loaded any number of times by new class loaders (see
+ * {@link #newClassLoader()}), so that each run of a benchmark reads and proxies classes that were never seen before.
+ *
+ * @author Marius Bogoevici
+ */
+public class SyntheticClasses
+{
+   private static final String PACKAGE_NAME = "org.jboss.interceptor.benchmarks.synthetic.";
+
+   private final int hierarchyDepth;
+
+   private final int methodCount;
+
+   private final int interceptorsPerClass;
+
+   private final List<String> targetClassNames = new ArrayList<String>();
+
+   private final List<String> interceptorClassNames = new ArrayList<String>();
+
+   private final Map<String, byte[]> classFiles = new LinkedHashMap<String, byte[]>();
+
+   public SyntheticClasses(int targetClassCount, int hierarchyDepth, int methodCount, int interceptorCount)
+   {
+      if (targetClassCount < 1 || hierarchyDepth < 1 || methodCount < 1 || interceptorCount < 0)
+      {
+         throw new IllegalArgumentException("Invalid synthetic deployment: " + targetClassCount + " classes, hierarchy depth "
+               + hierarchyDepth + ", " + methodCount + " methods, " + interceptorCount + " interceptors");
+      }
+      this.hierarchyDepth = hierarchyDepth;
+      this.methodCount = methodCount;
+      this.interceptorsPerClass = interceptorCount;
+      ClassPool classPool = new ClassPool(true);
+      classPool.appendClassPath(new LoaderClassPath(SyntheticClasses.class.getClassLoader()));
+      try
+      {
+         for (int i = 0; i < interceptorCount * 10; i++)
+         {
+            String interceptorClassName = PACKAGE_NAME + "Interceptor" + i;
+            classFiles.put(interceptorClassName, generateInterceptorClass(classPool, interceptorClassName));
+            interceptorClassNames.add(interceptorClassName);
+         }
+         for (int i = 0; i < targetClassCount; i++)
+         {
+            CtClass superclass = classPool.get(Object.class.getName());
+            for (int level = 0; level < hierarchyDepth; level++)
+            {
+               String className = PACKAGE_NAME + "Target" + i + (level == hierarchyDepth - 1 ? "" : "_Superclass" + level);
+               CtClass ctClass = generateTargetClass(classPool, className, superclass, level);
+               classFiles.put(className, ctClass.toBytecode());
+               superclass = ctClass;
+            }
+            targetClassNames.add(superclass.getName());
+         }
+      }
+      catch (Exception e)
+      {
+         throw new IllegalStateException("Cannot generate the synthetic classes", e);
+      }
+   }
+
+   private static byte[] generateInterceptorClass(ClassPool classPool, String className) throws Exception
+   {
+      CtClass ctClass = classPool.makeClass(className);
+      ctClass.addConstructor(CtNewConstructor.defaultConstructor(ctClass));
+      CtMethod aroundInvoke = CtNewMethod.make("public Object aroundInvoke(javax.interceptor.InvocationContext invocationContext) throws Exception"
+            + " { return invocationContext.proceed(); }", ctClass);
+      annotate(aroundInvoke, "javax.interceptor.AroundInvoke");
+      ctClass.addMethod(aroundInvoke);
+      byte[] classFile = ctClass.toBytecode();
+      ctClass.detach();
+      return classFile;
+   }
+
+   private CtClass generateTargetClass(ClassPool classPool, String className, CtClass superclass, int level)
+         throws CannotCompileException, NotFoundException
+   {
+      CtClass ctClass = classPool.makeClass(className, superclass);
+      ctClass.addConstructor(CtNewConstructor.defaultConstructor(ctClass));
+      for (int j = 0; j < methodCount; j++)
+      {
+         ctClass.addMethod(CtNewMethod.make("public int " + getMethodName(level, j) + "(int x) { return x + " + j + "; }", ctClass));
+      }
+      return ctClass;
+   }
+
+   private static void annotate(CtMethod method, String annotationClassName)
+   {
+      ConstPool constPool = method.getMethodInfo().getConstPool();
+      AnnotationsAttribute annotationsAttribute = new AnnotationsAttribute(constPool, AnnotationsAttribute.visibleTag);
+      annotationsAttribute.addAnnotation(new Annotation(annotationClassName, constPool));
+      method.getMethodInfo().addAttribute(annotationsAttribute);
+   }
+
+   private static String getMethodName(int level, int index)
+   {
+      return "method" + level + "_" + index;
+   }
+
+   /**
+    * @return the name of a method declared by the target classes themselves, rather than by their superclasses
+    */
+   public String getTargetMethodName()
+   {
+      return getMethodName(hierarchyDepth - 1, 0);
+   }
+
+   public List<String> getTargetClassNames()
+   {
+      return Collections.unmodifiableList(targetClassNames);
+   }
+
+   public List<String> getInterceptorClassNames()
+   {
+      return Collections.unmodifiableList(interceptorClassNames);
+   }
+
+   /**
+    * @return the names of the interceptor classes intercepting the target class of the given index
+    */
+   public List<String> getInterceptorClassNames(int targetClassIndex)
+   {
+      List<String> classNames = new ArrayList<String>(interceptorsPerClass);
+      for (int i = 0; i < interceptorsPerClass; i++)
+      {
+         classNames.add(interceptorClassNames.get((targetClassIndex * interceptorsPerClass + i) % interceptorClassNames.size()));
+      }
+      return classNames;
+   }
+
+   public int getClassFileCount()
+   {
+      return classFiles.size();
+   }
+
+   /**
+    * @return a class loader defining the synthetic classes anew
+    */
+   public ClassLoader newClassLoader()
+   {
+      return newClassLoader(classFiles);
+   }
+
+   /**
+    * @return a class loader defining the classes of the given class files, by class name
+    */
+   static ClassLoader newClassLoader(final Map<String, byte[]> classFiles)
+   {
+      return new ClassLoader(SyntheticClasses.class.getClassLoader())
+      {
+         @Override
+         protected Class<?> findClass(String name) throws ClassNotFoundException
+         {
+            byte[] classFile = classFiles.get(name);
+            if (classFile == null)
+            {
+               throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, classFile, 0, classFile.length);
+         }
+      };
+   }
+}
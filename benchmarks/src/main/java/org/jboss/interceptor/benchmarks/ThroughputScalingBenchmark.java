@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Calls intercepted by a chain of three interceptors from several threads, either all through the same proxy, or each
+ * through its own proxy of the same class, measuring the throughput and the distribution of the latency, whose
+ * percentiles show contention in the interception layer.
+ *
+ * The number of threads is set by the JMH <code>-t</code> option, or swept by {@link ThroughputScalingRunner}.
+ *
+ * @author Marius Bogoevici
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThroughputScalingBenchmark
+{
+   /**
+    * The maximum number of threads calling their own proxy.
+    */
+   public static final int MAX_THREADS = 256;
+
+   @State(Scope.Benchmark)
+   public static class Proxies
+   {
+      @Param({"SUBCLASSING", "DELEGATING"})
+      public ProxyKind proxyKind;
+
+      private BenchmarkTarget sharedProxy;
+
+      private List<BenchmarkTarget> threadProxies;
+
+      private final AtomicInteger nextThreadProxy = new AtomicInteger();
+
+      @Setup
+      public void createProxies() throws Exception
+      {
+         threadProxies = proxyKind.createProxies(BenchmarkTarget.class, MAX_THREADS + 1, Arrays.copyOf(PassThroughInterceptor.CHAIN, 3));
+         sharedProxy = threadProxies.remove(MAX_THREADS);
+      }
+
+      BenchmarkTarget nextThreadProxy()
+      {
+         int index = nextThreadProxy.getAndIncrement();
+         if (index >= MAX_THREADS)
+         {
+            throw new IllegalStateException("More than " + MAX_THREADS + " threads");
+         }
+         return threadProxies.get(index);
+      }
+   }
+
+   @State(Scope.Thread)
+   public static class ThreadState
+   {
+      private BenchmarkTarget threadProxy;
+
+      private int x = 1;
+
+      private int y = 2;
+   }
+
+   @Benchmark
+   public int sharedProxy(Proxies proxies, ThreadState threadState)
+   {
+      return proxies.sharedProxy.add(threadState.x, threadState.y);
+   }
+
+   @Benchmark
+   public int proxyPerThread(Proxies proxies, ThreadState threadState)
+   {
+      BenchmarkTarget threadProxy = threadState.threadProxy;
+      if (threadProxy == null)
+      {
+         threadProxy = threadState.threadProxy = proxies.nextThreadProxy();
+      }
+      return threadProxy.add(threadState.x, threadState.y);
+   }
+}
@@ -0,0 +1,81 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs {@link ThroughputScalingBenchmark} for increasing numbers of threads, and prints the throughput and the 99th
+ * percentile of the latency at each of them. The results of each number of threads are also written as JSON, to
+ * <code>jmh-scaling-&lt;threads&gt;.json</code>.
+ *
+ * The numbers of threads can be given as the argument, separated by commas. They default to the powers of two up to
+ * 64, and 48, the number of cores of the application servers the library commonly runs on.
+ *
+ * @author Marius Bogoevici
+ */
+public class ThroughputScalingRunner
+{
+   private static final String ROW_FORMAT = "%8s %-60s %-12s %20s %10s%n";
+
+   public static void main(String[] args) throws Exception
+   {
+      String threadCounts = args.length > 0 ? args[0] : "1,2,4,8,16,32,48,64";
+      System.out.printf(ROW_FORMAT, "Threads", "Benchmark", "Proxy kind", "Throughput (ops/us)", "p99 (us)");
+      for (String threadCount : threadCounts.split(","))
+      {
+         int threads = Integer.parseInt(threadCount.trim());
+         OptionsBuilder options = new OptionsBuilder();
+         options.include(ThroughputScalingBenchmark.class.getName());
+         options.threads(threads);
+         options.resultFormat(ResultFormatType.JSON);
+         options.result("jmh-scaling-" + threads + ".json");
+         // the throughput and the latency of each benchmark, which are measured separately
+         Map<String, Double> throughputs = new LinkedHashMap<String, Double>();
+         Map<String, Double> latencies = new LinkedHashMap<String, Double>();
+         for (RunResult runResult : new Runner(options.build()).run())
+         {
+            BenchmarkParams params = runResult.getParams();
+            String key = params.getBenchmark() + " " + params.getParam("proxyKind");
+            if (params.getMode() == Mode.Throughput)
+            {
+               throughputs.put(key, runResult.getPrimaryResult().getScore());
+            }
+            else if (params.getMode() == Mode.SampleTime)
+            {
+               latencies.put(key, runResult.getPrimaryResult().getStatistics().getPercentile(99));
+            }
+         }
+         for (Map.Entry<String, Double> throughput : throughputs.entrySet())
+         {
+            String[] benchmarkAndProxyKind = throughput.getKey().split(" ");
+            Double latency = latencies.get(throughput.getKey());
+            System.out.printf(ROW_FORMAT, threads, benchmarkAndProxyKind[0], benchmarkAndProxyKind[1],
+                  String.format("%.2f", throughput.getValue()), latency == null ? "n/a" : String.format("%.3f", latency));
+         }
+      }
+   }
+}
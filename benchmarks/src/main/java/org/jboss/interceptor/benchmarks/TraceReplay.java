@@ -0,0 +1,361 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.benchmarks;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+
+import org.jboss.interceptor.builder.InterceptionModelBuilder;
+import org.jboss.interceptor.proxy.InvocationTrace;
+import org.jboss.interceptor.proxy.InvocationTraceRecorder;
+import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
+import org.jboss.interceptor.reader.cache.MetadataCachingReader;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
+
+/**
+ * Replays the calls of an invocation trace (see {@link InvocationTraceRecorder}) against proxies, without the classes of
+ * the application which recorded it.
+ *
+ * Each class declaring traced methods is replaced by a generated class, declaring a method for each of its traced
+ * methods, which keeps the primitive parameter and return types of the original method and replaces the others by
+ * {@link Object}, and only returns a default value. Each method is intercepted by as many interceptors which only
+ * proceed (see {@link PassThroughInterceptor}) as the longest chain recorded for it, up to
+ * {@link PassThroughInterceptor#CHAIN the available ones}. The calls are replayed in their recorded order, through a
+ * single proxy of each class, with arguments of the recorded types: boxed zeros, empty strings and arrays, and plain
+ * objects for the other types.
+ *
+ * The replay therefore measures the interception of the recorded mix of methods, signatures and chain lengths, but
+ * neither the work of the original methods and interceptors, nor the timing of the recorded calls. The calls are made
+ * through reflection, whose cost is the same for every version of the library.
+ *
+ * Run standalone, it replays a trace file a given number of times through each kind of proxy, and prints the time
+ * per call of the fastest round: <code>TraceReplay &lt;trace file&gt; [rounds]</code>. See also
+ * {@link TraceReplayBenchmark}.
+ *
+ * @author Marius Bogoevici
+ */
+public class TraceReplay
+{
+   private static final String PACKAGE_NAME = "org.jboss.interceptor.benchmarks.replay.";
+
+   private final Object[] targets;
+
+   private final Method[] methods;
+
+   private final Object[][] arguments;
+
+   private final long recordedDuration;
+
+   public TraceReplay(InvocationTrace trace, ProxyKind proxyKind) throws Exception
+   {
+      List<InvocationTrace.Call> calls = trace.getCalls();
+      if (calls.isEmpty())
+      {
+         throw new IllegalArgumentException("The invocation trace holds no calls");
+      }
+      Map<InvocationTrace.TracedMethod, Integer> chainLengths = new HashMap<InvocationTrace.TracedMethod, Integer>();
+      long recordedDuration = 0;
+      for (InvocationTrace.Call call : calls)
+      {
+         Integer chainLength = chainLengths.get(call.getMethod());
+         chainLengths.put(call.getMethod(), Math.max(chainLength == null ? 0 : chainLength, call.getChainLength()));
+         recordedDuration += call.getDuration();
+      }
+      this.recordedDuration = recordedDuration;
+
+      // the generated class name of each traced class, and the generated method name of each traced method
+      Map<String, String> classNames = new LinkedHashMap<String, String>();
+      Map<InvocationTrace.TracedMethod, String> methodNames = new HashMap<InvocationTrace.TracedMethod, String>();
+      for (InvocationTrace.TracedMethod tracedMethod : trace.getMethods())
+      {
+         if (!classNames.containsKey(tracedMethod.getDeclaringClassName()))
+         {
+            classNames.put(tracedMethod.getDeclaringClassName(), PACKAGE_NAME + "ReplayedClass" + classNames.size());
+         }
+         // overloaded methods may have the same parameter types once replaced
+         methodNames.put(tracedMethod, tracedMethod.getName() + "_" + methodNames.size());
+      }
+      ClassLoader classLoader = SyntheticClasses.newClassLoader(generateClasses(trace.getMethods(), classNames, methodNames));
+
+      MetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+      InterceptorMetadata<?>[] interceptors = new InterceptorMetadata<?>[PassThroughInterceptor.CHAIN.length];
+      for (int i = 0; i < interceptors.length; i++)
+      {
+         interceptors[i] = metadataCachingReader.getInterceptorMetadata(PassThroughInterceptor.CHAIN[i]);
+      }
+      Map<InvocationTrace.TracedMethod, Method> replayedMethods = new HashMap<InvocationTrace.TracedMethod, Method>();
+      Map<String, Object> proxies = new HashMap<String, Object>();
+      for (Map.Entry<String, String> className : classNames.entrySet())
+      {
+         Class<?> replayedClass = classLoader.loadClass(className.getValue());
+         ClassMetadata<?> replayedClassMetadata = metadataCachingReader.getClassMetadata(replayedClass);
+         InterceptionModelBuilder<ClassMetadata<?>, ?> builder = InterceptionModelBuilder.<ClassMetadata<?>>newBuilderFor(replayedClassMetadata);
+         for (InvocationTrace.TracedMethod tracedMethod : trace.getMethods())
+         {
+            if (tracedMethod.getDeclaringClassName().equals(className.getKey()))
+            {
+               Method method = getMethod(replayedClass, methodNames.get(tracedMethod));
+               replayedMethods.put(tracedMethod, method);
+               int chainLength = Math.min(chainLengths.containsKey(tracedMethod) ? chainLengths.get(tracedMethod) : 0, interceptors.length);
+               if (chainLength > 0)
+               {
+                  InterceptorMetadata<?>[] chain = new InterceptorMetadata<?>[chainLength];
+                  System.arraycopy(interceptors, 0, chain, 0, chainLength);
+                  builder.interceptAroundInvoke(method).with(chain);
+               }
+            }
+         }
+         proxies.put(className.getKey(), proxyKind.createProxy(replayedClassMetadata, builder.build(), metadataCachingReader));
+      }
+
+      this.targets = new Object[calls.size()];
+      this.methods = new Method[calls.size()];
+      this.arguments = new Object[calls.size()][];
+      for (int i = 0; i < calls.size(); i++)
+      {
+         InvocationTrace.Call call = calls.get(i);
+         targets[i] = proxies.get(call.getMethod().getDeclaringClassName());
+         methods[i] = replayedMethods.get(call.getMethod());
+         Class<?>[] parameterTypes = methods[i].getParameterTypes();
+         String[] argumentTypes = call.getArgumentTypes();
+         if (argumentTypes.length != parameterTypes.length)
+         {
+            throw new IllegalArgumentException("Call of " + call.getMethod() + " recorded with " + argumentTypes.length + " arguments");
+         }
+         arguments[i] = new Object[parameterTypes.length];
+         for (int j = 0; j < parameterTypes.length; j++)
+         {
+            arguments[i][j] = parameterTypes[j].isPrimitive() ? getZero(parameterTypes[j].getName()) : getArgument(argumentTypes[j]);
+         }
+      }
+   }
+
+   private static Map<String, byte[]> generateClasses(List<InvocationTrace.TracedMethod> tracedMethods, Map<String, String> classNames,
+                                                      Map<InvocationTrace.TracedMethod, String> methodNames) throws Exception
+   {
+      ClassPool classPool = new ClassPool(true);
+      Map<String, CtClass> ctClasses = new LinkedHashMap<String, CtClass>();
+      for (Map.Entry<String, String> className : classNames.entrySet())
+      {
+         CtClass ctClass = classPool.makeClass(className.getValue());
+         ctClass.addConstructor(CtNewConstructor.defaultConstructor(ctClass));
+         ctClasses.put(className.getKey(), ctClass);
+      }
+      for (InvocationTrace.TracedMethod tracedMethod : tracedMethods)
+      {
+         CtClass ctClass = ctClasses.get(tracedMethod.getDeclaringClassName());
+         List<CtClass> parameterTypes = new ArrayList<CtClass>();
+         String descriptor = tracedMethod.getDescriptor();
+         int index = 1;
+         while (descriptor.charAt(index) != ')')
+         {
+            int end = getTypeDescriptorEnd(descriptor, index);
+            parameterTypes.add(getReplayedType(classPool, descriptor.substring(index, end)));
+            index = end;
+         }
+         CtClass returnType = getReplayedType(classPool, descriptor.substring(index + 1));
+         ctClass.addMethod(CtNewMethod.make(returnType, methodNames.get(tracedMethod), parameterTypes.toArray(new CtClass[parameterTypes.size()]),
+               new CtClass[0], "{ " + getReturnStatement(returnType) + " }", ctClass));
+      }
+      Map<String, byte[]> classFiles = new HashMap<String, byte[]>();
+      for (CtClass ctClass : ctClasses.values())
+      {
+         classFiles.put(ctClass.getName(), ctClass.toBytecode());
+      }
+      return classFiles;
+   }
+
+   private static int getTypeDescriptorEnd(String descriptor, int index)
+   {
+      while (descriptor.charAt(index) == '[')
+      {
+         index++;
+      }
+      return descriptor.charAt(index) == 'L' ? descriptor.indexOf(';', index) + 1 : index + 1;
+   }
+
+   private static CtClass getReplayedType(ClassPool classPool, String typeDescriptor) throws Exception
+   {
+      switch (typeDescriptor.charAt(0))
+      {
+         case 'Z': return CtClass.booleanType;
+         case 'B': return CtClass.byteType;
+         case 'C': return CtClass.charType;
+         case 'S': return CtClass.shortType;
+         case 'I': return CtClass.intType;
+         case 'J': return CtClass.longType;
+         case 'F': return CtClass.floatType;
+         case 'D': return CtClass.doubleType;
+         case 'V': return CtClass.voidType;
+         default: return classPool.get(Object.class.getName());
+      }
+   }
+
+   private static String getReturnStatement(CtClass returnType)
+   {
+      if (returnType == CtClass.voidType)
+      {
+         return "return;";
+      }
+      if (returnType == CtClass.booleanType)
+      {
+         return "return false;";
+      }
+      if (returnType.isPrimitive())
+      {
+         return "return (" + returnType.getName() + ") 0;";
+      }
+      return "return null;";
+   }
+
+   private static Method getMethod(Class<?> replayedClass, String name)
+   {
+      for (Method method : replayedClass.getDeclaredMethods())
+      {
+         if (method.getName().equals(name))
+         {
+            return method;
+         }
+      }
+      throw new IllegalStateException("No method " + name + " generated in " + replayedClass);
+   }
+
+   private static Object getArgument(String typeName)
+   {
+      if (typeName == null)
+      {
+         return null;
+      }
+      if (typeName.equals(String.class.getName()))
+      {
+         return "";
+      }
+      if (typeName.startsWith("["))
+      {
+         return new Object[0];
+      }
+      if (typeName.startsWith("java.lang."))
+      {
+         Object zero = getZero(typeName.substring("java.lang.".length()).toLowerCase());
+         if (zero != null)
+         {
+            return zero;
+         }
+      }
+      return new Object();
+   }
+
+   /**
+    * @return the boxed zero of the given primitive type, or of the primitive type of the given lower-cased wrapper name
+    */
+   private static Object getZero(String typeName)
+   {
+      if (typeName.equals("boolean"))
+      {
+         return Boolean.FALSE;
+      }
+      else if (typeName.equals("byte"))
+      {
+         return (byte) 0;
+      }
+      else if (typeName.equals("char") || typeName.equals("character"))
+      {
+         return (char) 0;
+      }
+      else if (typeName.equals("short"))
+      {
+         return (short) 0;
+      }
+      else if (typeName.equals("int") || typeName.equals("integer"))
+      {
+         return 0;
+      }
+      else if (typeName.equals("long"))
+      {
+         return 0L;
+      }
+      else if (typeName.equals("float"))
+      {
+         return 0F;
+      }
+      else if (typeName.equals("double"))
+      {
+         return 0D;
+      }
+      return null;
+   }
+
+   public int getCallCount()
+   {
+      return methods.length;
+   }
+
+   /**
+    * @return the mean duration of the recorded calls, in nanoseconds, including the work of the original methods and interceptors
+    */
+   public double getRecordedMeanDuration()
+   {
+      return (double) recordedDuration / methods.length;
+   }
+
+   /**
+    * Replays the call of the given index.
+    */
+   public Object invoke(int callIndex) throws Exception
+   {
+      return methods[callIndex].invoke(targets[callIndex], arguments[callIndex]);
+   }
+
+   public static void main(String[] args) throws Exception
+   {
+      if (args.length < 1 || args.length > 2)
+      {
+         throw new IllegalArgumentException("Usage: TraceReplay <trace file> [rounds]");
+      }
+      InvocationTrace trace = InvocationTrace.read(new File(args[0]));
+      int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+      System.out.printf("%d calls of %d methods%n", trace.getCalls().size(), trace.getMethods().size());
+      for (ProxyKind proxyKind : ProxyKind.values())
+      {
+         TraceReplay replay = new TraceReplay(trace, proxyKind);
+         long fastestRound = Long.MAX_VALUE;
+         for (int round = 0; round < rounds; round++)
+         {
+            long start = System.nanoTime();
+            for (int i = 0; i < replay.getCallCount(); i++)
+            {
+               replay.invoke(i);
+            }
+            fastestRound = Math.min(fastestRound, System.nanoTime() - start);
+         }
+         System.out.printf("%-12s %10.1f ns per call (recorded %.1f ns per call)%n", proxyKind,
+               (double) fastestRound / replay.getCallCount(), replay.getRecordedMeanDuration());
+      }
+   }
+}
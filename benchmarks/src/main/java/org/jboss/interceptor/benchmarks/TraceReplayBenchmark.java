@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.interceptor.proxy.InvocationTrace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replays the calls of a recorded invocation trace (see {@link TraceReplay}) in a loop, one call per operation. The
+ * trace file is given by the <code>trace</code> parameter, e.g. <code>-p trace=invocations.trace</code>.
+ *
+ * @author Marius Bogoevici
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TraceReplayBenchmark
+{
+   @Param({""})
+   public String trace;
+
+   @Param({"SUBCLASSING", "DELEGATING"})
+   public ProxyKind proxyKind;
+
+   private TraceReplay replay;
+
+   private int nextCall;
+
+   @Setup
+   public void createReplay() throws Exception
+   {
+      if (trace.length() == 0)
+      {
+         throw new IllegalArgumentException("No invocation trace given, set it with -p trace=<file>");
+      }
+      replay = new TraceReplay(InvocationTrace.read(new File(trace)), proxyKind);
+   }
+
+   @Benchmark
+   public Object replayCall() throws Exception
+   {
+      Object result = replay.invoke(nextCall);
+      if (++nextCall == replay.getCallCount())
+      {
+         nextCall = 0;
+      }
+      return result;
+   }
+}
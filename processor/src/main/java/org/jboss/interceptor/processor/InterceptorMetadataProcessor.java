@@ -0,0 +1,286 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.processor;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Records the classes declaring interceptor methods or lifecycle callbacks into an index, which the interceptor library
+ * reads instead of scanning the methods and annotations of those classes through reflection.
+ *
+ * The index is written to {@value #INDEX_RESOURCE_NAME}, in UTF-8, starting with the line {@value #INDEX_HEADER}.
+ * Each indexed class is described by a line holding its binary name, followed by a line for each relevant declared
+ * method, which starts with a space and holds, separated by spaces:
+ * <ul>
+ * <li>the names of the interception types the method is annotated for, separated by commas, or <code>-</code> for
+ * methods that are not annotated but hide an annotated method of a superclass;</li>
+ * <li>the name of the method;</li>
+ * <li>the descriptor of the method.</li>
+ * </ul>
+ *
+ * @author Marius Bogoevici
+ */
+@SupportedAnnotationTypes({
+      "javax.interceptor.AroundInvoke",
+      "javax.interceptor.AroundTimeout",
+      "javax.annotation.PostConstruct",
+      "javax.annotation.PreDestroy",
+      "javax.ejb.PrePassivate",
+      "javax.ejb.PostActivate"})
+public class InterceptorMetadataProcessor extends AbstractProcessor
+{
+   public static final String INDEX_RESOURCE_NAME = "META-INF/jboss-interceptor/metadata.idx";
+
+   public static final String INDEX_HEADER = "jboss-interceptor-metadata-index 1";
+
+   public static final String NOT_ANNOTATED = "-";
+
+   private static final Map<String, String> INTERCEPTION_TYPES = new HashMap<String, String>();
+
+   static
+   {
+      INTERCEPTION_TYPES.put("javax.interceptor.AroundInvoke", "AROUND_INVOKE");
+      INTERCEPTION_TYPES.put("javax.interceptor.AroundTimeout", "AROUND_TIMEOUT");
+      INTERCEPTION_TYPES.put("javax.annotation.PostConstruct", "POST_CONSTRUCT");
+      INTERCEPTION_TYPES.put("javax.annotation.PreDestroy", "PRE_DESTROY");
+      INTERCEPTION_TYPES.put("javax.ejb.PrePassivate", "PRE_PASSIVATE");
+      INTERCEPTION_TYPES.put("javax.ejb.PostActivate", "POST_ACTIVATE");
+   }
+
+   // the lines describing the methods of each indexed class, by binary class name, kept across rounds
+   private final Map<String, List<String>> indexedClasses = new TreeMap<String, List<String>>();
+
+   @Override
+   public SourceVersion getSupportedSourceVersion()
+   {
+      return SourceVersion.latestSupported();
+   }
+
+   @Override
+   public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment)
+   {
+      for (TypeElement annotation : annotations)
+      {
+         for (Element element : roundEnvironment.getElementsAnnotatedWith(annotation))
+         {
+            if (element.getKind() == ElementKind.METHOD && element.getEnclosingElement() instanceof TypeElement)
+            {
+               indexClass((TypeElement) element.getEnclosingElement());
+            }
+         }
+      }
+      if (roundEnvironment.processingOver())
+      {
+         writeIndex();
+      }
+      return false;
+   }
+
+   private void indexClass(TypeElement typeElement)
+   {
+      String className = processingEnv.getElementUtils().getBinaryName(typeElement).toString();
+      if (indexedClasses.containsKey(className))
+      {
+         return;
+      }
+      List<ExecutableElement> superclassInterceptorMethods = getSuperclassInterceptorMethods(typeElement);
+      List<String> methodLines = new ArrayList<String>();
+      for (ExecutableElement method : ElementFilter.methodsIn(typeElement.getEnclosedElements()))
+      {
+         String interceptionTypes = getInterceptionTypes(method);
+         if (interceptionTypes != null)
+         {
+            methodLines.add(" " + interceptionTypes + " " + method.getSimpleName() + " " + getDescriptor(method));
+         }
+         else if (hidesAny(method, superclassInterceptorMethods))
+         {
+            // hides the interceptor method of the superclass
+            methodLines.add(" " + NOT_ANNOTATED + " " + method.getSimpleName() + " " + getDescriptor(method));
+         }
+      }
+      indexedClasses.put(className, methodLines);
+   }
+
+   private List<ExecutableElement> getSuperclassInterceptorMethods(TypeElement typeElement)
+   {
+      List<ExecutableElement> interceptorMethods = new ArrayList<ExecutableElement>();
+      TypeMirror superclass = typeElement.getSuperclass();
+      while (superclass.getKind() == TypeKind.DECLARED)
+      {
+         TypeElement superclassElement = (TypeElement) ((DeclaredType) superclass).asElement();
+         for (ExecutableElement method : ElementFilter.methodsIn(superclassElement.getEnclosedElements()))
+         {
+            if (getInterceptionTypes(method) != null)
+            {
+               interceptorMethods.add(method);
+            }
+         }
+         superclass = superclassElement.getSuperclass();
+      }
+      return interceptorMethods;
+   }
+
+   /**
+    * Matches methods the same way as the interceptor library does when it reads the methods of a class hierarchy:
+    * a method which is not private hides the non-private methods of the superclasses with the same name and parameter types.
+    */
+   private boolean hidesAny(ExecutableElement method, List<ExecutableElement> superclassMethods)
+   {
+      if (method.getModifiers().contains(Modifier.PRIVATE))
+      {
+         return false;
+      }
+      String parameterDescriptor = getParameterDescriptor(method);
+      for (ExecutableElement superclassMethod : superclassMethods)
+      {
+         if (!superclassMethod.getModifiers().contains(Modifier.PRIVATE)
+               && superclassMethod.getSimpleName().equals(method.getSimpleName())
+               && getParameterDescriptor(superclassMethod).equals(parameterDescriptor))
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * @return the interception types the method is annotated for, separated by commas, or <code>null</code> if none
+    */
+   private static String getInterceptionTypes(ExecutableElement method)
+   {
+      StringBuilder interceptionTypes = new StringBuilder();
+      for (AnnotationMirror annotationMirror : method.getAnnotationMirrors())
+      {
+         String annotationName = ((TypeElement) annotationMirror.getAnnotationType().asElement()).getQualifiedName().toString();
+         String interceptionType = INTERCEPTION_TYPES.get(annotationName);
+         if (interceptionType != null)
+         {
+            interceptionTypes.append(interceptionTypes.length() == 0 ? "" : ",").append(interceptionType);
+         }
+      }
+      return interceptionTypes.length() == 0 ? null : interceptionTypes.toString();
+   }
+
+   private String getDescriptor(ExecutableElement method)
+   {
+      StringBuilder descriptor = new StringBuilder(getParameterDescriptor(method));
+      appendDescriptor(descriptor, method.getReturnType());
+      return descriptor.toString();
+   }
+
+   private String getParameterDescriptor(ExecutableElement method)
+   {
+      StringBuilder descriptor = new StringBuilder("(");
+      for (VariableElement parameter : method.getParameters())
+      {
+         appendDescriptor(descriptor, parameter.asType());
+      }
+      return descriptor.append(')').toString();
+   }
+
+   private void appendDescriptor(StringBuilder descriptor, TypeMirror type)
+   {
+      TypeMirror erasedType = processingEnv.getTypeUtils().erasure(type);
+      switch (erasedType.getKind())
+      {
+         case BOOLEAN: descriptor.append('Z'); break;
+         case BYTE: descriptor.append('B'); break;
+         case CHAR: descriptor.append('C'); break;
+         case SHORT: descriptor.append('S'); break;
+         case INT: descriptor.append('I'); break;
+         case LONG: descriptor.append('J'); break;
+         case FLOAT: descriptor.append('F'); break;
+         case DOUBLE: descriptor.append('D'); break;
+         case VOID: descriptor.append('V'); break;
+         case ARRAY:
+            descriptor.append('[');
+            appendDescriptor(descriptor, ((ArrayType) erasedType).getComponentType());
+            break;
+         case DECLARED:
+            TypeElement typeElement = (TypeElement) ((DeclaredType) erasedType).asElement();
+            descriptor.append('L').append(processingEnv.getElementUtils().getBinaryName(typeElement).toString().replace('.', '/')).append(';');
+            break;
+         default:
+            throw new IllegalStateException("Unexpected type in method signature: " + type);
+      }
+   }
+
+   private void writeIndex()
+   {
+      if (indexedClasses.isEmpty())
+      {
+         return;
+      }
+      try
+      {
+         FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE_NAME);
+         Writer writer = new OutputStreamWriter(index.openOutputStream(), "UTF-8");
+         try
+         {
+            writer.write(INDEX_HEADER);
+            writer.write('\n');
+            for (Map.Entry<String, List<String>> indexedClass : indexedClasses.entrySet())
+            {
+               writer.write(indexedClass.getKey());
+               writer.write('\n');
+               for (String methodLine : indexedClass.getValue())
+               {
+                  writer.write(methodLine);
+                  writer.write('\n');
+               }
+            }
+         }
+         finally
+         {
+            writer.close();
+         }
+      }
+      catch (IOException e)
+      {
+         processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write the interceptor metadata index: " + e);
+      }
+   }
+}
@@ -0,0 +1,231 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptors.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.interceptor.AroundInvoke;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.jboss.interceptor.processor.InterceptorMetadataProcessor;
+import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
+import org.jboss.interceptor.reader.cache.MetadataCachingReader;
+import org.jboss.interceptor.reader.index.IndexedClassMetadata;
+import org.jboss.interceptor.reader.index.IndexedMetadataCachingReader;
+import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
+import org.jboss.interceptor.spi.metadata.MethodMetadata;
+import org.jboss.interceptor.spi.model.InterceptionType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Marius Bogoevici
+ */
+public class InterceptorMetadataProcessorTestCase
+{
+   private File directory;
+
+   @Before
+   public void setUp() throws IOException
+   {
+      directory = Files.createTempDirectory("interceptor-metadata-processor").toFile();
+   }
+
+   @After
+   public void tearDown()
+   {
+      delete(directory);
+   }
+
+   @Test
+   public void testIndex() throws Exception
+   {
+      writeSource("test/ParentInterceptor.java",
+            "package test;",
+            "public class ParentInterceptor {",
+            "   @javax.interceptor.AroundInvoke public Object intercept(javax.interceptor.InvocationContext ctx) throws Exception { return ctx.proceed(); }",
+            "   @javax.annotation.PostConstruct void init(javax.interceptor.InvocationContext ctx) { }",
+            "   public void unrelated(int[] values, String name) { }",
+            "}");
+      writeSource("test/ChildInterceptor.java",
+            "package test;",
+            "public class ChildInterceptor extends ParentInterceptor {",
+            "   public Object intercept(javax.interceptor.InvocationContext ctx) throws Exception { return null; }",
+            "   @javax.annotation.PreDestroy void destroy(javax.interceptor.InvocationContext ctx) { }",
+            "   public void unrelated(int[] values, String name) { }",
+            "}");
+      writeSource("test/NotAnInterceptor.java",
+            "package test;",
+            "public class NotAnInterceptor {",
+            "   public void run() { }",
+            "}");
+      compile("test/ParentInterceptor.java", "test/ChildInterceptor.java", "test/NotAnInterceptor.java");
+
+      List<String> index = Files.readAllLines(new File(directory, InterceptorMetadataProcessor.INDEX_RESOURCE_NAME).toPath(), Charset.forName("UTF-8"));
+      Assert.assertEquals(Arrays.asList(
+            InterceptorMetadataProcessor.INDEX_HEADER,
+            "test.ChildInterceptor",
+            " - intercept (Ljavax/interceptor/InvocationContext;)Ljava/lang/Object;",
+            " PRE_DESTROY destroy (Ljavax/interceptor/InvocationContext;)V",
+            "test.ParentInterceptor",
+            " AROUND_INVOKE intercept (Ljavax/interceptor/InvocationContext;)Ljava/lang/Object;",
+            " POST_CONSTRUCT init (Ljavax/interceptor/InvocationContext;)V"), index);
+   }
+
+   @Test
+   public void testIndexIsReadByTheLibrary() throws Exception
+   {
+      writeSource("test/ParentInterceptor.java",
+            "package test;",
+            "public class ParentInterceptor {",
+            "   @javax.interceptor.AroundInvoke public Object intercept(javax.interceptor.InvocationContext ctx) throws Exception { return ctx.proceed(); }",
+            "   @javax.annotation.PostConstruct void init(javax.interceptor.InvocationContext ctx) { }",
+            "   @javax.annotation.PreDestroy void destroy(javax.interceptor.InvocationContext ctx) { }",
+            "   public void unrelated(int[] values, String name) { }",
+            "}");
+      writeSource("test/ChildInterceptor.java",
+            "package test;",
+            "public class ChildInterceptor extends ParentInterceptor {",
+            "   public Object intercept(javax.interceptor.InvocationContext ctx) throws Exception { return null; }",
+            "   @javax.annotation.PostConstruct void init(javax.interceptor.InvocationContext ctx) { }",
+            "   @javax.interceptor.AroundInvoke Object aroundInvoke(javax.interceptor.InvocationContext ctx) throws Exception { return ctx.proceed(); }",
+            "   public String[][] unrelated(long value, java.util.List<String> names) { return null; }",
+            "}");
+      compile("test/ParentInterceptor.java", "test/ChildInterceptor.java");
+
+      URLClassLoader classLoader = new URLClassLoader(new URL[]{directory.toURI().toURL()}, InterceptorMetadataProcessorTestCase.class.getClassLoader());
+      try
+      {
+         MetadataCachingReader reflectiveReader = new DefaultMetadataCachingReader();
+         MetadataCachingReader indexedReader = new IndexedMetadataCachingReader();
+         for (String className : Arrays.asList("test.ParentInterceptor", "test.ChildInterceptor"))
+         {
+            Class<?> clazz = classLoader.loadClass(className);
+            Assert.assertTrue(className, IndexedClassMetadata.isIndexed(clazz));
+            Assert.assertTrue(className, indexedReader.getClassMetadata(clazz) instanceof IndexedClassMetadata);
+            InterceptorMetadata<?> expected = reflectiveReader.getInterceptorMetadata(clazz);
+            InterceptorMetadata<?> actual = indexedReader.getInterceptorMetadata(clazz);
+            for (InterceptionType interceptionType : InterceptionType.values())
+            {
+               Assert.assertEquals(className + " " + interceptionType, getJavaMethods(expected.getInterceptorMethods(interceptionType)),
+                     getJavaMethods(actual.getInterceptorMethods(interceptionType)));
+            }
+         }
+      }
+      finally
+      {
+         classLoader.close();
+      }
+   }
+
+   private static List<Method> getJavaMethods(List<MethodMetadata> methods)
+   {
+      List<Method> javaMethods = new ArrayList<Method>();
+      if (methods != null)
+      {
+         for (MethodMetadata method : methods)
+         {
+            javaMethods.add(method.getJavaMethod());
+         }
+      }
+      return javaMethods;
+   }
+
+   @Test
+   public void testNoIndexWithoutInterceptorMethods() throws Exception
+   {
+      writeSource("test/NotAnInterceptor.java",
+            "package test;",
+            "public class NotAnInterceptor {",
+            "   public void run() { }",
+            "}");
+      compile("test/NotAnInterceptor.java");
+      Assert.assertFalse(new File(directory, InterceptorMetadataProcessor.INDEX_RESOURCE_NAME).exists());
+   }
+
+   private void writeSource(String fileName, String... lines) throws IOException
+   {
+      File file = new File(directory, fileName);
+      file.getParentFile().mkdirs();
+      Writer writer = Files.newBufferedWriter(file.toPath(), Charset.forName("UTF-8"));
+      try
+      {
+         for (String line : lines)
+         {
+            writer.write(line);
+            writer.write('\n');
+         }
+      }
+      finally
+      {
+         writer.close();
+      }
+   }
+
+   private void compile(String... fileNames) throws IOException
+   {
+      JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+      StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+      try
+      {
+         File[] files = new File[fileNames.length];
+         for (int i = 0; i < fileNames.length; i++)
+         {
+            files[i] = new File(directory, fileNames[i]);
+         }
+         Iterable<? extends JavaFileObject> compilationUnits = fileManager.getJavaFileObjects(files);
+         String interceptorApi = new File(AroundInvoke.class.getProtectionDomain().getCodeSource().getLocation().getPath()).getPath();
+         JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null,
+               Arrays.asList("-classpath", interceptorApi, "-d", directory.getPath()), null, compilationUnits);
+         task.setProcessors(Arrays.asList(new InterceptorMetadataProcessor()));
+         Assert.assertTrue(task.call());
+      }
+      finally
+      {
+         fileManager.close();
+      }
+   }
+
+   private static void delete(File file)
+   {
+      File[] children = file.listFiles();
+      if (children != null)
+      {
+         for (File child : children)
+         {
+            delete(child);
+         }
+      }
+      file.delete();
+   }
+}
@@ -0,0 +1,231 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.jboss.interceptor.proxy.javassist.ProxyClassCache;
+import org.jboss.interceptor.reader.classfile.ClassFileClassMetadata;
+import org.jboss.interceptor.reader.classfile.ClassFileMethodMetadata;
+import org.jboss.interceptor.spi.metadata.MethodMetadata;
+import org.jboss.interceptor.util.InterceptionUtils;
+
+/**
+ * Generates the proxy classes of the intercepted classes of the project, and writes them to its output directory,
+ * so that they are not generated at runtime (see {@link ProxyClassCache}).
+ *
+ * The proxy classes are generated for the listed classes, and for the classes of the output directory which are
+ * annotated, or have methods annotated, with any of the given annotations.
+ * The class files are scanned without loading the classes; only the selected classes are loaded.
+ *
+ * Since the interception models are only built at runtime, the proxy classes override all the methods of their
+ * classes, and serve both the subclassing and the delegating proxies (see
+ * {@link org.jboss.interceptor.proxy.javassist.ProxyClassWriter}).
+ *
+ * @goal generate-proxies
+ * @phase process-classes
+ * @requiresDependencyResolution runtime
+ * @threadSafe
+ *
+ * @author Marius Bogoevici
+ */
+public class GenerateProxiesMojo extends AbstractMojo
+{
+   /**
+    * @parameter expression="${project.build.outputDirectory}"
+    * @required
+    */
+   private File outputDirectory;
+
+   /**
+    * @parameter expression="${project.runtimeClasspathElements}"
+    * @required
+    * @readonly
+    */
+   private List<String> classpathElements;
+
+   /**
+    * The names of the classes to generate proxy classes for, besides the annotated ones.
+    *
+    * @parameter
+    */
+   private String[] classes;
+
+   /**
+    * The annotations whose classes are proxied, when present on the class or on any of its methods.
+    *
+    * @parameter
+    */
+   private String[] annotations = new String[]{"javax.interceptor.Interceptors"};
+
+   /**
+    * Whether the classes of the output directory are scanned for the annotated classes.
+    *
+    * @parameter default-value="true"
+    */
+   private boolean scan;
+
+   /**
+    * @parameter expression="${interceptor.proxies.skip}" default-value="false"
+    */
+   private boolean skip;
+
+   public void execute() throws MojoExecutionException
+   {
+      if (skip || !outputDirectory.isDirectory())
+      {
+         return;
+      }
+      ClassLoader classLoader = createClassLoader();
+      Set<String> classNames = new LinkedHashSet<String>();
+      if (classes != null)
+      {
+         for (String className : classes)
+         {
+            classNames.add(className.trim());
+         }
+      }
+      if (scan)
+      {
+         scan(outputDirectory, classLoader, classNames);
+      }
+      for (String className : classNames)
+      {
+         try
+         {
+            Class<?> proxiedClass = Class.forName(className, false, classLoader);
+            String proxyClassName = InterceptionUtils.writeProxyClass(proxiedClass, outputDirectory);
+            getLog().debug("Generated proxy class " + proxyClassName);
+         }
+         catch (ClassNotFoundException e)
+         {
+            throw new MojoExecutionException("Cannot load class " + className, e);
+         }
+         catch (LinkageError e)
+         {
+            throw new MojoExecutionException("Cannot load class " + className, e);
+         }
+         catch (IOException e)
+         {
+            throw new MojoExecutionException("Cannot write the proxy class of " + className, e);
+         }
+         catch (RuntimeException e)
+         {
+            throw new MojoExecutionException("Cannot generate the proxy class of " + className, e);
+         }
+      }
+      getLog().info("Generated " + classNames.size() + " interceptor proxy classes");
+   }
+
+   /**
+    * The proxy classes are defined in this class loader, whose parent provides the classes of the interceptor library
+    * of the plugin, so that the proxy classes reference the same library classes as the generator.
+    */
+   private ClassLoader createClassLoader() throws MojoExecutionException
+   {
+      List<URL> urls = new ArrayList<URL>();
+      try
+      {
+         urls.add(outputDirectory.toURI().toURL());
+         for (String classpathElement : classpathElements)
+         {
+            urls.add(new File(classpathElement).toURI().toURL());
+         }
+      }
+      catch (MalformedURLException e)
+      {
+         throw new MojoExecutionException("Invalid classpath element", e);
+      }
+      return new URLClassLoader(urls.toArray(new URL[urls.size()]), getClass().getClassLoader());
+   }
+
+   private void scan(File directory, ClassLoader classLoader, Set<String> classNames) throws MojoExecutionException
+   {
+      File[] files = directory.listFiles();
+      if (files == null)
+      {
+         return;
+      }
+      for (File file : files)
+      {
+         if (file.isDirectory())
+         {
+            scan(file, classLoader, classNames);
+         }
+         else if (file.getName().endsWith(".class") && !file.getName().endsWith(ProxyClassCache.PREGENERATED_PROXY_CLASS_SUFFIX + ".class"))
+         {
+            ClassFileClassMetadata<?> classMetadata = readClassFile(file, classLoader);
+            if (isProxied(classMetadata))
+            {
+               classNames.add(classMetadata.getClassName());
+            }
+         }
+      }
+   }
+
+   private ClassFileClassMetadata<?> readClassFile(File file, ClassLoader classLoader) throws MojoExecutionException
+   {
+      try
+      {
+         InputStream input = new FileInputStream(file);
+         try
+         {
+            return ClassFileClassMetadata.of(input, classLoader);
+         }
+         finally
+         {
+            input.close();
+         }
+      }
+      catch (IOException e)
+      {
+         throw new MojoExecutionException("Cannot read class file " + file, e);
+      }
+   }
+
+   private boolean isProxied(ClassFileClassMetadata<?> classMetadata)
+   {
+      for (String annotation : annotations)
+      {
+         if (classMetadata.isAnnotationPresent(annotation))
+         {
+            return true;
+         }
+         for (MethodMetadata method : classMetadata.getDeclaredMethods())
+         {
+            if (((ClassFileMethodMetadata) method).isAnnotationPresent(annotation))
+            {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
+}
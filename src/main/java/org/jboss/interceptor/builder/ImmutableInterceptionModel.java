@@ -0,0 +1,187 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.builder;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
+import org.jboss.interceptor.spi.model.InterceptionModel;
+import org.jboss.interceptor.spi.model.InterceptionType;
+
+/**
+ * A frozen copy of an {@link InterceptionModelImpl}, as returned by {@link InterceptionModelBuilder#build()}.
+ *
+ * The interceptors of lifecycle callbacks are resolved when the model is created, and the interceptors of each
+ * method are resolved on the first lookup and cached, so that subsequent lookups only take an array access or a
+ * single map access keyed by the {@link Method} itself. All the returned lists are immutable.
+ *
+ * The model is safe for concurrent use: its state is held in final fields and immutable collections, and the
+ * per-method lists are published through {@link ConcurrentMap}s.
+ *
+ * @author Marius Bogoevici
+ */
+class ImmutableInterceptionModel<T, I> implements InterceptionModel<T, I>
+{
+   private static final long serialVersionUID = 1L;
+
+   private final T interceptedEntity;
+
+   private final Set<InterceptorMetadata<I>> allInterceptors;
+
+   private final Map<InterceptionType, List<InterceptorMetadata<I>>> globalInterceptors;
+
+   private final Map<InterceptionType, Map<MethodReference, List<InterceptorMetadata<I>>>> methodBoundInterceptors;
+
+   private final Set<MethodReference> methodsIgnoringGlobals;
+
+   // indexed by the ordinal of the interception type, only for lifecycle callbacks
+   private final List<InterceptorMetadata<I>>[] lifecycleInterceptors;
+
+   // indexed by the ordinal of the interception type, only for around-invoke and around-timeout
+   private transient ConcurrentMap<Method, List<InterceptorMetadata<I>>>[] methodInterceptors;
+
+   ImmutableInterceptionModel(T interceptedEntity,
+                              Set<InterceptorMetadata<I>> allInterceptors,
+                              Map<InterceptionType, List<InterceptorMetadata<I>>> globalInterceptors,
+                              Map<InterceptionType, Map<MethodReference, List<InterceptorMetadata<I>>>> methodBoundInterceptors,
+                              Set<MethodReference> methodsIgnoringGlobals)
+   {
+      this.interceptedEntity = interceptedEntity;
+      this.allInterceptors = Collections.unmodifiableSet(new LinkedHashSet<InterceptorMetadata<I>>(allInterceptors));
+      this.globalInterceptors = new EnumMap<InterceptionType, List<InterceptorMetadata<I>>>(InterceptionType.class);
+      for (Map.Entry<InterceptionType, List<InterceptorMetadata<I>>> entry : globalInterceptors.entrySet())
+      {
+         this.globalInterceptors.put(entry.getKey(), immutableCopyOf(entry.getValue()));
+      }
+      this.methodBoundInterceptors = new EnumMap<InterceptionType, Map<MethodReference, List<InterceptorMetadata<I>>>>(InterceptionType.class);
+      for (Map.Entry<InterceptionType, Map<MethodReference, List<InterceptorMetadata<I>>>> entry : methodBoundInterceptors.entrySet())
+      {
+         Map<MethodReference, List<InterceptorMetadata<I>>> interceptors = new HashMap<MethodReference, List<InterceptorMetadata<I>>>();
+         for (Map.Entry<MethodReference, List<InterceptorMetadata<I>>> methodEntry : entry.getValue().entrySet())
+         {
+            interceptors.put(methodEntry.getKey(), immutableCopyOf(methodEntry.getValue()));
+         }
+         this.methodBoundInterceptors.put(entry.getKey(), interceptors);
+      }
+      this.methodsIgnoringGlobals = new HashSet<MethodReference>(methodsIgnoringGlobals);
+      this.lifecycleInterceptors = new List[InterceptionType.values().length];
+      for (InterceptionType interceptionType : InterceptionType.values())
+      {
+         if (interceptionType.isLifecycleCallback())
+         {
+            List<InterceptorMetadata<I>> interceptors = this.globalInterceptors.get(interceptionType);
+            lifecycleInterceptors[interceptionType.ordinal()] = interceptors != null ? interceptors : Collections.<InterceptorMetadata<I>>emptyList();
+         }
+      }
+      initMethodInterceptors();
+   }
+
+   private void initMethodInterceptors()
+   {
+      methodInterceptors = new ConcurrentMap[InterceptionType.values().length];
+      for (InterceptionType interceptionType : InterceptionType.values())
+      {
+         if (!interceptionType.isLifecycleCallback())
+         {
+            methodInterceptors[interceptionType.ordinal()] = new ConcurrentHashMap<Method, List<InterceptorMetadata<I>>>();
+         }
+      }
+   }
+
+   public List<InterceptorMetadata<I>> getInterceptors(InterceptionType interceptionType, Method method)
+   {
+      if (interceptionType.isLifecycleCallback())
+      {
+         if (method != null)
+         {
+            throw new IllegalArgumentException("On a lifecycle callback, the associated method must be null");
+         }
+         return lifecycleInterceptors[interceptionType.ordinal()];
+      }
+      if (method == null)
+      {
+         throw new IllegalArgumentException("Around-invoke and around-timeout interceptors are defined for a given method");
+      }
+      ConcurrentMap<Method, List<InterceptorMetadata<I>>> interceptorsByMethod = methodInterceptors[interceptionType.ordinal()];
+      List<InterceptorMetadata<I>> interceptors = interceptorsByMethod.get(method);
+      if (interceptors == null)
+      {
+         interceptors = resolveInterceptors(interceptionType, method);
+         List<InterceptorMetadata<I>> existingInterceptors = interceptorsByMethod.putIfAbsent(method, interceptors);
+         if (existingInterceptors != null)
+         {
+            interceptors = existingInterceptors;
+         }
+      }
+      return interceptors;
+   }
+
+   private List<InterceptorMetadata<I>> resolveInterceptors(InterceptionType interceptionType, Method method)
+   {
+      MethodReference methodReference = MethodReference.of(method, true);
+      List<InterceptorMetadata<I>> interceptors = new ArrayList<InterceptorMetadata<I>>();
+      if (!methodsIgnoringGlobals.contains(methodReference) && globalInterceptors.containsKey(interceptionType))
+      {
+         interceptors.addAll(globalInterceptors.get(interceptionType));
+      }
+      Map<MethodReference, List<InterceptorMetadata<I>>> interceptorsByMethod = methodBoundInterceptors.get(interceptionType);
+      if (interceptorsByMethod != null && interceptorsByMethod.containsKey(methodReference))
+      {
+         interceptors.addAll(interceptorsByMethod.get(methodReference));
+      }
+      return immutableCopyOf(interceptors);
+   }
+
+   private static <I> List<InterceptorMetadata<I>> immutableCopyOf(List<InterceptorMetadata<I>> interceptors)
+   {
+      if (interceptors.isEmpty())
+      {
+         return Collections.emptyList();
+      }
+      return Collections.unmodifiableList(new ArrayList<InterceptorMetadata<I>>(interceptors));
+   }
+
+   public Set<InterceptorMetadata<I>> getAllInterceptors()
+   {
+      return allInterceptors;
+   }
+
+   public T getInterceptedEntity()
+   {
+      return interceptedEntity;
+   }
+
+   private void readObject(ObjectInputStream objectInputStream) throws IOException, ClassNotFoundException
+   {
+      objectInputStream.defaultReadObject();
+      initMethodInterceptors();
+   }
+}
@@ -27,6 +27,7 @@ import org.jboss.interceptor.spi.metadata.ClassMetadata;
 import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
 import org.jboss.interceptor.spi.model.InterceptionModel;
 import org.jboss.interceptor.spi.model.InterceptionType;
+import org.jboss.interceptor.util.StartupProfiler;
 
 
 /**
@@ -39,6 +40,9 @@ public class InterceptionModelBuilder<T, I>
 
    private T interceptedEntity;
 
+   // whether building the model has been counted by the startup profiler
+   private boolean profiled;
+
    private InterceptionModelBuilder(T interceptedEntity)
    {
       this.interceptedEntity = interceptedEntity;
@@ -75,9 +79,38 @@ public class InterceptionModelBuilder<T, I>
       return interceptedEntity;
    }
 
+   /**
+    * @return an immutable, thread-safe snapshot of the model built so far. Models that are being changed
+    * through {@link #changeBuilderFor(BuildableInterceptionModel)} are returned as they are.
+    */
    public InterceptionModel<T, I> build()
    {
-      return interceptionModel;
+      StartupProfiler.Sample sample = StartupProfiler.start(StartupProfiler.Phase.MODEL_BUILDING, interceptedEntity);
+      try
+      {
+         if (interceptionModel instanceof InterceptionModelImpl)
+         {
+            return ((InterceptionModelImpl<T, I>) interceptionModel).freeze();
+         }
+         return interceptionModel;
+      }
+      finally
+      {
+         endProfilingStep(sample);
+      }
+   }
+
+   /**
+    * The model is built by the calls adding interceptors to it, and by {@link #build()}, which are all measured as steps
+    * of building it. Time spent by the caller between them, e.g. reading the interceptor metadata, is not charged to it.
+    */
+   private void endProfilingStep(StartupProfiler.Sample sample)
+   {
+      if (sample != null)
+      {
+         StartupProfiler.endStep(sample, !profiled);
+         profiled = true;
+      }
    }
 
    public MethodInterceptorDescriptor interceptAll()
@@ -117,7 +150,15 @@ public class InterceptionModelBuilder<T, I>
 
    public void ignoreGlobalInterceptors(Method m)
    {
-      this.interceptionModel.setIgnoresGlobals(m, true);
+      StartupProfiler.Sample sample = StartupProfiler.start(StartupProfiler.Phase.MODEL_BUILDING, interceptedEntity);
+      try
+      {
+         this.interceptionModel.setIgnoresGlobals(m, true);
+      }
+      finally
+      {
+         endProfilingStep(sample);
+      }
    }
 
    public final class MethodInterceptorDescriptor
@@ -134,9 +175,17 @@ public class InterceptionModelBuilder<T, I>
 
       public void with(InterceptorMetadata... interceptors)
       {
-         for (InterceptionType interceptionType: interceptionTypes)
+         StartupProfiler.Sample sample = StartupProfiler.start(StartupProfiler.Phase.MODEL_BUILDING, interceptedEntity);
+         try
+         {
+            for (InterceptionType interceptionType: interceptionTypes)
+            {
+               InterceptionModelBuilder.this.interceptionModel.appendInterceptors(interceptionType, method, interceptors);
+            }
+         }
+         finally
          {
-            InterceptionModelBuilder.this.interceptionModel.appendInterceptors(interceptionType, method, interceptors);
+            endProfilingStep(sample);
          }
       }
    }
@@ -31,6 +31,7 @@ import java.util.Set;
 import org.jboss.interceptor.proxy.InterceptorException;
 import org.jboss.interceptor.spi.metadata.ClassMetadata;
 import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
+import org.jboss.interceptor.spi.model.InterceptionModel;
 import org.jboss.interceptor.spi.model.InterceptionType;
 
 /**
@@ -165,6 +166,14 @@ class InterceptionModelImpl<T, I> implements BuildableInterceptionModel<T, I>
       }
    }
 
+   /**
+    * @return an immutable copy of the current state of this model
+    */
+   InterceptionModel<T, I> freeze()
+   {
+      return new ImmutableInterceptionModel<T, I>(interceptedEntity, allInterceptors, globalInterceptors, methodBoundInterceptors, methodsIgnoringGlobals);
+   }
+
    private static MethodReference methodHolder(Method method)
    {
       return MethodReference.of(method, true);
@@ -0,0 +1,210 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.proxy;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.interceptor.spi.instance.InterceptorInstantiator;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
+import org.jboss.interceptor.spi.model.InterceptionModel;
+import org.jboss.interceptor.spi.model.InterceptionType;
+import org.jboss.interceptor.util.InterceptionTypeRegistry;
+import org.jboss.interceptor.util.InterceptionUtils;
+import org.jboss.interceptor.util.StartupProfiler;
+
+/**
+ * The immutable part of {@link InterceptorMethodHandler}s, shared by all the instances of an intercepted class: the
+ * interception model, the interceptor metadata of the target class and the {@link InterceptionChainPlan}s.
+ *
+ * The chain plans are not bound to interceptor instances. Each interceptor of the model has a fixed position, and the
+ * per-instance state of a method handler is reduced to an array of interceptor instances indexed by those positions
+ * (see {@link #createInterceptorInstances(InterceptorInstantiator)}). Nor are they bound to a proxy class, so the
+ * subclassing and the delegating method handlers of a class share the same plan.
+ *
+ * @author Marius Bogoevici
+ */
+public class ClassInterceptionPlan implements Serializable
+{
+   private static final long serialVersionUID = 1L;
+
+   private final InterceptionModel<ClassMetadata<?>, ?> interceptionModel;
+
+   private final InterceptorMetadata<?> targetClassInterceptorMetadata;
+
+   private final boolean methodHandleInterceptionChains;
+
+   private final InterceptorMetadata<?>[] interceptors;
+
+   private transient Map<InterceptorMetadata<?>, Integer> interceptorIndexes;
+
+   private transient Map<InterceptionType, InterceptionChainPlan> lifecycleChainPlans;
+
+   private transient ConcurrentMap<Method, InterceptionChainPlan> methodChainPlans;
+
+   public ClassInterceptionPlan(InterceptionModel<ClassMetadata<?>, ?> interceptionModel, InterceptorMetadata<?> targetClassInterceptorMetadata, boolean methodHandleInterceptionChains)
+   {
+      if (interceptionModel == null)
+      {
+         throw new IllegalArgumentException("Interception model must not be null");
+      }
+      this.interceptionModel = interceptionModel;
+      this.targetClassInterceptorMetadata = targetClassInterceptorMetadata;
+      this.methodHandleInterceptionChains = methodHandleInterceptionChains;
+      Collection<? extends InterceptorMetadata<?>> allInterceptors = interceptionModel.getAllInterceptors();
+      this.interceptors = allInterceptors.toArray(new InterceptorMetadata<?>[allInterceptors.size()]);
+      initInterceptionChainPlans();
+   }
+
+   private void initInterceptionChainPlans()
+   {
+      interceptorIndexes = new HashMap<InterceptorMetadata<?>, Integer>();
+      for (int i = 0; i < interceptors.length; i++)
+      {
+         interceptorIndexes.put(interceptors[i], i);
+      }
+      lifecycleChainPlans = new EnumMap<InterceptionType, InterceptionChainPlan>(InterceptionType.class);
+      methodChainPlans = new ConcurrentHashMap<Method, InterceptionChainPlan>();
+      for (InterceptionType interceptionType : InterceptionType.values())
+      {
+         if (interceptionType.isLifecycleCallback())
+         {
+            lifecycleChainPlans.put(interceptionType, createInterceptionChainPlan(interceptionType, null));
+         }
+      }
+   }
+
+   public InterceptionModel<ClassMetadata<?>, ?> getInterceptionModel()
+   {
+      return interceptionModel;
+   }
+
+   public InterceptorMetadata<?> getTargetClassInterceptorMetadata()
+   {
+      return targetClassInterceptorMetadata;
+   }
+
+   public boolean isMethodHandleInterceptionChains()
+   {
+      return methodHandleInterceptionChains;
+   }
+
+   /**
+    * @return a new array holding an instance of each interceptor of the model, in the order expected by the chain plans
+    */
+   public Object[] createInterceptorInstances(InterceptorInstantiator<?, ?> interceptorInstantiator)
+   {
+      Object[] interceptorInstances = new Object[interceptors.length];
+      for (int i = 0; i < interceptors.length; i++)
+      {
+         InterceptorMetadata interceptorMetadata = interceptors[i];
+         StartupProfiler.Sample sample = StartupProfiler.start(StartupProfiler.Phase.INTERCEPTOR_INSTANTIATION, interceptorMetadata.getInterceptorReference());
+         try
+         {
+            interceptorInstances[i] = interceptorInstantiator.createFor(interceptorMetadata.getInterceptorReference());
+         }
+         finally
+         {
+            StartupProfiler.end(sample);
+         }
+      }
+      return interceptorInstances;
+   }
+
+   InterceptionChainPlan getLifecycleInterceptionChainPlan(InterceptionType interceptionType)
+   {
+      return lifecycleChainPlans.get(interceptionType);
+   }
+
+   InterceptionChainPlan getMethodInterceptionChainPlan(Method thisMethod)
+   {
+      InterceptionChainPlan interceptionChainPlan = methodChainPlans.get(thisMethod);
+      if (interceptionChainPlan == null)
+      {
+         interceptionChainPlan = createMethodInterceptionChainPlan(thisMethod);
+         InterceptionChainPlan existingChainPlan = methodChainPlans.putIfAbsent(thisMethod, interceptionChainPlan);
+         if (existingChainPlan != null)
+         {
+            interceptionChainPlan = existingChainPlan;
+         }
+      }
+      return interceptionChainPlan;
+   }
+
+   /**
+    * Decides, once per method, whether it is intercepted and with which interception type. Methods which
+    * are not interception candidates get an empty plan, so that they are invoked without any chain.
+    *
+    * The target method of a plan is always the intercepted method itself, since the plan is shared by all the method
+    * handlers of the class, whichever proxy class they are used with. The superclass methods of subclassing proxies
+    * are resolved by the method handlers on each invocation (see {@link InterceptionChainPlan#getTargetMethodInvoker(Method)}).
+    */
+   private InterceptionChainPlan createMethodInterceptionChainPlan(Method thisMethod)
+   {
+      if (!InterceptionUtils.isInterceptionCandidate(thisMethod))
+      {
+         return new InterceptionChainPlan(Collections.<InterceptorInvocation<?>>emptyList(), InterceptionType.AROUND_INVOKE, thisMethod);
+      }
+      if (InterceptionTypeRegistry.isSupported(InterceptionType.AROUND_TIMEOUT) && thisMethod.isAnnotationPresent(InterceptionTypeRegistry.getAnnotationClass(InterceptionType.AROUND_TIMEOUT)))
+      {
+         return createInterceptionChainPlan(InterceptionType.AROUND_TIMEOUT, thisMethod);
+      }
+      else
+      {
+         return createInterceptionChainPlan(InterceptionType.AROUND_INVOKE, thisMethod);
+      }
+   }
+
+   private InterceptionChainPlan createInterceptionChainPlan(InterceptionType interceptionType, Method method)
+   {
+      List<? extends InterceptorMetadata<?>> interceptorList = interceptionModel.getInterceptors(interceptionType, method);
+      Collection<InterceptorInvocation<?>> interceptorInvocations = new ArrayList<InterceptorInvocation<?>>();
+      for (InterceptorMetadata<?> interceptorReference : interceptorList)
+      {
+         interceptorInvocations.add(new InterceptorInvocation<Object>(interceptorReference, interceptionType, interceptorIndexes.get(interceptorReference)));
+      }
+      if (targetClassInterceptorMetadata != null && targetClassInterceptorMetadata.getInterceptorMethods(interceptionType) != null && !targetClassInterceptorMetadata.getInterceptorMethods(interceptionType).isEmpty())
+      {
+         // target class interceptor methods are bound to the target of each invocation, see InterceptorMethodInvocation
+         interceptorInvocations.add(new InterceptorInvocation<Object>(null, targetClassInterceptorMetadata, interceptionType));
+      }
+      if (methodHandleInterceptionChains && !interceptionType.isLifecycleCallback() && !interceptorInvocations.isEmpty())
+      {
+         return new MethodHandleInterceptionChainPlan(interceptorInvocations, interceptionType, method);
+      }
+      return new InterceptionChainPlan(interceptorInvocations, interceptionType, method);
+   }
+
+   private void readObject(ObjectInputStream objectInputStream) throws IOException, ClassNotFoundException
+   {
+      objectInputStream.defaultReadObject();
+      initInterceptionChainPlans();
+   }
+}
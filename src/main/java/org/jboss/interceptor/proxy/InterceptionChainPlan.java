@@ -0,0 +1,150 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.proxy;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.interceptor.proxy.javassist.DirectMethodInvokerFactory;
+import org.jboss.interceptor.spi.context.InterceptionChain;
+import org.jboss.interceptor.spi.model.InterceptionType;
+
+/**
+ * The immutable list of interceptor method invocations that apply to a given method and interception type.
+ *
+ * A plan is computed once and then reused for every invocation of that method, each invocation
+ * only allocating a lightweight {@link SimpleInterceptionChain} that keeps track of its position in the plan.
+ * The plan also holds the {@link MethodInvoker} used for invoking the target method at the end of the chain.
+ *
+ * @author Marius Bogoevici
+ */
+public class InterceptionChainPlan
+{
+   private final InterceptionType interceptionType;
+
+   private final InterceptorInvocation.InterceptorMethodInvocation[] interceptorMethodInvocations;
+
+   private final Method targetMethod;
+
+   private final MethodInvoker targetMethodInvoker;
+
+   private final ConcurrentMap<Method, MethodInvoker> otherTargetMethodInvokers = new ConcurrentHashMap<Method, MethodInvoker>();
+
+   public InterceptionChainPlan(Collection<InterceptorInvocation<?>> interceptorInvocations, InterceptionType interceptionType)
+   {
+      this(interceptorInvocations, interceptionType, null);
+   }
+
+   public InterceptionChainPlan(Collection<InterceptorInvocation<?>> interceptorInvocations, InterceptionType interceptionType, Method targetMethod)
+   {
+      this(interceptorInvocations, interceptionType, targetMethod, true);
+   }
+
+   /**
+    * @param directInvokers whether the methods are invoked through generated invokers, which only pay off for plans
+    * that are reused, or through reflection
+    */
+   InterceptionChainPlan(Collection<InterceptorInvocation<?>> interceptorInvocations, InterceptionType interceptionType, Method targetMethod, boolean directInvokers)
+   {
+      this.interceptionType = interceptionType;
+      this.targetMethod = targetMethod;
+      if (targetMethod == null)
+      {
+         this.targetMethodInvoker = null;
+      }
+      else
+      {
+         this.targetMethodInvoker = directInvokers ? DirectMethodInvokerFactory.createMethodInvoker(targetMethod) : new ReflectiveMethodInvoker(targetMethod);
+      }
+      List<InterceptorInvocation.InterceptorMethodInvocation> methodInvocations = new ArrayList<InterceptorInvocation.InterceptorMethodInvocation>();
+      for (InterceptorInvocation<?> interceptorInvocation : interceptorInvocations)
+      {
+         methodInvocations.addAll(interceptorInvocation.getInterceptorMethodInvocations(directInvokers));
+      }
+      this.interceptorMethodInvocations = methodInvocations.toArray(new InterceptorInvocation.InterceptorMethodInvocation[methodInvocations.size()]);
+   }
+
+   public InterceptionType getInterceptionType()
+   {
+      return interceptionType;
+   }
+
+   public int size()
+   {
+      return interceptorMethodInvocations.length;
+   }
+
+   Method getTargetMethod()
+   {
+      return targetMethod;
+   }
+
+   /**
+    * @return the invoker for the target method of this plan, or <code>null</code> if the plan has no target method
+    */
+   public MethodInvoker getTargetMethodInvoker()
+   {
+      return targetMethodInvoker;
+   }
+
+   /**
+    * @return the invoker for the given target method, using the one created for this plan if possible
+    */
+   MethodInvoker getTargetMethodInvoker(Method method)
+   {
+      if (targetMethodInvoker != null && targetMethod.equals(method))
+      {
+         return targetMethodInvoker;
+      }
+      // e.g. the superclass methods of other proxy classes sharing this plan
+      MethodInvoker methodInvoker = otherTargetMethodInvokers.get(method);
+      if (methodInvoker == null)
+      {
+         methodInvoker = DirectMethodInvokerFactory.createMethodInvoker(method);
+         MethodInvoker existingMethodInvoker = otherTargetMethodInvokers.putIfAbsent(method, methodInvoker);
+         if (existingMethodInvoker != null)
+         {
+            methodInvoker = existingMethodInvoker;
+         }
+      }
+      return methodInvoker;
+   }
+
+   InterceptorInvocation.InterceptorMethodInvocation getInterceptorMethodInvocation(int position)
+   {
+      return interceptorMethodInvocations[position];
+   }
+
+   public InterceptionChain newInterceptionChain(Object target, Method targetMethod)
+   {
+      return newInterceptionChain(target, null, targetMethod);
+   }
+
+   /**
+    * @param interceptorInstances the interceptor instances of the intercepted object, for plans built from
+    * invocations which are not bound to interceptor instances
+    */
+   public InterceptionChain newInterceptionChain(Object target, Object[] interceptorInstances, Method targetMethod)
+   {
+      return new SimpleInterceptionChain(this, target, interceptorInstances, targetMethod);
+   }
+}
@@ -22,6 +22,7 @@ import java.util.Collection;
 
 import javax.interceptor.InvocationContext;
 
+import org.jboss.interceptor.proxy.javassist.DirectMethodInvokerFactory;
 import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
 import org.jboss.interceptor.spi.metadata.MethodMetadata;
 import org.jboss.interceptor.spi.model.InterceptionType;
@@ -37,19 +38,41 @@ public class InterceptorInvocation<T>
    
    private InterceptionType interceptionType;
 
+   private int interceptorIndex;
+
    public InterceptorInvocation(T instance, InterceptorMetadata<?> interceptorMetadata, InterceptionType interceptionType)
    {
       this.instance = instance;
       this.interceptorMetadata = interceptorMetadata;
       this.interceptionType = interceptionType;
+      this.interceptorIndex = -1;
+   }
+
+   /**
+    * Creates an invocation which is not bound to an interceptor instance. The instance is looked up, at the given
+    * index, in the array of interceptor instances passed to each invocation, so that the same invocation can be
+    * shared by all the instances of an intercepted class.
+    */
+   InterceptorInvocation(InterceptorMetadata<?> interceptorMetadata, InterceptionType interceptionType, int interceptorIndex)
+   {
+      this(null, interceptorMetadata, interceptionType);
+      this.interceptorIndex = interceptorIndex;
    }
 
    public Collection<InterceptorMethodInvocation> getInterceptorMethodInvocations()
+   {
+      return getInterceptorMethodInvocations(true);
+   }
+
+   /**
+    * @param directInvokers whether the interceptor methods are invoked through generated invokers, or through reflection
+    */
+   Collection<InterceptorMethodInvocation> getInterceptorMethodInvocations(boolean directInvokers)
    {
       Collection<InterceptorMethodInvocation> interceptorMethodInvocations = new ArrayList<InterceptorMethodInvocation>();
       for (MethodMetadata method: interceptorMetadata.getInterceptorMethods(interceptionType))
       {
-         interceptorMethodInvocations.add(new InterceptorMethodInvocation(instance, method));
+         interceptorMethodInvocations.add(new InterceptorMethodInvocation(instance, method, directInvokers));
       }
       return interceptorMethodInvocations;
    }
@@ -60,18 +83,53 @@ public class InterceptorInvocation<T>
 
       MethodMetadata method;
 
-      InterceptorMethodInvocation(T instance, MethodMetadata method)
+      final int parameterCount;
+
+      final InterceptorMethodInvoker invoker;
+
+      InterceptorMethodInvocation(T instance, MethodMetadata method, boolean directInvoker)
       {
          this.instance = instance;
          this.method = method;
+         this.parameterCount = method.getJavaMethod().getParameterTypes().length;
+         this.invoker = directInvoker ? DirectMethodInvokerFactory.createInterceptorMethodInvoker(method.getJavaMethod()) : new ReflectiveMethodInvoker(method.getJavaMethod());
+      }
+
+      Object invoke(InvocationContext invocationContext) throws Throwable
+      {
+         return invoke(null, invocationContext);
+      }
+
+      /**
+       * Invokes the interceptor method. Interceptor methods of the target class are bound to
+       * a <code>null</code> instance, and in that case they are invoked on the given target.
+       */
+      Object invoke(Object target, InvocationContext invocationContext) throws Throwable
+      {
+         return invoke(target, null, invocationContext);
+      }
+
+      Object invoke(Object target, Object[] interceptorInstances, InvocationContext invocationContext) throws Throwable
+      {
+         return invoker.invoke(getReceiver(target, interceptorInstances), invocationContext);
+      }
+
+      /**
+       * @return the object on which the interceptor method is invoked: the interceptor instance this invocation is
+       * bound to, the one found at its index in the given interceptor instances, or the target itself
+       */
+      Object getReceiver(Object target, Object[] interceptorInstances)
+      {
+         if (interceptorIndex >= 0)
+         {
+            return interceptorInstances[interceptorIndex];
+         }
+         return isBoundToTarget() ? target : instance;
       }
 
-      Object invoke(InvocationContext invocationContext) throws Exception
+      boolean isBoundToTarget()
       {
-         if (invocationContext != null)
-            return method.getJavaMethod().invoke(instance, invocationContext);
-         else
-            return method.getJavaMethod().invoke(instance);
+         return instance == null && interceptorIndex < 0 && interceptorMetadata.isTargetClass();
       }
 
       public MethodMetadata getMethod()
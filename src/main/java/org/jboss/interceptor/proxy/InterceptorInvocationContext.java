@@ -36,7 +36,7 @@ import org.jboss.interceptor.spi.context.InterceptionChain;
 public class InterceptorInvocationContext implements InvocationContext
 {
 
-   private Map<String, Object> contextData = new HashMap<String, Object>();
+   private Map<String, Object> contextData;
 
    private Method method;
 
@@ -107,8 +107,37 @@ public class InterceptorInvocationContext implements InvocationContext
       this.parameters = null;
    }
 
+   /**
+    * Prepares a context for reuse by a {@link org.jboss.interceptor.spi.context.RecyclingInvocationContextFactory}.
+    */
+   void reset(InterceptionChain interceptionChain, Object target, Method targetMethod, Object[] parameters, Object timer)
+   {
+      this.interceptionChain = interceptionChain;
+      this.method = targetMethod;
+      this.parameters = parameters;
+      this.target = target;
+      this.timer = timer;
+   }
+
+   /**
+    * Clears all the references held by this context, keeping the context data map (if any) for reuse.
+    */
+   void clear()
+   {
+      reset(null, null, null, null, null);
+      if (contextData != null)
+      {
+         contextData.clear();
+      }
+   }
+
    public Map<String, Object> getContextData()
    {
+      // most interceptors never use the context data, so the map is created on first access
+      if (contextData == null)
+      {
+         contextData = new HashMap<String, Object>();
+      }
       return contextData;
    }
 
@@ -192,15 +221,16 @@ public class InterceptorInvocationContext implements InvocationContext
       {
          // there is no requirement to do anything if params is null
          // but this is theoretically possible only if the target method has no arguments
+         Class<?>[] methodParameterTypes = method.getParameterTypes();
          int newParametersCount = params == null? 0 : params.length;
-         if (method.getParameterTypes().length != newParametersCount)
-            throw new IllegalArgumentException("Wrong number of parameters: method has " + method.getParameterTypes().length
+         if (methodParameterTypes.length != newParametersCount)
+            throw new IllegalArgumentException("Wrong number of parameters: method has " + methodParameterTypes.length
                   + ", attempting to set " + newParametersCount + (params != null?"": " (argument was null)"));
          if (params != null)
          {
             for (int i=0; i<params.length; i++)
             {
-               Class<?> methodParameterClass = method.getParameterTypes()[i];
+               Class<?> methodParameterClass = methodParameterTypes[i];
                if (params[i] != null)
                {
                   //identity ok
@@ -256,9 +286,9 @@ public class InterceptorInvocationContext implements InvocationContext
                else
                {
                   // null is never acceptable on a primitive type
-                  if (method.getParameterTypes()[i].isPrimitive())
+                  if (methodParameterTypes[i].isPrimitive())
                   {
-                     throw new IllegalArgumentException("Trying to set a null value on a " + method.getParameterTypes()[i].getName());
+                     throw new IllegalArgumentException("Trying to set a null value on a " + methodParameterTypes[i].getName());
                   }
                }
             }
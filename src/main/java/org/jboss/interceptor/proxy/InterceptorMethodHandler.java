@@ -5,24 +5,23 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javassist.util.proxy.MethodHandler;
 import javassist.util.proxy.ProxyObject;
+import javax.interceptor.InvocationContext;
+
 import org.jboss.interceptor.reader.InterceptorMetadataUtils;
+import org.jboss.interceptor.spi.context.InterceptionChain;
 import org.jboss.interceptor.spi.context.InvocationContextFactory;
+import org.jboss.interceptor.spi.context.RecyclingInvocationContextFactory;
 import org.jboss.interceptor.spi.instance.InterceptorInstantiator;
 import org.jboss.interceptor.spi.metadata.ClassMetadata;
-import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
 import org.jboss.interceptor.spi.model.InterceptionModel;
 import org.jboss.interceptor.spi.model.InterceptionType;
-import org.jboss.interceptor.util.InterceptionTypeRegistry;
 import org.jboss.interceptor.util.InterceptionUtils;
-import org.jboss.interceptor.util.ReflectionUtils;
+import org.jboss.interceptor.util.StartupProfiler;
 
 /**
  * @author Marius Bogoevici
@@ -40,11 +39,13 @@ public class InterceptorMethodHandler implements MethodHandler, Serializable
       }
    };
 
-   private Map<InterceptorMetadata<?>, Object> interceptorHandlerInstances = new HashMap<InterceptorMetadata<?>, Object>();
-   private InterceptorMetadata<ClassMetadata<?>> targetClassInterceptorMetadata;
-   private InterceptionModel<ClassMetadata<?>, ?> interceptionModel;
-   private Object targetInstance;
-   private InvocationContextFactory invocationContextFactory;
+   private final ClassInterceptionPlan classInterceptionPlan;
+   private final Object[] interceptorInstances;
+   private final Object targetInstance;
+   private final InvocationContextFactory invocationContextFactory;
+
+   // the method handle chains bound to the target and interceptor instances of this handler, only created if enabled
+   private transient volatile ConcurrentMap<MethodHandleInterceptionChainPlan, MethodHandleInterceptionChainPlan.Binding> methodHandleBindings;
 
    public InterceptorMethodHandler(Object targetInstance,
                                    ClassMetadata<?> targetClassMetadata,
@@ -52,22 +53,38 @@ public class InterceptorMethodHandler implements MethodHandler, Serializable
                                    InterceptorInstantiator<?,?> interceptorInstantiator,
                                    InvocationContextFactory invocationContextFactory )
    {
-      this.targetInstance = targetInstance;
-      this.invocationContextFactory = invocationContextFactory;
-      if (interceptionModel == null)
-      {
-         throw new IllegalArgumentException("Interception model must not be null");
-      }
+      this(targetInstance, targetClassMetadata, interceptionModel, interceptorInstantiator, invocationContextFactory, false);
+   }
+
+   public InterceptorMethodHandler(Object targetInstance,
+                                   ClassMetadata<?> targetClassMetadata,
+                                   InterceptionModel<ClassMetadata<?>, ?> interceptionModel,
+                                   InterceptorInstantiator<?,?> interceptorInstantiator,
+                                   InvocationContextFactory invocationContextFactory,
+                                   boolean methodHandleInterceptionChains)
+   {
+      this(targetInstance,
+            new ClassInterceptionPlan(interceptionModel, InterceptorMetadataUtils.readMetadataForTargetClass(targetClassMetadata), methodHandleInterceptionChains),
+            interceptorInstantiator, invocationContextFactory);
+   }
+
+   /**
+    * Creates a method handler sharing the given plan with all the other instances of the intercepted class, so that
+    * only the target and the interceptor instances are specific to this handler.
+    */
+   public InterceptorMethodHandler(Object targetInstance,
+                                   ClassInterceptionPlan classInterceptionPlan,
+                                   InterceptorInstantiator<?,?> interceptorInstantiator,
+                                   InvocationContextFactory invocationContextFactory)
+   {
       if (interceptorInstantiator == null)
       {
          throw new IllegalArgumentException("Interception handler factory must not be null");
       }
-      this.interceptionModel = interceptionModel;
-      for (InterceptorMetadata interceptorMetadata : this.interceptionModel.getAllInterceptors())
-      {
-         interceptorHandlerInstances.put(interceptorMetadata, interceptorInstantiator.createFor(interceptorMetadata.getInterceptorReference()));
-      }
-      targetClassInterceptorMetadata = InterceptorMetadataUtils.readMetadataForTargetClass(targetClassMetadata);
+      this.targetInstance = targetInstance;
+      this.classInterceptionPlan = classInterceptionPlan;
+      this.invocationContextFactory = invocationContextFactory;
+      this.interceptorInstances = classInterceptionPlan.createInterceptorInstances(interceptorInstantiator);
    }
 
    protected boolean isProxy()
@@ -77,66 +94,128 @@ public class InterceptorMethodHandler implements MethodHandler, Serializable
 
    public Object invoke(Object self, Method thisMethod, Method proceed, Object[] args) throws Throwable
    {
-      ReflectionUtils.ensureAccessible(thisMethod);
       if (proceed == null)
       {
          if (thisMethod.getName().equals(InterceptionUtils.POST_CONSTRUCT))
          {
-            return executeInterception(isProxy() ? null : self, null, null, null, InterceptionType.POST_CONSTRUCT);
+            StartupProfiler.Sample sample = StartupProfiler.start(StartupProfiler.Phase.POST_CONSTRUCT, classInterceptionPlan.getInterceptionModel().getInterceptedEntity());
+            try
+            {
+               return executeInterception(isProxy() ? null : self, null, null, classInterceptionPlan.getLifecycleInterceptionChainPlan(InterceptionType.POST_CONSTRUCT));
+            }
+            finally
+            {
+               StartupProfiler.end(sample);
+            }
          }
          else if (thisMethod.getName().equals(InterceptionUtils.PRE_DESTROY))
          {
-            return executeInterception(isProxy() ? null : self, null, null, null, InterceptionType.PRE_DESTROY);
+            return executeInterception(isProxy() ? null : self, null, null, classInterceptionPlan.getLifecycleInterceptionChainPlan(InterceptionType.PRE_DESTROY));
          }
       }
       else
       {
-         if (!InterceptionUtils.isInterceptionCandidate(thisMethod))
+         InterceptionChainPlan interceptionChainPlan = classInterceptionPlan.getMethodInterceptionChainPlan(thisMethod);
+         InvocationTraceRecorder recorder = InvocationTraceRecorder.getActiveRecorder();
+         if (recorder == null)
          {
-            if (isProxy())
-            {
-               return thisMethod.invoke(targetInstance, args);
-            }
-            else
-            {
-               return proceed.invoke(self, args);
-            }
+            return invokeMethod(self, thisMethod, proceed, args, interceptionChainPlan);
          }
-         if (InterceptionTypeRegistry.isSupported(InterceptionType.AROUND_TIMEOUT) && thisMethod.isAnnotationPresent(InterceptionTypeRegistry.getAnnotationClass(InterceptionType.AROUND_TIMEOUT)))
+         long start = System.nanoTime();
+         try
          {
-            return executeInterception(isProxy() ? null : self, thisMethod, thisMethod, args, InterceptionType.AROUND_TIMEOUT);
+            return invokeMethod(self, thisMethod, proceed, args, interceptionChainPlan);
          }
-         else
+         finally
          {
-            return executeInterception(isProxy() ? null : self, thisMethod, thisMethod, args, InterceptionType.AROUND_INVOKE);
+            recorder.record(thisMethod, args, interceptionChainPlan.size(), start, System.nanoTime() - start);
          }
       }
       return null;
 
    }
 
-   private Object executeInterception(Object self, Method proceedingMethod, Method thisMethod, Object[] args, InterceptionType interceptionType) throws Throwable
+   private Object invokeMethod(Object self, Method thisMethod, Method proceed, Object[] args, InterceptionChainPlan interceptionChainPlan) throws Throwable
    {
+      if (interceptionChainPlan.size() == 0)
+      {
+         // nothing to run, invoke the target directly
+         if (isProxy() && targetInstance != self)
+         {
+            return interceptionChainPlan.getTargetMethodInvoker().invoke(targetInstance, args);
+         }
+         // the superclass method of the proxy class of this instance, which is not part of the shared plan, so that
+         // a subclassing proxy overriding all the methods behaves as if this one was not overridden
+         return interceptionChainPlan.getTargetMethodInvoker(proceed).invoke(self, args);
+      }
+      return executeInterception(isProxy() ? null : self, thisMethod, args, interceptionChainPlan);
+   }
 
-      List<? extends InterceptorMetadata<?>> interceptorList = interceptionModel.getInterceptors(interceptionType, thisMethod);
-      Collection<InterceptorInvocation<?>> interceptorInvocations = new ArrayList<InterceptorInvocation<?>>();
-      for (InterceptorMetadata interceptorReference : interceptorList)
+   private Object executeInterception(Object self, Method thisMethod, Object[] args, InterceptionChainPlan interceptionChainPlan) throws Throwable
+   {
+      Object target = isProxy() ? targetInstance : self;
+      InterceptionChain chain = newInterceptionChain(interceptionChainPlan, target, thisMethod);
+      InvocationContext invocationContext = invocationContextFactory.newInvocationContext(chain, target, thisMethod, args);
+      if (invocationContextFactory instanceof RecyclingInvocationContextFactory)
       {
-         interceptorInvocations.add(new InterceptorInvocation(interceptorHandlerInstances.get(interceptorReference), interceptorReference, interceptionType));
+         try
+         {
+            return chain.invokeNextInterceptor(invocationContext);
+         }
+         finally
+         {
+            ((RecyclingInvocationContextFactory) invocationContextFactory).release(invocationContext);
+         }
       }
-      if (targetClassInterceptorMetadata != null && targetClassInterceptorMetadata.getInterceptorMethods(interceptionType) != null && !targetClassInterceptorMetadata.getInterceptorMethods(interceptionType).isEmpty())
+      return chain.invokeNextInterceptor(invocationContext);
+   }
+
+   private InterceptionChain newInterceptionChain(InterceptionChainPlan interceptionChainPlan, Object target, Method thisMethod)
+   {
+      if (interceptionChainPlan instanceof MethodHandleInterceptionChainPlan)
       {
-         interceptorInvocations.add(new InterceptorInvocation(isProxy() ? targetInstance : self, targetClassInterceptorMetadata, interceptionType));
+         MethodHandleInterceptionChainPlan.Binding binding = getMethodHandleBinding((MethodHandleInterceptionChainPlan) interceptionChainPlan, target);
+         if (binding != null)
+         {
+            return binding.newInterceptionChain();
+         }
+      }
+      return interceptionChainPlan.newInterceptionChain(target, interceptorInstances, thisMethod);
+   }
+
+   private MethodHandleInterceptionChainPlan.Binding getMethodHandleBinding(MethodHandleInterceptionChainPlan interceptionChainPlan, Object target)
+   {
+      ConcurrentMap<MethodHandleInterceptionChainPlan, MethodHandleInterceptionChainPlan.Binding> methodHandleBindings = this.methodHandleBindings;
+      if (methodHandleBindings == null)
+      {
+         synchronized (this)
+         {
+            methodHandleBindings = this.methodHandleBindings;
+            if (methodHandleBindings == null)
+            {
+               methodHandleBindings = new ConcurrentHashMap<MethodHandleInterceptionChainPlan, MethodHandleInterceptionChainPlan.Binding>();
+               this.methodHandleBindings = methodHandleBindings;
+            }
+         }
+      }
+      MethodHandleInterceptionChainPlan.Binding binding = methodHandleBindings.get(interceptionChainPlan);
+      // the target only changes if the handler of a subclassing proxy is shared by several instances
+      if (binding == null || binding.getTarget() != target)
+      {
+         binding = interceptionChainPlan.bind(target, interceptorInstances);
+         if (binding != null)
+         {
+            methodHandleBindings.put(interceptionChainPlan, binding);
+         }
       }
-      SimpleInterceptionChain chain = new SimpleInterceptionChain(interceptorInvocations, interceptionType, isProxy() ? targetInstance : self, isProxy() ? thisMethod : proceedingMethod);
-      return chain.invokeNextInterceptor(invocationContextFactory.newInvocationContext(chain, isProxy() ? targetInstance : self, isProxy() ? thisMethod : proceedingMethod, args));
+      return binding;
    }
 
    private void writeObject(ObjectOutputStream objectOutputStream) throws IOException
    {
       try
       {
-         executeInterception(isProxy() ? targetInstance : null, null, null, null, InterceptionType.PRE_PASSIVATE);
+         executeInterception(isProxy() ? targetInstance : null, null, null, classInterceptionPlan.getLifecycleInterceptionChainPlan(InterceptionType.PRE_PASSIVATE));
          objectOutputStream.defaultWriteObject();
       }
       catch (Throwable throwable)
@@ -154,7 +233,7 @@ public class InterceptorMethodHandler implements MethodHandler, Serializable
          {
             ((ProxyObject) targetInstance).setHandler(DEFAULT_METHOD_HANDLER);
          }
-         executeInterception(isProxy() ? targetInstance : null, null, null, null, InterceptionType.POST_ACTIVATE);
+         executeInterception(isProxy() ? targetInstance : null, null, null, classInterceptionPlan.getLifecycleInterceptionChainPlan(InterceptionType.POST_ACTIVATE));
       }
       catch (Throwable throwable)
       {
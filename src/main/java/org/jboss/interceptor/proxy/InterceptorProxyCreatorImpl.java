@@ -19,14 +19,24 @@ package org.jboss.interceptor.proxy;
 
 import java.lang.reflect.Constructor;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javassist.util.proxy.MethodFilter;
 import javassist.util.proxy.MethodHandler;
 import javassist.util.proxy.ProxyObject;
 
 import org.jboss.interceptor.proxy.javassist.CompositeHandler;
+import org.jboss.interceptor.proxy.javassist.DirectMethodInvokerFactory;
+import org.jboss.interceptor.proxy.javassist.InterceptedMethodFilter;
+import org.jboss.interceptor.reader.InterceptorMetadataUtils;
+import org.jboss.interceptor.reader.cache.MetadataCachingReader;
 import org.jboss.interceptor.spi.context.InvocationContextFactory;
 import org.jboss.interceptor.spi.instance.InterceptorInstantiator;
 import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
 import org.jboss.interceptor.spi.model.InterceptionModel;
 import org.jboss.interceptor.util.InterceptionUtils;
 import org.jboss.interceptor.util.ReflectionFactoryUtils;
@@ -37,11 +47,62 @@ import org.jboss.interceptor.util.ReflectionFactoryUtils;
 public class InterceptorProxyCreatorImpl implements InterceptorProxyCreator
 {
 
+   /**
+    * The instantiators used by {@link #createProxyInstance(Class, MethodHandler)}, or <code>null</code>
+    * for proxy classes which cannot be instantiated. These are reflective, since proxy classes created with
+    * a handler are not shared between instances, and generating an instantiator for each of them would cost
+    * more than it saves.
+    */
+   private static final ClassValue<ConstructorInvoker<?>> proxyInstantiators = new ClassValue<ConstructorInvoker<?>>()
+   {
+      @Override
+      protected ConstructorInvoker<?> computeValue(Class<?> proxyClass)
+      {
+         Constructor<?> constructor = getNoArgConstructor(proxyClass);
+         try
+         {
+            if (constructor == null)
+            {
+               constructor = ReflectionFactoryUtils.getReflectionFactoryConstructor(proxyClass);
+            }
+         }
+         catch (NoSuchMethodException e)
+         {
+            return null;
+         }
+         return constructor == null ? null : new ReflectiveConstructorInvoker(constructor);
+      }
+   };
+
+   /**
+    * The invokers of the constructors used by {@link #createAdvisedSubclassInstance(ClassMetadata, Class[], Object[])},
+    * by parameter types. Subclassing proxy classes are shared (see {@link org.jboss.interceptor.proxy.javassist.ProxyClassCache}),
+    * so direct invokers are generated for their constructors.
+    */
+   private static final ClassValue<ConcurrentMap<List<Class<?>>, ConstructorInvoker<?>>> constructorInvokers = new ClassValue<ConcurrentMap<List<Class<?>>, ConstructorInvoker<?>>>()
+   {
+      @Override
+      protected ConcurrentMap<List<Class<?>>, ConstructorInvoker<?>> computeValue(Class<?> proxyClass)
+      {
+         return new ConcurrentHashMap<List<Class<?>>, ConstructorInvoker<?>>();
+      }
+   };
+
    private InvocationContextFactory invocationContextFactory;
    private InterceptionModel<ClassMetadata<?>, ?> interceptionModel;
 
    private InterceptorInstantiator<?,?> interceptorInstantiator;
 
+   private boolean methodHandleInterceptionChains;
+
+   private MetadataCachingReader metadataCachingReader;
+
+   // the immutable parts of the method handlers, shared by all the instances of a class
+   private final ConcurrentMap<Class<?>, ClassInterceptionPlan> classInterceptionPlans = new ConcurrentHashMap<Class<?>, ClassInterceptionPlan>();
+
+   // reusing the same filter allows the proxy class cache to compute its signature only once
+   private final ConcurrentMap<Class<?>, MethodFilter> subclassingMethodFilters = new ConcurrentHashMap<Class<?>, MethodFilter>();
+
    public InterceptorProxyCreatorImpl(InterceptorInstantiator<?,?> interceptorInstantiator, InvocationContextFactory invocationContextFactory, InterceptionModel<ClassMetadata<?>, ?> interceptionModel)
    {
       this.interceptorInstantiator = interceptorInstantiator;
@@ -49,6 +110,26 @@ public class InterceptorProxyCreatorImpl implements InterceptorProxyCreator
       this.interceptionModel = interceptionModel;
    }
 
+   /**
+    * Enables or disables the invocation of around-invoke and around-timeout interceptor chains through
+    * {@link java.lang.invoke.MethodHandle}s (see {@link MethodHandleInterceptionChainPlan}) for the method
+    * handlers created from now on. By default, {@link SimpleInterceptionChain}s are used.
+    */
+   public void setMethodHandleInterceptionChains(boolean methodHandleInterceptionChains)
+   {
+      this.methodHandleInterceptionChains = methodHandleInterceptionChains;
+      classInterceptionPlans.clear();
+   }
+
+   /**
+    * Sets the reader used for obtaining the interceptor metadata of the target classes. If none is set, the metadata
+    * is read once per target class.
+    */
+   public void setMetadataCachingReader(MetadataCachingReader metadataCachingReader)
+   {
+      this.metadataCachingReader = metadataCachingReader;
+      classInterceptionPlans.clear();
+   }
 
    public <T> T createSubclassingProxy(ClassMetadata<T> proxifiedClass, Class<?>[] constructorTypes, Object[] constructorArguments)
    {
@@ -58,64 +139,115 @@ public class InterceptorProxyCreatorImpl implements InterceptorProxyCreator
       return instance;
    }
 
+   /**
+    * Creates a proxy forwarding the invocations of all its methods to the given target instance. The proxy class is
+    * shared by all the delegating proxies of the class, and may have been generated at build time, so unlike the proxy
+    * classes of {@link InterceptionUtils#createProxyClassWithHandler(ClassMetadata, MethodHandler)}, it is available in
+    * closed-world mode (see {@link org.jboss.interceptor.proxy.javassist.ProxyClassCache}).
+    */
+   public <T> T createDelegatingProxy(T target, ClassMetadata<T> proxifiedClass)
+   {
+      Class<T> proxyClass = InterceptionUtils.createProxyClass((Class<T>) proxifiedClass.getJavaClass(), false);
+      return createProxyInstance(proxyClass, createMethodHandler(target, proxifiedClass));
+   }
+
    public <T> T createAdvisedSubclassInstance(ClassMetadata<T> proxifiedClass, Class<?>[] constructorParameterTypes, Object[] constructorArguments)
    {
        try
        {
-           Class<T> clazz = InterceptionUtils.createProxyClass(((Class<T>) proxifiedClass.getJavaClass()), true);
-           Constructor<T> constructor = clazz.getConstructor(constructorParameterTypes);
-           return constructor.newInstance(constructorArguments);
+           Class<T> clazz = InterceptionUtils.createProxyClass(((Class<T>) proxifiedClass.getJavaClass()), true, getSubclassingMethodFilter(proxifiedClass));
+           return getConstructorInvoker(clazz, constructorParameterTypes).newInstance(constructorArguments);
        }
-       catch (Exception e)
+       catch (InterceptorException e)
+       {
+           throw e;
+       }
+       catch (Throwable e)
        {
            throw new InterceptorException(e);
        }
    }
 
-   public <T> T createProxyInstance(Class<T> proxyClass, MethodHandler interceptorMethodHandler)
+   /**
+    * Only the methods that can be intercepted need to be overridden by a subclassing proxy.
+    */
+   private MethodFilter getSubclassingMethodFilter(ClassMetadata<?> proxifiedClass)
    {
-      Constructor<T> constructor = null;
-      try
+      MethodFilter methodFilter = subclassingMethodFilters.get(proxifiedClass.getJavaClass());
+      if (methodFilter == null)
       {
-         constructor = getNoArgConstructor(proxyClass);
-         if (constructor == null)
+         methodFilter = new InterceptedMethodFilter(interceptionModel, getClassInterceptionPlan(proxifiedClass).getTargetClassInterceptorMetadata());
+         MethodFilter existingMethodFilter = subclassingMethodFilters.putIfAbsent(proxifiedClass.getJavaClass(), methodFilter);
+         if (existingMethodFilter != null)
          {
-            constructor = ReflectionFactoryUtils.getReflectionFactoryConstructor(proxyClass);
+            methodFilter = existingMethodFilter;
          }
       }
-      catch (Exception e)
-      {
-         throw new InterceptorException(e);
-      }
-      if (constructor == null)
+      return methodFilter;
+   }
+
+   public <T> T createProxyInstance(Class<T> proxyClass, MethodHandler interceptorMethodHandler)
+   {
+      ConstructorInvoker<T> instantiator = (ConstructorInvoker<T>) proxyInstantiators.get(proxyClass);
+      if (instantiator == null)
          throw new InterceptorException("Cannot found a constructor for the proxy class: " + proxyClass + ". " +
                "No no-arg constructor is available, and sun.reflect.ReflectionFactory is not accessible");
       try
       {
-         T proxyObject = constructor.newInstance();
+         T proxyObject = instantiator.newInstance(null);
          if (interceptorMethodHandler != null)
          {
             ((ProxyObject) proxyObject).setHandler(interceptorMethodHandler);
          }
          return proxyObject;
       }
-      catch (Exception e)
+      catch (Throwable e)
       {
          throw new InterceptorException(e);
       }
    }
 
+   private static <T> ConstructorInvoker<T> getConstructorInvoker(Class<T> clazz, Class<?>[] constructorParameterTypes) throws NoSuchMethodException
+   {
+      List<Class<?>> key = constructorParameterTypes == null ? Collections.<Class<?>>emptyList() : Arrays.asList(constructorParameterTypes);
+      ConcurrentMap<List<Class<?>>, ConstructorInvoker<?>> classConstructorInvokers = constructorInvokers.get(clazz);
+      ConstructorInvoker<T> constructorInvoker = (ConstructorInvoker<T>) classConstructorInvokers.get(key);
+      if (constructorInvoker == null)
+      {
+         constructorInvoker = DirectMethodInvokerFactory.createConstructorInvoker(clazz.getConstructor(constructorParameterTypes));
+         classConstructorInvokers.putIfAbsent(key, constructorInvoker);
+      }
+      return constructorInvoker;
+   }
+
    public <T> MethodHandler createMethodHandler(Object target, ClassMetadata<T> proxyClass)
    {
-      return new InterceptorMethodHandler(target, proxyClass, interceptionModel, interceptorInstantiator, invocationContextFactory);
+      return new InterceptorMethodHandler(target, getClassInterceptionPlan(proxyClass), interceptorInstantiator, invocationContextFactory);
    }
 
     public <T> MethodHandler createSubclassingMethodHandler(Object targetInstance, ClassMetadata<T> proxyClass)
     {
-       return new InterceptorMethodHandler(targetInstance,  proxyClass, interceptionModel, interceptorInstantiator, invocationContextFactory);
+       return new InterceptorMethodHandler(targetInstance, getClassInterceptionPlan(proxyClass), interceptorInstantiator, invocationContextFactory);
     }
 
-   private <T> Constructor<T> getNoArgConstructor(Class<T> clazz)
+   private ClassInterceptionPlan getClassInterceptionPlan(ClassMetadata<?> targetClass)
+   {
+      ClassInterceptionPlan classInterceptionPlan = classInterceptionPlans.get(targetClass.getJavaClass());
+      if (classInterceptionPlan == null)
+      {
+         InterceptorMetadata<?> targetClassInterceptorMetadata = metadataCachingReader != null ? metadataCachingReader.getTargetClassInterceptorMetadata(targetClass)
+               : InterceptorMetadataUtils.readMetadataForTargetClass(targetClass);
+         classInterceptionPlan = new ClassInterceptionPlan(interceptionModel, targetClassInterceptorMetadata, methodHandleInterceptionChains);
+         ClassInterceptionPlan existingClassInterceptionPlan = classInterceptionPlans.putIfAbsent(targetClass.getJavaClass(), classInterceptionPlan);
+         if (existingClassInterceptionPlan != null)
+         {
+            classInterceptionPlan = existingClassInterceptionPlan;
+         }
+      }
+      return classInterceptionPlan;
+   }
+
+   private static <T> Constructor<T> getNoArgConstructor(Class<T> clazz)
    {
       Constructor<T> constructor;
       try
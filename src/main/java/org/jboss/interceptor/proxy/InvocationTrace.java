@@ -0,0 +1,285 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.proxy;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An invocation trace, as recorded by {@link InvocationTraceRecorder}.
+ *
+ * After a header made of a magic number and a version, the trace is a sequence of records, each starting with its
+ * kind, and ending with an end marker:
+ * <ul>
+ * <li>a method, defined before the first call to it, as the name of its declaring class, its name and its descriptor;</li>
+ * <li>an argument type, defined before the first call having an argument of that type, as the name of the type;</li>
+ * <li>a call, as the identifier of the method, the length of the interception chain, the number of arguments, the
+ * identifier of the type of each argument (0 for <code>null</code>), the time elapsed since the start of the
+ * previously recorded call and the duration of the call, in nanoseconds.</li>
+ * </ul>
+ * Methods and types are identified by the order of their definitions. All the numbers of the records are written as
+ * variable-length integers, and the time elapsed between calls, which may be negative, is zigzag-encoded.
+ *
+ * @author Marius Bogoevici
+ */
+public class InvocationTrace
+{
+   static final int MAGIC = 0x4A495452;
+
+   static final int VERSION = 1;
+
+   static final byte END = 0;
+
+   static final byte METHOD = 1;
+
+   static final byte TYPE = 2;
+
+   static final byte CALL = 3;
+
+   private final List<TracedMethod> methods;
+
+   private final List<Call> calls;
+
+   private InvocationTrace(List<TracedMethod> methods, List<Call> calls)
+   {
+      this.methods = Collections.unmodifiableList(methods);
+      this.calls = Collections.unmodifiableList(calls);
+   }
+
+   public static InvocationTrace read(File file) throws IOException
+   {
+      return read(new FileInputStream(file));
+   }
+
+   /**
+    * Reads a trace from the given stream, which is closed afterwards.
+    *
+    * @throws IOException if the trace cannot be read, or is not a complete invocation trace
+    */
+   public static InvocationTrace read(InputStream inputStream) throws IOException
+   {
+      DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream));
+      try
+      {
+         if (input.readInt() != MAGIC || input.readShort() != VERSION)
+         {
+            throw new IOException("Not an invocation trace, or written by another version");
+         }
+         List<TracedMethod> methods = new ArrayList<TracedMethod>();
+         List<String> types = new ArrayList<String>();
+         types.add(null);
+         List<Call> calls = new ArrayList<Call>();
+         long startTime = 0;
+         for (byte kind = input.readByte(); kind != END; kind = input.readByte())
+         {
+            switch (kind)
+            {
+               case METHOD:
+                  methods.add(new TracedMethod(input.readUTF(), input.readUTF(), input.readUTF()));
+                  break;
+               case TYPE:
+                  types.add(input.readUTF());
+                  break;
+               case CALL:
+                  TracedMethod method = methods.get(readIndex(input, methods.size()));
+                  int chainLength = (int) readVarLong(input);
+                  String[] argumentTypes = new String[(int) readVarLong(input)];
+                  for (int i = 0; i < argumentTypes.length; i++)
+                  {
+                     argumentTypes[i] = types.get(readIndex(input, types.size()));
+                  }
+                  long startTimeDelta = readVarLong(input);
+                  startTime += (startTimeDelta >>> 1) ^ -(startTimeDelta & 1);
+                  calls.add(new Call(method, chainLength, argumentTypes, startTime, readVarLong(input)));
+                  break;
+               default:
+                  throw new IOException("Corrupted invocation trace, unknown record kind " + kind);
+            }
+         }
+         return new InvocationTrace(methods, calls);
+      }
+      catch (EOFException e)
+      {
+         throw new IOException("Truncated invocation trace, which was not closed", e);
+      }
+      finally
+      {
+         input.close();
+      }
+   }
+
+   private static int readIndex(DataInput input, int size) throws IOException
+   {
+      long index = readVarLong(input);
+      if (index < 0 || index >= size)
+      {
+         throw new IOException("Corrupted invocation trace, undefined identifier " + index);
+      }
+      return (int) index;
+   }
+
+   static void writeVarLong(DataOutput output, long value) throws IOException
+   {
+      while ((value & ~0x7FL) != 0)
+      {
+         output.writeByte((int) (value & 0x7F) | 0x80);
+         value >>>= 7;
+      }
+      output.writeByte((int) value);
+   }
+
+   static long readVarLong(DataInput input) throws IOException
+   {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7)
+      {
+         byte b = input.readByte();
+         value |= (long) (b & 0x7F) << shift;
+         if ((b & 0x80) == 0)
+         {
+            return value;
+         }
+      }
+      throw new IOException("Corrupted invocation trace, malformed number");
+   }
+
+   /**
+    * @return the methods called in the trace, in the order of their first call
+    */
+   public List<TracedMethod> getMethods()
+   {
+      return methods;
+   }
+
+   /**
+    * @return the calls, in the order in which they completed
+    */
+   public List<Call> getCalls()
+   {
+      return calls;
+   }
+
+   /**
+    * The identity of a called method, which does not require its class to be loaded.
+    */
+   public static final class TracedMethod
+   {
+      private final String declaringClassName;
+
+      private final String name;
+
+      private final String descriptor;
+
+      TracedMethod(String declaringClassName, String name, String descriptor)
+      {
+         this.declaringClassName = declaringClassName;
+         this.name = name;
+         this.descriptor = descriptor;
+      }
+
+      public String getDeclaringClassName()
+      {
+         return declaringClassName;
+      }
+
+      public String getName()
+      {
+         return name;
+      }
+
+      public String getDescriptor()
+      {
+         return descriptor;
+      }
+
+      @Override
+      public String toString()
+      {
+         return declaringClassName + "." + name + descriptor;
+      }
+   }
+
+   public static final class Call
+   {
+      private final TracedMethod method;
+
+      private final int chainLength;
+
+      private final String[] argumentTypes;
+
+      private final long startTime;
+
+      private final long duration;
+
+      Call(TracedMethod method, int chainLength, String[] argumentTypes, long startTime, long duration)
+      {
+         this.method = method;
+         this.chainLength = chainLength;
+         this.argumentTypes = argumentTypes;
+         this.startTime = startTime;
+         this.duration = duration;
+      }
+
+      public TracedMethod getMethod()
+      {
+         return method;
+      }
+
+      /**
+       * @return the number of interceptor methods the call went through
+       */
+      public int getChainLength()
+      {
+         return chainLength;
+      }
+
+      /**
+       * @return the names of the runtime types of the arguments, with <code>null</code> for the null arguments
+       */
+      public String[] getArgumentTypes()
+      {
+         return argumentTypes.clone();
+      }
+
+      /**
+       * @return the time at which the call started, in nanoseconds since the start of the recording
+       */
+      public long getStartTime()
+      {
+         return startTime;
+      }
+
+      /**
+       * @return the duration of the call, in nanoseconds, including the interceptors and the target method
+       */
+      public long getDuration()
+      {
+         return duration;
+      }
+   }
+}
@@ -0,0 +1,197 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.proxy;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.interceptor.util.DescriptorUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the around-invoke interceptions performed by {@link InterceptorMethodHandler}s into a trace (see
+ * {@link InvocationTrace} for the format), which can be replayed offline for benchmarking the interception of a real
+ * mix of calls.
+ *
+ * At most one recorder is active at a time, from {@link #start(OutputStream)} until {@link #close()}. Recording a call
+ * takes a lock on the recorder, so recording slows down concurrent calls. When no recorder is active, calls only pay
+ * for reading a volatile field. A recorder which fails to write stops recording, without failing the calls.
+ *
+ * @author Marius Bogoevici
+ */
+public class InvocationTraceRecorder implements Closeable
+{
+   private static final Logger LOG = LoggerFactory.getLogger(InvocationTraceRecorder.class);
+
+   private static volatile InvocationTraceRecorder activeRecorder;
+
+   private final DataOutputStream output;
+
+   // the identifiers written for the methods and the argument types, the type identifier 0 standing for null
+   private final Map<Method, Integer> methodIds = new HashMap<Method, Integer>();
+
+   private final Map<Class<?>, Integer> typeIds = new HashMap<Class<?>, Integer>();
+
+   private long previousStartTime;
+
+   private boolean closed;
+
+   private InvocationTraceRecorder(OutputStream outputStream) throws IOException
+   {
+      this.output = new DataOutputStream(new BufferedOutputStream(outputStream));
+      output.writeInt(InvocationTrace.MAGIC);
+      output.writeShort(InvocationTrace.VERSION);
+      this.previousStartTime = System.nanoTime();
+   }
+
+   /**
+    * Starts recording the calls to the given stream, which is closed together with the recorder.
+    *
+    * @throws IllegalStateException if a recorder is already active
+    */
+   public static synchronized InvocationTraceRecorder start(OutputStream outputStream) throws IOException
+   {
+      if (activeRecorder != null)
+      {
+         throw new IllegalStateException("An invocation trace is already being recorded");
+      }
+      activeRecorder = new InvocationTraceRecorder(outputStream);
+      return activeRecorder;
+   }
+
+   public static InvocationTraceRecorder start(File file) throws IOException
+   {
+      return start(new FileOutputStream(file));
+   }
+
+   /**
+    * @return the active recorder, or <code>null</code> if no calls are being recorded
+    */
+   public static InvocationTraceRecorder getActiveRecorder()
+   {
+      return activeRecorder;
+   }
+
+   /**
+    * Records a call of the given method, with the given arguments, which went through an interception chain of the given
+    * length, having started at the given {@link System#nanoTime()} and lasted for the given number of nanoseconds.
+    */
+   synchronized void record(Method method, Object[] arguments, int chainLength, long startTime, long duration)
+   {
+      if (closed)
+      {
+         return;
+      }
+      try
+      {
+         int methodId = getMethodId(method);
+         int argumentCount = arguments == null ? 0 : arguments.length;
+         int[] argumentTypeIds = new int[argumentCount];
+         for (int i = 0; i < argumentCount; i++)
+         {
+            argumentTypeIds[i] = arguments[i] == null ? 0 : getTypeId(arguments[i].getClass());
+         }
+         output.writeByte(InvocationTrace.CALL);
+         InvocationTrace.writeVarLong(output, methodId);
+         InvocationTrace.writeVarLong(output, chainLength);
+         InvocationTrace.writeVarLong(output, argumentCount);
+         for (int argumentTypeId : argumentTypeIds)
+         {
+            InvocationTrace.writeVarLong(output, argumentTypeId);
+         }
+         // the calls are recorded as they complete, so they may have started before the previous one
+         long startTimeDelta = startTime - previousStartTime;
+         InvocationTrace.writeVarLong(output, (startTimeDelta << 1) ^ (startTimeDelta >> 63));
+         InvocationTrace.writeVarLong(output, duration);
+         previousStartTime = startTime;
+      }
+      catch (IOException e)
+      {
+         LOG.warn("Cannot write the invocation trace, stopping recording: " + e);
+         close();
+      }
+   }
+
+   private int getMethodId(Method method) throws IOException
+   {
+      Integer methodId = methodIds.get(method);
+      if (methodId == null)
+      {
+         methodId = methodIds.size();
+         methodIds.put(method, methodId);
+         output.writeByte(InvocationTrace.METHOD);
+         output.writeUTF(method.getDeclaringClass().getName());
+         output.writeUTF(method.getName());
+         output.writeUTF(DescriptorUtils.getDescriptor(method));
+      }
+      return methodId;
+   }
+
+   private int getTypeId(Class<?> type) throws IOException
+   {
+      Integer typeId = typeIds.get(type);
+      if (typeId == null)
+      {
+         typeId = typeIds.size() + 1;
+         typeIds.put(type, typeId);
+         output.writeByte(InvocationTrace.TYPE);
+         output.writeUTF(type.getName());
+      }
+      return typeId;
+   }
+
+   /**
+    * Stops recording, and closes the trace.
+    */
+   public void close()
+   {
+      synchronized (InvocationTraceRecorder.class)
+      {
+         if (activeRecorder == this)
+         {
+            activeRecorder = null;
+         }
+      }
+      synchronized (this)
+      {
+         if (closed)
+         {
+            return;
+         }
+         closed = true;
+         try
+         {
+            output.writeByte(InvocationTrace.END);
+            output.close();
+         }
+         catch (IOException e)
+         {
+            LOG.warn("Cannot close the invocation trace: " + e);
+         }
+      }
+   }
+}
@@ -0,0 +1,82 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.proxy;
+
+import java.lang.invoke.MethodHandle;
+
+import javax.interceptor.InvocationContext;
+
+import org.jboss.interceptor.spi.context.InterceptionChain;
+
+/**
+ * An {@link InterceptionChain} that invokes the method handles composed by a {@link MethodHandleInterceptionChainPlan}
+ * for a given target and interceptor instances (see {@link MethodHandleInterceptionChainPlan.Binding}).
+ *
+ * The chain only keeps the handle to invoke next. Each interceptor handle replaces it with the handle of the following
+ * interceptor, or of the target method, before invoking its interceptor method, and the chain restores it once that
+ * handle returns, so that an interceptor may proceed more than once.
+ *
+ * @author Marius Bogoevici
+ */
+public class MethodHandleInterceptionChain implements InterceptionChain
+{
+   private final MethodHandle targetHandle;
+
+   private MethodHandle nextHandle;
+
+   MethodHandleInterceptionChain(MethodHandle entryHandle, MethodHandle targetHandle)
+   {
+      this.nextHandle = entryHandle;
+      this.targetHandle = targetHandle;
+   }
+
+   public Object invokeNextInterceptor(InvocationContext invocationContext) throws Throwable
+   {
+      MethodHandle handle = nextHandle;
+      try
+      {
+         return (Object) handle.invokeExact(this, invocationContext);
+      }
+      finally
+      {
+         nextHandle = handle;
+      }
+   }
+
+   public boolean hasNextInterceptor()
+   {
+      return nextHandle != targetHandle;
+   }
+
+   /**
+    * Folded into the handle of each interceptor, see {@link MethodHandleInterceptionChainPlan#bind(Object, Object[])}.
+    */
+   static void setNextHandle(MethodHandle nextHandle, MethodHandleInterceptionChain interceptionChain, InvocationContext invocationContext)
+   {
+      interceptionChain.nextHandle = nextHandle;
+   }
+
+   /**
+    * Filters the invocation context into the arguments of the target method, see
+    * {@link MethodHandleInterceptionChainPlan#bind(Object, Object[])}.
+    */
+   static Object[] getParameters(InvocationContext invocationContext)
+   {
+      return invocationContext.getMethod() != null ? invocationContext.getParameters() : null;
+   }
+}
@@ -0,0 +1,225 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.proxy;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Collection;
+
+import javax.interceptor.InvocationContext;
+
+import org.jboss.interceptor.spi.context.InterceptionChain;
+import org.jboss.interceptor.spi.model.InterceptionType;
+import org.jboss.interceptor.util.ReflectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link InterceptionChainPlan} which composes the interceptor methods and the target method into a single
+ * {@link MethodHandle}, invoked by {@link MethodHandleInterceptionChain}s.
+ *
+ * When the plan is created, each interceptor method is adapted to a handle of type
+ * <code>(Object receiver, InvocationContext)Object</code>, and the target method to a handle of type
+ * <code>(Object target, Object[] arguments)Object</code>. These are then bound, by {@link #bind(Object, Object[])},
+ * to the target and the interceptor instances of a method handler: the target handle takes its arguments from the
+ * invocation context, and the handle of each interceptor is folded with a step storing the handle of the next one in
+ * the chain, so that invoking the composed handle runs the whole chain. The method handlers keep the composed handles
+ * (see {@link Binding}), so that they are built only once for each of them, and the interceptor instances and the
+ * target are constants within them. Once the JVM customizes a composed handle which is invoked often, the JIT compiler
+ * can then inline the interceptor methods into it. An interceptor still reaches the next one through
+ * {@link InvocationContext#proceed()}, which invokes the handle stored in the chain.
+ *
+ * If the handles cannot be created (e.g. an interceptor method does not take an {@link InvocationContext}, as
+ * it happens for lifecycle callbacks), the plan falls back to creating {@link SimpleInterceptionChain}s.
+ *
+ * @author Marius Bogoevici
+ */
+public class MethodHandleInterceptionChainPlan extends InterceptionChainPlan
+{
+   private static final Logger log = LoggerFactory.getLogger(MethodHandleInterceptionChainPlan.class);
+
+   static final MethodType INTERCEPTOR_METHOD_TYPE = MethodType.methodType(Object.class, Object.class, InvocationContext.class);
+
+   static final MethodType TARGET_METHOD_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+   private static final MethodHandle SET_NEXT_HANDLE;
+
+   private static final MethodHandle GET_PARAMETERS;
+
+   private static final MethodHandle INVOKE_METHOD_INVOKER;
+
+   static
+   {
+      try
+      {
+         MethodHandles.Lookup lookup = MethodHandles.lookup();
+         SET_NEXT_HANDLE = lookup.findStatic(MethodHandleInterceptionChain.class, "setNextHandle",
+               MethodType.methodType(void.class, MethodHandle.class, MethodHandleInterceptionChain.class, InvocationContext.class));
+         GET_PARAMETERS = lookup.findStatic(MethodHandleInterceptionChain.class, "getParameters", MethodType.methodType(Object[].class, InvocationContext.class));
+         INVOKE_METHOD_INVOKER = lookup.findVirtual(MethodInvoker.class, "invoke", TARGET_METHOD_TYPE);
+      }
+      catch (NoSuchMethodException e)
+      {
+         throw new ExceptionInInitializerError(e);
+      }
+      catch (IllegalAccessException e)
+      {
+         throw new ExceptionInInitializerError(e);
+      }
+   }
+
+   private final MethodHandle[] interceptorMethodHandles;
+
+   private final MethodHandle targetMethodHandle;
+
+   public MethodHandleInterceptionChainPlan(Collection<InterceptorInvocation<?>> interceptorInvocations, InterceptionType interceptionType, Method targetMethod)
+   {
+      super(interceptorInvocations, interceptionType, targetMethod);
+      MethodHandle[] interceptorMethodHandles = null;
+      MethodHandle targetMethodHandle = null;
+      try
+      {
+         interceptorMethodHandles = createInterceptorMethodHandles();
+         if (interceptorMethodHandles != null && targetMethod != null)
+         {
+            targetMethodHandle = createTargetMethodHandle(targetMethod);
+         }
+      }
+      catch (IllegalAccessException e)
+      {
+         log.debug("Cannot create method handles for " + targetMethod + ", falling back to " + SimpleInterceptionChain.class.getSimpleName(), e);
+         interceptorMethodHandles = null;
+      }
+      this.interceptorMethodHandles = interceptorMethodHandles;
+      this.targetMethodHandle = targetMethodHandle;
+   }
+
+   private MethodHandle[] createInterceptorMethodHandles() throws IllegalAccessException
+   {
+      MethodHandle[] interceptorMethodHandles = new MethodHandle[size()];
+      for (int i = 0; i < interceptorMethodHandles.length; i++)
+      {
+         InterceptorInvocation.InterceptorMethodInvocation interceptorMethodInvocation = getInterceptorMethodInvocation(i);
+         if (interceptorMethodInvocation.parameterCount != 1)
+         {
+            return null;
+         }
+         interceptorMethodHandles[i] = createInterceptorMethodHandle(interceptorMethodInvocation);
+      }
+      return interceptorMethodHandles;
+   }
+
+   private static MethodHandle createInterceptorMethodHandle(InterceptorInvocation.InterceptorMethodInvocation interceptorMethodInvocation) throws IllegalAccessException
+   {
+      Method method = interceptorMethodInvocation.getMethod().getJavaMethod();
+      ReflectionUtils.ensureAccessible(method);
+      return MethodHandles.lookup().unreflect(method).asType(INTERCEPTOR_METHOD_TYPE);
+   }
+
+   private static MethodHandle createTargetMethodHandle(Method targetMethod) throws IllegalAccessException
+   {
+      ReflectionUtils.ensureAccessible(targetMethod);
+      MethodHandle methodHandle = MethodHandles.lookup().unreflect(targetMethod);
+      int parameterCount = targetMethod.getParameterTypes().length;
+      // erase to Object (boxing the return value and unboxing the arguments), then spread the arguments array
+      methodHandle = methodHandle.asType(MethodType.genericMethodType(parameterCount + 1));
+      return methodHandle.asSpreader(Object[].class, parameterCount).asType(TARGET_METHOD_TYPE);
+   }
+
+   /**
+    * Composes the handles of this plan, bound to the given target and interceptor instances.
+    *
+    * @return the composed handles, or <code>null</code> if this plan could not create method handles
+    */
+   public Binding bind(Object target, Object[] interceptorInstances)
+   {
+      if (interceptorMethodHandles == null)
+      {
+         return null;
+      }
+      MethodHandle targetHandle = MethodHandles.dropArguments(createBoundTargetHandle(target), 0, MethodHandleInterceptionChain.class);
+      MethodHandle nextHandle = targetHandle;
+      for (int i = interceptorMethodHandles.length - 1; i >= 0; i--)
+      {
+         Object receiver = getInterceptorMethodInvocation(i).getReceiver(target, interceptorInstances);
+         MethodHandle interceptorHandle = MethodHandles.dropArguments(interceptorMethodHandles[i].bindTo(receiver), 0, MethodHandleInterceptionChain.class);
+         // (chain, context) -> { chain.nextHandle = next; return interceptor.method(context); }
+         nextHandle = MethodHandles.foldArguments(interceptorHandle, MethodHandles.insertArguments(SET_NEXT_HANDLE, 0, nextHandle));
+      }
+      return new Binding(target, nextHandle, targetHandle);
+   }
+
+   /**
+    * @return a handle of type <code>(InvocationContext)Object</code> invoking the target method on the given target
+    */
+   private MethodHandle createBoundTargetHandle(Object target)
+   {
+      if (getTargetMethod() == null)
+      {
+         return MethodHandles.dropArguments(MethodHandles.constant(Object.class, null), 0, InvocationContext.class);
+      }
+      MethodHandle targetHandle = targetMethodHandle != null ? targetMethodHandle : INVOKE_METHOD_INVOKER.bindTo(getTargetMethodInvoker());
+      return MethodHandles.filterArguments(targetHandle.bindTo(target), 0, GET_PARAMETERS);
+   }
+
+   /**
+    * Composes the handles for this chain only. Method handlers keep the {@link Binding} of their target and interceptor
+    * instances instead, so that the handles are composed once for each of them.
+    */
+   @Override
+   public InterceptionChain newInterceptionChain(Object target, Object[] interceptorInstances, Method targetMethod)
+   {
+      Binding binding = targetMethod == null || targetMethod.equals(getTargetMethod()) ? bind(target, interceptorInstances) : null;
+      if (binding == null)
+      {
+         return super.newInterceptionChain(target, interceptorInstances, targetMethod);
+      }
+      return binding.newInterceptionChain();
+   }
+
+   /**
+    * The handles of a plan bound to a target and interceptor instances.
+    */
+   public static final class Binding
+   {
+      private final Object target;
+
+      private final MethodHandle entryHandle;
+
+      private final MethodHandle targetHandle;
+
+      private Binding(Object target, MethodHandle entryHandle, MethodHandle targetHandle)
+      {
+         this.target = target;
+         this.entryHandle = entryHandle;
+         this.targetHandle = targetHandle;
+      }
+
+      public Object getTarget()
+      {
+         return target;
+      }
+
+      public InterceptionChain newInterceptionChain()
+      {
+         return new MethodHandleInterceptionChain(entryHandle, targetHandle);
+      }
+   }
+}
@@ -0,0 +1,56 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.proxy;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * {@link ConstructorInvoker} based on {@link Constructor#newInstance(Object[])}. Used whenever a direct
+ * invoker cannot be generated, e.g. for the serialization constructors obtained from
+ * {@link org.jboss.interceptor.util.ReflectionFactoryUtils}.
+ *
+ * @author Marius Bogoevici
+ */
+public class ReflectiveConstructorInvoker<T> implements ConstructorInvoker<T>
+{
+   private final Constructor<T> constructor;
+
+   public ReflectiveConstructorInvoker(Constructor<T> constructor)
+   {
+      this.constructor = constructor;
+   }
+
+   public T newInstance(Object[] arguments) throws Throwable
+   {
+      try
+      {
+         return constructor.newInstance(arguments);
+      }
+      catch (InvocationTargetException e)
+      {
+         throw e.getCause();
+      }
+   }
+
+   @Override
+   public String toString()
+   {
+      return "ReflectiveConstructorInvoker[" + constructor + "]";
+   }
+}
@@ -0,0 +1,83 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.proxy;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import javax.interceptor.InvocationContext;
+
+import org.jboss.interceptor.util.ReflectionUtils;
+
+/**
+ * {@link MethodInvoker} and {@link InterceptorMethodInvoker} based on {@link Method#invoke(Object, Object[])}.
+ * Used whenever a direct invoker cannot be generated for a given method.
+ *
+ * @author Marius Bogoevici
+ */
+public class ReflectiveMethodInvoker implements MethodInvoker, InterceptorMethodInvoker
+{
+   private final Method method;
+
+   private final boolean hasParameters;
+
+   public ReflectiveMethodInvoker(Method method)
+   {
+      ReflectionUtils.ensureAccessible(method);
+      this.method = method;
+      this.hasParameters = method.getParameterTypes().length > 0;
+   }
+
+   public Object invoke(Object instance, Object[] arguments) throws Throwable
+   {
+      try
+      {
+         return method.invoke(instance, arguments);
+      }
+      catch (InvocationTargetException e)
+      {
+         throw e.getCause();
+      }
+   }
+
+   public Object invoke(Object instance, InvocationContext invocationContext) throws Throwable
+   {
+      try
+      {
+         if (hasParameters)
+            return method.invoke(instance, invocationContext);
+         else
+            return method.invoke(instance);
+      }
+      catch (InvocationTargetException e)
+      {
+         throw e.getCause();
+      }
+   }
+
+   public Method getMethod()
+   {
+      return method;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "ReflectiveMethodInvoker[" + method + "]";
+   }
+}
@@ -17,11 +17,8 @@
 
 package org.jboss.interceptor.proxy;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 
 import javax.interceptor.InvocationContext;
 
@@ -36,115 +33,118 @@ import org.slf4j.LoggerFactory;
 public class SimpleInterceptionChain implements InterceptionChain
 {
 
-   private final Logger log = LoggerFactory.getLogger(SimpleInterceptionChain.class);
+   private static final Logger log = LoggerFactory.getLogger(SimpleInterceptionChain.class);
 
-   private Object target;
+   private final Object target;
 
-   private Method targetMethod;
+   private final Object[] interceptorInstances;
 
-   private int currentPosition;
+   private final Method targetMethod;
 
-   private final InterceptionType interceptionType;
+   private int currentPosition;
 
-   private List<InterceptorInvocation.InterceptorMethodInvocation> interceptorMethodInvocations;
+   private final InterceptionChainPlan interceptionChainPlan;
 
+   /**
+    * Creates a chain for a single invocation. Its methods are invoked through reflection, since generating direct
+    * invokers for a chain which is not reused would cost more than it saves; chains created for each invocation from
+    * a shared {@link InterceptionChainPlan} use them instead.
+    */
    public SimpleInterceptionChain(Collection<InterceptorInvocation<?>> interceptorInvocations, InterceptionType interceptionType, Object target, Method targetMethod)
    {
-      this.interceptionType = interceptionType;
+      this(new InterceptionChainPlan(interceptorInvocations, interceptionType, targetMethod, false), target, targetMethod);
+   }
+
+   public SimpleInterceptionChain(InterceptionChainPlan interceptionChainPlan, Object target, Method targetMethod)
+   {
+      this(interceptionChainPlan, target, null, targetMethod);
+   }
+
+   public SimpleInterceptionChain(InterceptionChainPlan interceptionChainPlan, Object target, Object[] interceptorInstances, Method targetMethod)
+   {
+      this.interceptionChainPlan = interceptionChainPlan;
       this.target = target;
+      this.interceptorInstances = interceptorInstances;
       this.targetMethod = targetMethod;
       this.currentPosition = 0;
-      interceptorMethodInvocations = new ArrayList<InterceptorInvocation.InterceptorMethodInvocation>();
-      for (InterceptorInvocation<?> interceptorInvocation : interceptorInvocations)
-      {
-         interceptorMethodInvocations.addAll(interceptorInvocation.getInterceptorMethodInvocations());
-      }
    }
 
    public Object invokeNextInterceptor(InvocationContext invocationContext) throws Throwable
    {
-
-      try
+      if (hasNextInterceptor())
       {
-         if (hasNextInterceptor())
+         int oldCurrentPosition = currentPosition;
+         try
          {
-            int oldCurrentPosition = currentPosition;
-            try
+            InterceptorInvocation.InterceptorMethodInvocation nextInterceptorMethodInvocation = interceptionChainPlan.getInterceptorMethodInvocation(currentPosition++);
+            if (log.isTraceEnabled())
             {
-               InterceptorInvocation.InterceptorMethodInvocation nextInterceptorMethodInvocation = interceptorMethodInvocations.get(currentPosition++);
-               if (log.isTraceEnabled())
-               {
-                  log.trace("Invoking next interceptor in chain:" + nextInterceptorMethodInvocation.method.toString());
-               }
-               if (nextInterceptorMethodInvocation.method.getJavaMethod().getParameterTypes().length == 1)
-               {
-                  validateInterceptor(nextInterceptorMethodInvocation, invocationContext);
-                  return nextInterceptorMethodInvocation.invoke(invocationContext);
-               }
-               else if (nextInterceptorMethodInvocation.method.getJavaMethod().getParameterTypes().length == 0)
-               {
-                  validateInterceptor(nextInterceptorMethodInvocation, null);
-                  nextInterceptorMethodInvocation.invoke(null);
-                  while (hasNextInterceptor())
-                  {
-                     nextInterceptorMethodInvocation = interceptorMethodInvocations.get(currentPosition++);
-                     validateInterceptor(nextInterceptorMethodInvocation, null);
-                     nextInterceptorMethodInvocation.invoke(null);
-                  }
-                  return null;
-
-               }
-               else
-               {
-                  throw new IllegalStateException("Impossible state: interceptor method has more than one argument:" + nextInterceptorMethodInvocation.getMethod());
-               }
+               log.trace("Invoking next interceptor in chain:" + nextInterceptorMethodInvocation.method.toString());
             }
-            finally
+            if (nextInterceptorMethodInvocation.parameterCount == 1)
             {
-               currentPosition = oldCurrentPosition;
+               validateInterceptor(nextInterceptorMethodInvocation, invocationContext);
+               return nextInterceptorMethodInvocation.invoke(target, interceptorInstances, invocationContext);
             }
-         }
-         else
-         {
-            if (targetMethod != null)
+            else if (nextInterceptorMethodInvocation.parameterCount == 0)
             {
-               targetMethod.setAccessible(true);
-               if (invocationContext.getMethod() != null)
+               validateInterceptor(nextInterceptorMethodInvocation, null);
+               nextInterceptorMethodInvocation.invoke(target, interceptorInstances, null);
+               while (hasNextInterceptor())
                {
-                  return targetMethod.invoke(target, invocationContext.getParameters());
-               }
-               else
-               {
-                  return targetMethod.invoke(target);
+                  nextInterceptorMethodInvocation = interceptionChainPlan.getInterceptorMethodInvocation(currentPosition++);
+                  validateInterceptor(nextInterceptorMethodInvocation, null);
+                  nextInterceptorMethodInvocation.invoke(target, interceptorInstances, null);
                }
+               return null;
 
             }
             else
             {
-               return null;
+               throw new IllegalStateException("Impossible state: interceptor method has more than one argument:" + nextInterceptorMethodInvocation.getMethod());
             }
          }
+         finally
+         {
+            currentPosition = oldCurrentPosition;
+         }
       }
-      catch (InvocationTargetException e)
+      else
       {
-         throw e.getCause();
+         if (targetMethod != null)
+         {
+            MethodInvoker targetMethodInvoker = interceptionChainPlan.getTargetMethodInvoker(targetMethod);
+            if (invocationContext.getMethod() != null)
+            {
+               return targetMethodInvoker.invoke(target, invocationContext.getParameters());
+            }
+            else
+            {
+               return targetMethodInvoker.invoke(target, null);
+            }
+
+         }
+         else
+         {
+            return null;
+         }
       }
    }
 
    private void validateInterceptor(InterceptorInvocation.InterceptorMethodInvocation nextInterceptorMethodInvocation, InvocationContext context) {
       int expectedParameters = context == null? 0: 1;
-      if (nextInterceptorMethodInvocation.method.getJavaMethod().getParameterTypes().length != expectedParameters)
+      if (nextInterceptorMethodInvocation.parameterCount != expectedParameters)
       {
          throw new IllegalStateException(
                "Mismatch between number of expected and actual parameters on "
                      + nextInterceptorMethodInvocation.getMethod() + ": expected " + expectedParameters
-                     + ", actual " + nextInterceptorMethodInvocation.getMethod().getJavaMethod().getParameterTypes().length);
+                     + ", actual " + nextInterceptorMethodInvocation.parameterCount);
       }
    }
 
    public boolean hasNextInterceptor()
    {
-      return currentPosition < interceptorMethodInvocations.size();
+      return currentPosition < interceptionChainPlan.size();
    }
 
 }
@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.proxy;
+
+import java.lang.reflect.Method;
+
+import javax.interceptor.InvocationContext;
+
+import org.jboss.interceptor.spi.context.InterceptionChain;
+import org.jboss.interceptor.spi.context.RecyclingInvocationContextFactory;
+
+/**
+ * A {@link RecyclingInvocationContextFactory} keeping a small per-thread stack of {@link InterceptorInvocationContext}s,
+ * so that nested intercepted invocations on the same thread get distinct contexts. Invocations nested deeper
+ * than the stack capacity get non-recycled contexts.
+ *
+ * Contexts are cleared when released, so they do not keep any references to targets, parameters or
+ * interception chains between invocations.
+ *
+ * @author Marius Bogoevici
+ */
+public class ThreadLocalInvocationContextFactory implements RecyclingInvocationContextFactory
+{
+   private static final long serialVersionUID = 1L;
+
+   public static final int DEFAULT_CAPACITY = 16;
+
+   private final int capacity;
+
+   private transient ThreadLocal<ContextStack> contextStacks;
+
+   public ThreadLocalInvocationContextFactory()
+   {
+      this(DEFAULT_CAPACITY);
+   }
+
+   public ThreadLocalInvocationContextFactory(int capacity)
+   {
+      if (capacity < 1)
+      {
+         throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+      }
+      this.capacity = capacity;
+      this.contextStacks = createContextStacks(capacity);
+   }
+
+   private static ThreadLocal<ContextStack> createContextStacks(final int capacity)
+   {
+      return new ThreadLocal<ContextStack>()
+      {
+         @Override
+         protected ContextStack initialValue()
+         {
+            return new ContextStack(capacity);
+         }
+      };
+   }
+
+   public InvocationContext newInvocationContext(InterceptionChain chain, Object o, Method method, Object[] args)
+   {
+      InterceptorInvocationContext invocationContext = contextStacks.get().acquire();
+      invocationContext.reset(chain, o, method, args, null);
+      return invocationContext;
+   }
+
+   public InvocationContext newInvocationContext(InterceptionChain chain, Object o, Method method, Object timer)
+   {
+      InterceptorInvocationContext invocationContext = contextStacks.get().acquire();
+      invocationContext.reset(chain, o, method, null, timer);
+      return invocationContext;
+   }
+
+   public void release(InvocationContext invocationContext)
+   {
+      contextStacks.get().release(invocationContext);
+   }
+
+   private Object readResolve()
+   {
+      return new ThreadLocalInvocationContextFactory(capacity);
+   }
+
+   private static class ContextStack
+   {
+      private final InterceptorInvocationContext[] contexts;
+
+      private int depth;
+
+      ContextStack(int capacity)
+      {
+         this.contexts = new InterceptorInvocationContext[capacity];
+      }
+
+      InterceptorInvocationContext acquire()
+      {
+         InterceptorInvocationContext invocationContext;
+         if (depth < contexts.length)
+         {
+            if (contexts[depth] == null)
+            {
+               contexts[depth] = new InterceptorInvocationContext(null, null, null, (Object[]) null);
+            }
+            invocationContext = contexts[depth];
+         }
+         else
+         {
+            invocationContext = new InterceptorInvocationContext(null, null, null, (Object[]) null);
+         }
+         depth++;
+         return invocationContext;
+      }
+
+      void release(InvocationContext invocationContext)
+      {
+         if (depth == 0)
+         {
+            // not acquired on this thread, nothing to recycle
+            return;
+         }
+         depth--;
+         if (depth < contexts.length && contexts[depth] == invocationContext)
+         {
+            contexts[depth].clear();
+         }
+      }
+   }
+}
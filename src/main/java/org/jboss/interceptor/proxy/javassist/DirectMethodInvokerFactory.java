@@ -0,0 +1,458 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.proxy.javassist;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.ProtectionDomain;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javassist.CannotCompileException;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.DuplicateMemberException;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+import javassist.util.proxy.FactoryHelper;
+import javassist.util.proxy.RuntimeSupport;
+import javax.interceptor.InvocationContext;
+
+import org.jboss.interceptor.proxy.ConstructorInvoker;
+import org.jboss.interceptor.proxy.InterceptorMethodInvoker;
+import org.jboss.interceptor.proxy.MethodInvoker;
+import org.jboss.interceptor.proxy.ReflectiveConstructorInvoker;
+import org.jboss.interceptor.proxy.ReflectiveMethodInvoker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates {@link MethodInvoker}s, {@link InterceptorMethodInvoker}s and {@link ConstructorInvoker}s which invoke
+ * their method or constructor directly, through a small generated class, rather than through reflection.
+ *
+ * The generated class is defined in the class loader and package of the class declaring the method,
+ * so that it can invoke package-private and protected methods as well. Its name is derived from the method
+ * signature, and it is generated only once per method. The generated classes are kept per declaring class rather
+ * than looked up by name through its class loader, which could find the invoker of a class of the same name loaded
+ * by a parent class loader.
+ *
+ * Whenever a direct invoker cannot be generated (e.g. for private methods, or if the class loader of the
+ * declaring class cannot see the invoker interfaces) a {@link ReflectiveMethodInvoker} or a
+ * {@link ReflectiveConstructorInvoker} is returned instead.
+ *
+ * @author Marius Bogoevici
+ */
+public class DirectMethodInvokerFactory
+{
+   private static final Logger log = LoggerFactory.getLogger(DirectMethodInvokerFactory.class);
+
+   private static final String METHOD_INVOKER_INFIX = "$$MethodInvoker$$";
+
+   private static final String INTERCEPTOR_METHOD_INVOKER_INFIX = "$$InterceptorMethodInvoker$$";
+
+   private static final String CONSTRUCTOR_INVOKER_INFIX = "$$ConstructorInvoker$$";
+
+   private static final String OBJECT_DESCRIPTOR = "Ljava/lang/Object;";
+
+   private static final String INVOKE_METHOD_DESCRIPTOR = "(" + OBJECT_DESCRIPTOR + "[" + OBJECT_DESCRIPTOR + ")" + OBJECT_DESCRIPTOR;
+
+   private static final String INVOKE_INTERCEPTOR_METHOD_DESCRIPTOR = "(" + OBJECT_DESCRIPTOR + "Ljavax/interceptor/InvocationContext;)" + OBJECT_DESCRIPTOR;
+
+   private static final String NEW_INSTANCE_DESCRIPTOR = "([" + OBJECT_DESCRIPTOR + ")" + OBJECT_DESCRIPTOR;
+
+   private static final Class<?>[] RUNTIME_CLASSES = {MethodInvoker.class, InterceptorMethodInvoker.class, ConstructorInvoker.class, InvocationContext.class, DirectMethodInvokerSupport.class};
+
+   // the invoker classes generated for the members of each class, by name
+   private static final ClassValue<ConcurrentMap<String, Class<?>>> invokerClasses = new ClassValue<ConcurrentMap<String, Class<?>>>()
+   {
+      @Override
+      protected ConcurrentMap<String, Class<?>> computeValue(Class<?> declaringClass)
+      {
+         return new ConcurrentHashMap<String, Class<?>>();
+      }
+   };
+
+   private DirectMethodInvokerFactory()
+   {
+   }
+
+   public static MethodInvoker createMethodInvoker(Method method)
+   {
+      if (isDirectlyInvokable(method))
+      {
+         try
+         {
+            return (MethodInvoker) getInvokerClass(method.getDeclaringClass(), method, METHOD_INVOKER_INFIX).newInstance();
+         }
+         catch (Throwable e)
+         {
+            log.debug("Cannot generate a direct invoker for " + method + ", falling back to reflection", e);
+         }
+      }
+      return new ReflectiveMethodInvoker(method);
+   }
+
+   public static InterceptorMethodInvoker createInterceptorMethodInvoker(Method method)
+   {
+      Class<?>[] parameterTypes = method.getParameterTypes();
+      boolean validSignature = parameterTypes.length == 0 || (parameterTypes.length == 1 && parameterTypes[0].isAssignableFrom(InvocationContext.class));
+      if (validSignature && isDirectlyInvokable(method))
+      {
+         try
+         {
+            return (InterceptorMethodInvoker) getInvokerClass(method.getDeclaringClass(), method, INTERCEPTOR_METHOD_INVOKER_INFIX).newInstance();
+         }
+         catch (Throwable e)
+         {
+            log.debug("Cannot generate a direct invoker for " + method + ", falling back to reflection", e);
+         }
+      }
+      return new ReflectiveMethodInvoker(method);
+   }
+
+   public static <T> ConstructorInvoker<T> createConstructorInvoker(Constructor<T> constructor)
+   {
+      if (!Modifier.isAbstract(constructor.getDeclaringClass().getModifiers()) && isDirectlyInvokable(constructor.getDeclaringClass(), constructor.getModifiers(), constructor.getParameterTypes()))
+      {
+         try
+         {
+            return (ConstructorInvoker<T>) getInvokerClass(constructor.getDeclaringClass(), constructor, CONSTRUCTOR_INVOKER_INFIX).newInstance();
+         }
+         catch (Throwable e)
+         {
+            log.debug("Cannot generate a direct invoker for " + constructor + ", falling back to reflection", e);
+         }
+      }
+      return new ReflectiveConstructorInvoker<T>(constructor);
+   }
+
+   private static boolean isDirectlyInvokable(Method method)
+   {
+      return isDirectlyInvokable(method.getDeclaringClass(), method.getModifiers(), method.getParameterTypes());
+   }
+
+   private static boolean isDirectlyInvokable(Class<?> declaringClass, int modifiers, Class<?>[] parameterTypes)
+   {
+      if (Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers))
+      {
+         return false;
+      }
+      ClassLoader classLoader = declaringClass.getClassLoader();
+      if (classLoader == null || declaringClass.getName().startsWith("java."))
+      {
+         return false;
+      }
+      for (Class<?> runtimeClass : RUNTIME_CLASSES)
+      {
+         if (!isVisible(runtimeClass, classLoader))
+         {
+            return false;
+         }
+      }
+      for (Class<?> parameterType : parameterTypes)
+      {
+         if (!isAccessible(parameterType, declaringClass))
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static boolean isVisible(Class<?> clazz, ClassLoader classLoader)
+   {
+      try
+      {
+         return Class.forName(clazz.getName(), false, classLoader) == clazz;
+      }
+      catch (ClassNotFoundException e)
+      {
+         return false;
+      }
+      catch (LinkageError e)
+      {
+         return false;
+      }
+   }
+
+   /**
+    * Checks whether a parameter type can be the subject of a <code>checkcast</code> in a class
+    * generated in the package of the declaring class.
+    */
+   private static boolean isAccessible(Class<?> type, Class<?> declaringClass)
+   {
+      while (type.isArray())
+      {
+         type = type.getComponentType();
+      }
+      if (type.isPrimitive() || Modifier.isPublic(type.getModifiers()))
+      {
+         return true;
+      }
+      return type.getClassLoader() == declaringClass.getClassLoader() && getPackageName(type).equals(getPackageName(declaringClass));
+   }
+
+   private static String getPackageName(Class<?> clazz)
+   {
+      String className = clazz.getName();
+      int lastDot = className.lastIndexOf('.');
+      return lastDot < 0 ? "" : className.substring(0, lastDot);
+   }
+
+   private static Class<?> getInvokerClass(Class<?> declaringClass, Member member, String invokerInfix) throws CannotCompileException, DuplicateMemberException
+   {
+      ConcurrentMap<String, Class<?>> declaringClassInvokerClasses = invokerClasses.get(declaringClass);
+      String invokerClassName = getInvokerClassName(member, invokerInfix);
+      Class<?> invokerClass = declaringClassInvokerClasses.get(invokerClassName);
+      if (invokerClass != null)
+      {
+         return invokerClass;
+      }
+      // an invoker class can only be defined once in the class loader
+      synchronized (declaringClassInvokerClasses)
+      {
+         invokerClass = declaringClassInvokerClasses.get(invokerClassName);
+         if (invokerClass == null)
+         {
+            ClassFile classFile = createInvokerClassFile(invokerClassName, member, invokerInfix);
+            ProtectionDomain protectionDomain = declaringClass.getProtectionDomain();
+            invokerClass = FactoryHelper.toClass(classFile, declaringClass.getClassLoader(), protectionDomain);
+            declaringClassInvokerClasses.put(invokerClassName, invokerClass);
+         }
+         return invokerClass;
+      }
+   }
+
+   static String getInvokerClassName(Member member, String invokerInfix)
+   {
+      StringBuilder invokerClassName = new StringBuilder(member.getDeclaringClass().getName());
+      invokerClassName.append(invokerInfix);
+      String descriptor;
+      if (member instanceof Method)
+      {
+         invokerClassName.append(member.getName()).append("$$");
+         descriptor = RuntimeSupport.makeDescriptor((Method) member);
+      }
+      else
+      {
+         descriptor = RuntimeSupport.makeDescriptor(((Constructor<?>) member).getParameterTypes(), void.class);
+      }
+      // mangle the descriptor the same way JNI does, so that overloaded methods are told apart
+      for (int i = 0; i < descriptor.length(); i++)
+      {
+         char c = descriptor.charAt(i);
+         if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))
+            invokerClassName.append(c);
+         else if (c == '/')
+            invokerClassName.append('_');
+         else if (c == '_')
+            invokerClassName.append("_1");
+         else if (c == ';')
+            invokerClassName.append("_2");
+         else if (c == '[')
+            invokerClassName.append("_3");
+         else if (c != '(')
+            invokerClassName.append("_0").append(String.format("%04x", (int) c));
+      }
+      return invokerClassName.toString();
+   }
+
+   private static ClassFile createInvokerClassFile(String invokerClassName, Member member, String invokerInfix) throws DuplicateMemberException
+   {
+      ClassFile classFile = new ClassFile(false, invokerClassName, null);
+      classFile.setMajorVersion(ClassFile.JAVA_5);
+      classFile.setAccessFlags(AccessFlag.PUBLIC | AccessFlag.FINAL | AccessFlag.SUPER | AccessFlag.SYNTHETIC);
+      ConstPool constPool = classFile.getConstPool();
+      classFile.addMethod(createConstructor(constPool));
+      if (invokerInfix.equals(CONSTRUCTOR_INVOKER_INFIX))
+      {
+         classFile.setInterfaces(new String[]{ConstructorInvoker.class.getName()});
+         classFile.addMethod(createNewInstanceMethod(constPool, (Constructor<?>) member));
+      }
+      else if (invokerInfix.equals(INTERCEPTOR_METHOD_INVOKER_INFIX))
+      {
+         classFile.setInterfaces(new String[]{InterceptorMethodInvoker.class.getName()});
+         classFile.addMethod(createInvokeInterceptorMethod(constPool, (Method) member));
+      }
+      else
+      {
+         classFile.setInterfaces(new String[]{MethodInvoker.class.getName()});
+         classFile.addMethod(createInvokeMethod(constPool, (Method) member));
+      }
+      return classFile;
+   }
+
+   private static MethodInfo createConstructor(ConstPool constPool)
+   {
+      MethodInfo constructor = new MethodInfo(constPool, MethodInfo.nameInit, "()V");
+      constructor.setAccessFlags(AccessFlag.PUBLIC);
+      Bytecode code = new Bytecode(constPool, 0, 1);
+      code.addAload(0);
+      code.addInvokespecial(Object.class.getName(), MethodInfo.nameInit, "()V");
+      code.addOpcode(Opcode.RETURN);
+      constructor.setCodeAttribute(code.toCodeAttribute());
+      return constructor;
+   }
+
+   /**
+    * <code>Object invoke(Object instance, Object[] arguments)</code>: unwraps the arguments and invokes the method.
+    */
+   private static MethodInfo createInvokeMethod(ConstPool constPool, Method method)
+   {
+      MethodInfo invokeMethod = new MethodInfo(constPool, "invoke", INVOKE_METHOD_DESCRIPTOR);
+      invokeMethod.setAccessFlags(AccessFlag.PUBLIC);
+      Bytecode code = new Bytecode(constPool, 0, 3);
+      code.addAload(1);
+      code.addCheckcast(method.getDeclaringClass().getName());
+      addArguments(code, 2, method.getParameterTypes());
+      addInvocation(code, method);
+      addWrapping(code, method.getReturnType());
+      code.addOpcode(Opcode.ARETURN);
+      invokeMethod.setCodeAttribute(code.toCodeAttribute());
+      return invokeMethod;
+   }
+
+   /**
+    * <code>Object invoke(Object instance, InvocationContext invocationContext)</code>: invokes the interceptor method,
+    * passing the invocation context only if the method declares it.
+    */
+   private static MethodInfo createInvokeInterceptorMethod(ConstPool constPool, Method method)
+   {
+      MethodInfo invokeMethod = new MethodInfo(constPool, "invoke", INVOKE_INTERCEPTOR_METHOD_DESCRIPTOR);
+      invokeMethod.setAccessFlags(AccessFlag.PUBLIC);
+      Bytecode code = new Bytecode(constPool, 0, 3);
+      code.addAload(1);
+      code.addCheckcast(method.getDeclaringClass().getName());
+      if (method.getParameterTypes().length == 1)
+      {
+         code.addAload(2);
+      }
+      addInvocation(code, method);
+      addWrapping(code, method.getReturnType());
+      code.addOpcode(Opcode.ARETURN);
+      invokeMethod.setCodeAttribute(code.toCodeAttribute());
+      return invokeMethod;
+   }
+
+   /**
+    * <code>Object newInstance(Object[] arguments)</code>: unwraps the arguments and invokes the constructor.
+    */
+   private static MethodInfo createNewInstanceMethod(ConstPool constPool, Constructor<?> constructor)
+   {
+      MethodInfo newInstanceMethod = new MethodInfo(constPool, "newInstance", NEW_INSTANCE_DESCRIPTOR);
+      newInstanceMethod.setAccessFlags(AccessFlag.PUBLIC);
+      Bytecode code = new Bytecode(constPool, 0, 2);
+      String declaringClassName = constructor.getDeclaringClass().getName();
+      code.addNew(declaringClassName);
+      code.addOpcode(Opcode.DUP);
+      addArguments(code, 1, constructor.getParameterTypes());
+      code.addInvokespecial(declaringClassName, MethodInfo.nameInit, RuntimeSupport.makeDescriptor(constructor.getParameterTypes(), void.class));
+      code.addOpcode(Opcode.ARETURN);
+      newInstanceMethod.setCodeAttribute(code.toCodeAttribute());
+      return newInstanceMethod;
+   }
+
+   /**
+    * Pushes the elements of the argument array found in the given local variable, unwrapped to the parameter types.
+    */
+   private static void addArguments(Bytecode code, int argumentsVariable, Class<?>[] parameterTypes)
+   {
+      for (int i = 0; i < parameterTypes.length; i++)
+      {
+         code.addAload(argumentsVariable);
+         code.addIconst(i);
+         code.addOpcode(Opcode.AALOAD);
+         addUnwrapping(code, parameterTypes[i]);
+      }
+   }
+
+   private static void addInvocation(Bytecode code, Method method)
+   {
+      String declaringClassName = method.getDeclaringClass().getName();
+      String descriptor = RuntimeSupport.makeDescriptor(method);
+      if (method.getDeclaringClass().isInterface())
+      {
+         int argumentSlots = 1;
+         for (Class<?> parameterType : method.getParameterTypes())
+         {
+            argumentSlots += parameterType == long.class || parameterType == double.class ? 2 : 1;
+         }
+         code.addInvokeinterface(declaringClassName, method.getName(), descriptor, argumentSlots);
+      }
+      else
+      {
+         code.addInvokevirtual(declaringClassName, method.getName(), descriptor);
+      }
+   }
+
+   private static void addUnwrapping(Bytecode code, Class<?> type)
+   {
+      if (type.isPrimitive())
+      {
+         String conversionMethodName = "to" + Character.toUpperCase(type.getName().charAt(0)) + type.getName().substring(1);
+         code.addInvokestatic(DirectMethodInvokerSupport.class.getName(), conversionMethodName, "(" + OBJECT_DESCRIPTOR + ")" + getDescriptor(type));
+      }
+      else if (type != Object.class)
+      {
+         code.addCheckcast(type.getName());
+      }
+   }
+
+   private static void addWrapping(Bytecode code, Class<?> type)
+   {
+      if (type == void.class)
+      {
+         code.addOpcode(Opcode.ACONST_NULL);
+      }
+      else if (type.isPrimitive())
+      {
+         String wrapperClassName = getWrapperClass(type).getName();
+         code.addInvokestatic(wrapperClassName, "valueOf", "(" + getDescriptor(type) + ")L" + wrapperClassName.replace('.', '/') + ";");
+      }
+   }
+
+   private static String getDescriptor(Class<?> type)
+   {
+      // the descriptor of a no-argument method returning the type is "()" followed by the descriptor of the type
+      return RuntimeSupport.makeDescriptor(new Class[0], type).substring(2);
+   }
+
+   private static Class<?> getWrapperClass(Class<?> primitiveType)
+   {
+      if (primitiveType == boolean.class)
+         return Boolean.class;
+      else if (primitiveType == char.class)
+         return Character.class;
+      else if (primitiveType == byte.class)
+         return Byte.class;
+      else if (primitiveType == short.class)
+         return Short.class;
+      else if (primitiveType == int.class)
+         return Integer.class;
+      else if (primitiveType == long.class)
+         return Long.class;
+      else if (primitiveType == float.class)
+         return Float.class;
+      else
+         return Double.class;
+   }
+}
@@ -0,0 +1,101 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.proxy.javassist;
+
+/**
+ * Conversions used by the invokers generated by {@link DirectMethodInvokerFactory} for unwrapping
+ * primitive arguments. They allow the same widening conversions as {@link java.lang.reflect.Method#invoke(Object, Object[])}
+ * and, like it, throw an {@link IllegalArgumentException} when an argument cannot be converted.
+ *
+ * @author Marius Bogoevici
+ */
+public final class DirectMethodInvokerSupport
+{
+   private DirectMethodInvokerSupport()
+   {
+   }
+
+   public static boolean toBoolean(Object value)
+   {
+      if (value instanceof Boolean)
+         return ((Boolean) value).booleanValue();
+      throw argumentTypeMismatch(value, boolean.class);
+   }
+
+   public static char toChar(Object value)
+   {
+      if (value instanceof Character)
+         return ((Character) value).charValue();
+      throw argumentTypeMismatch(value, char.class);
+   }
+
+   public static byte toByte(Object value)
+   {
+      if (value instanceof Byte)
+         return ((Byte) value).byteValue();
+      throw argumentTypeMismatch(value, byte.class);
+   }
+
+   public static short toShort(Object value)
+   {
+      if (value instanceof Short || value instanceof Byte)
+         return ((Number) value).shortValue();
+      throw argumentTypeMismatch(value, short.class);
+   }
+
+   public static int toInt(Object value)
+   {
+      if (value instanceof Integer || value instanceof Short || value instanceof Byte)
+         return ((Number) value).intValue();
+      if (value instanceof Character)
+         return ((Character) value).charValue();
+      throw argumentTypeMismatch(value, int.class);
+   }
+
+   public static long toLong(Object value)
+   {
+      if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+         return ((Number) value).longValue();
+      if (value instanceof Character)
+         return ((Character) value).charValue();
+      throw argumentTypeMismatch(value, long.class);
+   }
+
+   public static float toFloat(Object value)
+   {
+      if (value instanceof Float || value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+         return ((Number) value).floatValue();
+      if (value instanceof Character)
+         return ((Character) value).charValue();
+      throw argumentTypeMismatch(value, float.class);
+   }
+
+   public static double toDouble(Object value)
+   {
+      if (value instanceof Double || value instanceof Float || value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+         return ((Number) value).doubleValue();
+      if (value instanceof Character)
+         return ((Character) value).charValue();
+      throw argumentTypeMismatch(value, double.class);
+   }
+
+   private static IllegalArgumentException argumentTypeMismatch(Object value, Class<?> expectedType)
+   {
+      return new IllegalArgumentException("argument type mismatch: cannot convert " + (value == null ? "null" : value.getClass().getName()) + " to " + expectedType.getName());
+   }
+}
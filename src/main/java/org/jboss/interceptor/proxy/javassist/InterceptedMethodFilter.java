@@ -0,0 +1,79 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.proxy.javassist;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+import javassist.util.proxy.MethodFilter;
+import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
+import org.jboss.interceptor.spi.model.InterceptionModel;
+import org.jboss.interceptor.spi.model.InterceptionType;
+import org.jboss.interceptor.util.InterceptionTypeRegistry;
+import org.jboss.interceptor.util.InterceptionUtils;
+
+/**
+ * A {@link MethodFilter} which lets a proxy class override only the methods that can actually be intercepted,
+ * according to an {@link InterceptionModel} and to the interceptor methods of the target class. All the other
+ * methods keep their original implementation.
+ *
+ * Abstract methods, such as the ones of the {@link org.jboss.interceptor.proxy.LifecycleMixin} and
+ * {@link org.jboss.interceptor.util.proxy.TargetInstanceProxy} interfaces, are always overridden.
+ *
+ * This filter must only be used for subclassing proxies, since delegating proxies must forward all their
+ * methods to the target instance.
+ *
+ * @author Marius Bogoevici
+ */
+public class InterceptedMethodFilter implements MethodFilter
+{
+   private final InterceptionModel<?, ?> interceptionModel;
+
+   private final InterceptorMetadata<?> targetClassInterceptorMetadata;
+
+   public InterceptedMethodFilter(InterceptionModel<?, ?> interceptionModel, InterceptorMetadata<?> targetClassInterceptorMetadata)
+   {
+      this.interceptionModel = interceptionModel;
+      this.targetClassInterceptorMetadata = targetClassInterceptorMetadata;
+   }
+
+   public boolean isHandled(Method method)
+   {
+      if (Modifier.isAbstract(method.getModifiers()))
+      {
+         return true;
+      }
+      if (!InterceptionUtils.isInterceptionCandidate(method))
+      {
+         return false;
+      }
+      InterceptionType interceptionType = InterceptionTypeRegistry.isSupported(InterceptionType.AROUND_TIMEOUT) && method.isAnnotationPresent(InterceptionTypeRegistry.getAnnotationClass(InterceptionType.AROUND_TIMEOUT)) ? InterceptionType.AROUND_TIMEOUT : InterceptionType.AROUND_INVOKE;
+      if (hasInterceptorMethods(targetClassInterceptorMetadata, interceptionType))
+      {
+         return true;
+      }
+      List<?> interceptors = interceptionModel == null ? null : interceptionModel.getInterceptors(interceptionType, method);
+      return interceptors != null && !interceptors.isEmpty();
+   }
+
+   private static boolean hasInterceptorMethods(InterceptorMetadata<?> interceptorMetadata, InterceptionType interceptionType)
+   {
+      return interceptorMetadata != null && interceptorMetadata.getInterceptorMethods(interceptionType) != null && !interceptorMetadata.getInterceptorMethods(interceptionType).isEmpty();
+   }
+}
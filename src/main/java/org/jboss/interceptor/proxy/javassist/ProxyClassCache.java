@@ -0,0 +1,350 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.proxy.javassist;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javassist.util.proxy.MethodFilter;
+import javassist.util.proxy.ProxyFactory;
+import javassist.util.proxy.ProxyObject;
+import javassist.util.proxy.RuntimeSupport;
+
+import org.jboss.interceptor.proxy.InterceptorException;
+import org.jboss.interceptor.util.StartupClassList;
+
+/**
+ * A cache of the proxy classes created for a given superclass, set of interfaces, proxying mode (subclassing or
+ * delegating) and set of overridden methods.
+ *
+ * Proxy classes are cached per class loader of the proxied class. The class loaders are weakly referenced, and so
+ * are the proxy classes themselves (which are defined by the same class loader), so the cache does not prevent
+ * redeployed applications from being garbage collected.
+ *
+ * A proxy class generated at build time (see {@link ProxyClassWriter}) is used instead of generating one, if the class
+ * loader of the proxied class can load it. Such a proxy class overrides all the methods, so it serves any set of
+ * overridden methods, and both subclassing and delegating proxies. In closed-world mode, proxy classes are never
+ * generated at runtime, and proxying a class without a pregenerated proxy class fails. The mode is enabled by the
+ * <code>{@value #CLOSED_WORLD_PROPERTY}</code> system property, or by {@link #setClosedWorld(boolean)}.
+ *
+ * Otherwise, the proxy classes generated at runtime can be kept in a cache directory, and defined from there by later
+ * runs (see {@link ProxyClassDiskCache}). The cache directory is set by the <code>{@value #CACHE_DIRECTORY_PROPERTY}</code>
+ * system property, or by {@link #setCacheDirectory(File)}.
+ *
+ * The proxy classes used during a training run are recorded (see {@link StartupClassList}), so that later runs can
+ * create them in the background.
+ *
+ * @author Marius Bogoevici
+ */
+public class ProxyClassCache
+{
+   public static final String CLOSED_WORLD_PROPERTY = "org.jboss.interceptor.proxy.closedWorld";
+
+   /**
+    * The suffix appended to the name of the proxied class to form the name of its pregenerated proxy class.
+    */
+   public static final String PREGENERATED_PROXY_CLASS_SUFFIX = "$$_jbossinterceptor_proxy";
+
+   public static final String CACHE_DIRECTORY_PROPERTY = "org.jboss.interceptor.proxy.cacheDirectory";
+
+   private static volatile boolean closedWorld = Boolean.getBoolean(CLOSED_WORLD_PROPERTY);
+
+   private static volatile ProxyClassDiskCache diskCache = System.getProperty(CACHE_DIRECTORY_PROPERTY) == null ? null
+         : new ProxyClassDiskCache(new File(System.getProperty(CACHE_DIRECTORY_PROPERTY)));
+
+   private static final Map<ClassLoader, ConcurrentMap<String, WeakReference<Class<?>>>> proxyClasses = new WeakHashMap<ClassLoader, ConcurrentMap<String, WeakReference<Class<?>>>>();
+
+   // the filter signatures are computed only once for each filter instance
+   private static final Map<MethodFilter, MethodFilterSignature> methodFilterSignatures = Collections.synchronizedMap(new WeakHashMap<MethodFilter, MethodFilterSignature>());
+
+   private ProxyClassCache()
+   {
+   }
+
+   public static <T> Class<T> getProxyClass(Class<T> superclass, Class<?>[] interfaces, boolean forSubclassing, MethodFilter methodFilter)
+   {
+      ConcurrentMap<String, WeakReference<Class<?>>> classLoaderProxyClasses = getClassLoaderProxyClasses(getClassLoader(superclass, interfaces));
+      MethodFilterSignature methodFilterSignature = methodFilter == null ? null : getMethodFilterSignature(superclass, interfaces, methodFilter);
+      String key = createKey(superclass, interfaces, forSubclassing, methodFilterSignature);
+      WeakReference<Class<?>> proxyClassReference = classLoaderProxyClasses.get(key);
+      Class<?> proxyClass = proxyClassReference == null ? null : proxyClassReference.get();
+      if (proxyClass == null)
+      {
+         if (StartupClassList.isRecording())
+         {
+            StartupClassList.recordProxyClass(superclass, interfaces, forSubclassing, methodFilterSignature == null ? null : methodFilterSignature.handledMethods);
+         }
+         proxyClass = loadPregeneratedProxyClass(superclass, interfaces);
+         if (proxyClass == null)
+         {
+            if (closedWorld)
+            {
+               throw new InterceptorException("No pregenerated proxy class found for " + (superclass == null ? Object.class : superclass).getName()
+                     + ", and the generation of proxy classes at runtime is disabled");
+            }
+            ProxyClassDiskCache diskCache = ProxyClassCache.diskCache;
+            if (diskCache != null)
+            {
+               proxyClass = diskCache.getProxyClass(superclass, interfaces, methodFilter,
+                     methodFilterSignature == null ? null : methodFilterSignature.signature);
+            }
+            if (proxyClass == null)
+            {
+               // concurrent creations of the same proxy class are harmless, since ProxyFactory has its own cache
+               proxyClass = createProxyClass(superclass, interfaces, methodFilter);
+            }
+         }
+         classLoaderProxyClasses.put(key, new WeakReference<Class<?>>(proxyClass));
+      }
+      return (Class<T>) proxyClass;
+   }
+
+   public static boolean isClosedWorld()
+   {
+      return closedWorld;
+   }
+
+   /**
+    * Enables or disables the generation of proxy classes at runtime, for the proxy classes that are not cached yet.
+    */
+   public static void setClosedWorld(boolean closedWorld)
+   {
+      ProxyClassCache.closedWorld = closedWorld;
+   }
+
+   public static File getCacheDirectory()
+   {
+      ProxyClassDiskCache diskCache = ProxyClassCache.diskCache;
+      return diskCache == null ? null : diskCache.getDirectory();
+   }
+
+   /**
+    * Sets the directory where the proxy classes generated from now on are cached, or disables the cache if
+    * <code>null</code>.
+    */
+   public static void setCacheDirectory(File cacheDirectory)
+   {
+      ProxyClassCache.diskCache = cacheDirectory == null ? null : new ProxyClassDiskCache(cacheDirectory);
+   }
+
+   /**
+    * Writes the list of the proxy classes of the cache directory, for archiving them with class data sharing.
+    *
+    * @see ProxyClassDiskCache#writeClassList(File)
+    */
+   public static void writeClassList(File classListFile) throws IOException
+   {
+      ProxyClassDiskCache diskCache = ProxyClassCache.diskCache;
+      if (diskCache == null)
+      {
+         throw new IllegalStateException("No proxy class cache directory is set");
+      }
+      diskCache.writeClassList(classListFile);
+   }
+
+   public static String getPregeneratedProxyClassName(String superclassName)
+   {
+      return superclassName + PREGENERATED_PROXY_CLASS_SUFFIX;
+   }
+
+   /**
+    * @return the pregenerated proxy class of the given superclass, or <code>null</code> if there is none, or if it
+    * does not implement the given interfaces
+    */
+   private static Class<?> loadPregeneratedProxyClass(Class<?> superclass, Class<?>[] interfaces)
+   {
+      if (superclass == null || superclass.getClassLoader() == null)
+      {
+         return null;
+      }
+      Class<?> proxyClass;
+      try
+      {
+         proxyClass = Class.forName(getPregeneratedProxyClassName(superclass.getName()), false, superclass.getClassLoader());
+      }
+      catch (ClassNotFoundException e)
+      {
+         return null;
+      }
+      if (proxyClass.getSuperclass() != superclass || !ProxyObject.class.isAssignableFrom(proxyClass))
+      {
+         return null;
+      }
+      for (Class<?> proxyInterface : interfaces)
+      {
+         if (!proxyInterface.isAssignableFrom(proxyClass))
+         {
+            return null;
+         }
+      }
+      return proxyClass;
+   }
+
+   private static Class<?> createProxyClass(Class<?> superclass, Class<?>[] interfaces, MethodFilter methodFilter)
+   {
+      return newProxyFactory(superclass, interfaces, methodFilter).createClass();
+   }
+
+   /**
+    * @return a factory for the proxy classes of the given superclass, interfaces and overridden methods, configured
+    * the same way for the proxy classes generated at runtime and at build time
+    */
+   static ProxyFactory newProxyFactory(Class<?> superclass, Class<?>[] interfaces, MethodFilter methodFilter)
+   {
+      ProxyFactory proxyFactory = new ProxyFactory();
+      if (superclass != null)
+      {
+         proxyFactory.setSuperclass(superclass);
+         proxyFactory.setUseWriteReplace(false);
+      }
+      proxyFactory.setInterfaces(interfaces);
+      if (methodFilter != null)
+      {
+         proxyFactory.setFilter(methodFilter);
+      }
+      return proxyFactory;
+   }
+
+   private static ConcurrentMap<String, WeakReference<Class<?>>> getClassLoaderProxyClasses(ClassLoader classLoader)
+   {
+      synchronized (proxyClasses)
+      {
+         ConcurrentMap<String, WeakReference<Class<?>>> classLoaderProxyClasses = proxyClasses.get(classLoader);
+         if (classLoaderProxyClasses == null)
+         {
+            classLoaderProxyClasses = new ConcurrentHashMap<String, WeakReference<Class<?>>>();
+            proxyClasses.put(classLoader, classLoaderProxyClasses);
+         }
+         return classLoaderProxyClasses;
+      }
+   }
+
+   /**
+    * The class loader in which {@link ProxyFactory} defines the proxy class.
+    */
+   private static ClassLoader getClassLoader(Class<?> superclass, Class<?>[] interfaces)
+   {
+      if (superclass != null && !superclass.equals(Object.class))
+      {
+         return superclass.getClassLoader();
+      }
+      else if (interfaces != null && interfaces.length > 0)
+      {
+         return interfaces[0].getClassLoader();
+      }
+      else
+      {
+         return ProxyFactory.class.getClassLoader();
+      }
+   }
+
+   /**
+    * The key only contains class and method names, so that the cache does not strongly reference the classes
+    * loaded by the class loader it is keyed by.
+    */
+   private static String createKey(Class<?> superclass, Class<?>[] interfaces, boolean forSubclassing, MethodFilterSignature methodFilterSignature)
+   {
+      StringBuilder key = new StringBuilder(superclass == null ? Object.class.getName() : superclass.getName());
+      for (Class<?> proxyInterface : interfaces)
+      {
+         key.append(':').append(proxyInterface.getName());
+      }
+      key.append(forSubclassing ? ":subclassing" : ":delegating");
+      if (methodFilterSignature != null)
+      {
+         key.append(':').append(methodFilterSignature.signature);
+      }
+      return key.toString();
+   }
+
+   private static MethodFilterSignature getMethodFilterSignature(Class<?> superclass, Class<?>[] interfaces, MethodFilter methodFilter)
+   {
+      MethodFilterSignature signature = methodFilterSignatures.get(methodFilter);
+      if (signature == null)
+      {
+         signature = new MethodFilterSignature(getHandledMethods(superclass, interfaces, methodFilter));
+         methodFilterSignatures.put(methodFilter, signature);
+      }
+      return signature;
+   }
+
+   /**
+    * @return the names and descriptors of the methods overridden by the proxy class, sorted
+    */
+   private static Set<String> getHandledMethods(Class<?> superclass, Class<?>[] interfaces, MethodFilter methodFilter)
+   {
+      Set<String> handledMethods = new TreeSet<String>();
+      Set<Class<?>> visitedClasses = new HashSet<Class<?>>();
+      for (Class<?> clazz = superclass; clazz != null; clazz = clazz.getSuperclass())
+      {
+         collectHandledMethods(clazz, methodFilter, handledMethods, visitedClasses);
+      }
+      for (Class<?> proxyInterface : interfaces)
+      {
+         collectHandledMethods(proxyInterface, methodFilter, handledMethods, visitedClasses);
+      }
+      return handledMethods;
+   }
+
+   private static void collectHandledMethods(Class<?> clazz, MethodFilter methodFilter, Set<String> handledMethods, Set<Class<?>> visitedClasses)
+   {
+      if (!visitedClasses.add(clazz))
+      {
+         return;
+      }
+      for (Method method : clazz.getDeclaredMethods())
+      {
+         int modifiers = method.getModifiers();
+         if (!Modifier.isStatic(modifiers) && !Modifier.isPrivate(modifiers) && methodFilter.isHandled(method))
+         {
+            handledMethods.add(method.getName() + RuntimeSupport.makeDescriptor(method));
+         }
+      }
+      for (Class<?> superInterface : clazz.getInterfaces())
+      {
+         collectHandledMethods(superInterface, methodFilter, handledMethods, visitedClasses);
+      }
+   }
+
+   /**
+    * The methods overridden by the proxy classes created with a given filter, and the string form used in the keys.
+    */
+   private static final class MethodFilterSignature
+   {
+      private final Set<String> handledMethods;
+
+      private final String signature;
+
+      private MethodFilterSignature(Set<String> handledMethods)
+      {
+         this.handledMethods = Collections.unmodifiableSet(handledMethods);
+         this.signature = handledMethods.toString();
+      }
+   }
+}
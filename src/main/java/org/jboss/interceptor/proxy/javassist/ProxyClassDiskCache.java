@@ -0,0 +1,273 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.proxy.javassist;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javassist.CannotCompileException;
+import javassist.bytecode.ClassFile;
+import javassist.util.proxy.FactoryHelper;
+import javassist.util.proxy.MethodFilter;
+import javassist.util.proxy.ProxyFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the proxy classes generated at runtime in a directory, so that later runs define them from their class files
+ * instead of generating them again.
+ *
+ * A cached proxy class is named after its superclass and a SHA-1 hash of everything its bytecode depends on: the class
+ * files of the superclass and of its superclasses, the proxied interfaces, the overridden methods and the version of
+ * Javassist. Changing any of them changes the name, so stale class files are never used. The directory is laid out
+ * as a class path root, so it can be added to the class path. The cached classes are then loaded by the application
+ * class loader, and can be archived for class data sharing (see {@link #writeClassList(File)}).
+ *
+ * @author Marius Bogoevici
+ */
+class ProxyClassDiskCache
+{
+   private static final Logger LOG = LoggerFactory.getLogger(ProxyClassDiskCache.class);
+
+   private static final String CACHED_PROXY_CLASS_INFIX = "$$_jbossinterceptor_";
+
+   private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+   private final File directory;
+
+   ProxyClassDiskCache(File directory)
+   {
+      this.directory = directory;
+   }
+
+   File getDirectory()
+   {
+      return directory;
+   }
+
+   /**
+    * @return the proxy class, from the class path or from the cache directory, or a generated proxy class, which is
+    * then written to the cache directory
+    */
+   Class<?> getProxyClass(Class<?> superclass, Class<?>[] interfaces, MethodFilter methodFilter, String methodFilterSignature)
+   {
+      String proxyClassName = getProxyClassName(superclass, interfaces, methodFilterSignature);
+      if (proxyClassName == null)
+      {
+         return null;
+      }
+      ClassLoader classLoader = superclass.getClassLoader();
+      try
+      {
+         return Class.forName(proxyClassName, false, classLoader);
+      }
+      catch (ClassNotFoundException e)
+      {
+         // not on the class path
+      }
+      File classFile = new File(directory, ProxyClassWriter.toPath(proxyClassName));
+      try
+      {
+         if (classFile.isFile())
+         {
+            return defineClass(ProxyClassWriter.readClassFile(classFile), superclass);
+         }
+         ProxyClassWriter.GeneratedProxyClass generatedProxyClass = ProxyClassWriter.generateProxyClass(ProxyClassCache.newProxyFactory(superclass, interfaces, methodFilter));
+         store(generatedProxyClass.classFile, proxyClassName, classFile);
+         return generatedProxyClass.proxyClass;
+      }
+      catch (IOException e)
+      {
+         LOG.warn("Cannot use the cached proxy class " + proxyClassName + " in " + directory + ": " + e);
+         return null;
+      }
+   }
+
+   private static Class<?> defineClass(ClassFile classFile, Class<?> superclass) throws IOException
+   {
+      try
+      {
+         return FactoryHelper.toClass(classFile, superclass.getClassLoader(), superclass.getProtectionDomain());
+      }
+      catch (CannotCompileException e)
+      {
+         // the class may have been defined concurrently
+         try
+         {
+            return Class.forName(classFile.getName(), false, superclass.getClassLoader());
+         }
+         catch (ClassNotFoundException notFound)
+         {
+            throw new IOException("Cannot define " + classFile.getName(), e);
+         }
+      }
+   }
+
+   private static void store(ClassFile classFile, String proxyClassName, File file) throws IOException
+   {
+      classFile.renameClass(classFile.getName(), proxyClassName);
+      file.getParentFile().mkdirs();
+      // written aside and moved, so that concurrent runs never read a partial class file
+      File temporaryFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+      try
+      {
+         ProxyClassWriter.writeClassFile(classFile, temporaryFile);
+         Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      finally
+      {
+         temporaryFile.delete();
+      }
+   }
+
+   /**
+    * @return the name of the cached proxy class, or <code>null</code> if the class files of the superclasses cannot be
+    * read, in which case the proxy class cannot be cached
+    */
+   static String getProxyClassName(Class<?> superclass, Class<?>[] interfaces, String methodFilterSignature)
+   {
+      if (superclass == null || superclass.getClassLoader() == null || superclass.getName().startsWith("java."))
+      {
+         return null;
+      }
+      MessageDigest digest;
+      try
+      {
+         digest = MessageDigest.getInstance("SHA-1");
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         return null;
+      }
+      for (Class<?> clazz = superclass; clazz != null && clazz.getClassLoader() != null; clazz = clazz.getSuperclass())
+      {
+         if (!update(digest, clazz))
+         {
+            return null;
+         }
+      }
+      for (Class<?> proxyInterface : interfaces)
+      {
+         digest.update(proxyInterface.getName().getBytes(UTF_8));
+         if (proxyInterface.getClassLoader() != null && !update(digest, proxyInterface))
+         {
+            return null;
+         }
+      }
+      if (methodFilterSignature != null)
+      {
+         digest.update(methodFilterSignature.getBytes(UTF_8));
+      }
+      if (!update(digest, ProxyFactory.class))
+      {
+         return null;
+      }
+      StringBuilder proxyClassName = new StringBuilder(superclass.getName()).append(CACHED_PROXY_CLASS_INFIX);
+      for (byte b : digest.digest())
+      {
+         proxyClassName.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return proxyClassName.toString();
+   }
+
+   private static boolean update(MessageDigest digest, Class<?> clazz)
+   {
+      ClassLoader classLoader = clazz.getClassLoader();
+      String resourceName = clazz.getName().replace('.', '/') + ".class";
+      InputStream classFile = classLoader != null ? classLoader.getResourceAsStream(resourceName) : ClassLoader.getSystemResourceAsStream(resourceName);
+      if (classFile == null)
+      {
+         return false;
+      }
+      try
+      {
+         try
+         {
+            byte[] bytes = new byte[4096];
+            for (int count = classFile.read(bytes); count != -1; count = classFile.read(bytes))
+            {
+               digest.update(bytes, 0, count);
+            }
+            return true;
+         }
+         finally
+         {
+            classFile.close();
+         }
+      }
+      catch (IOException e)
+      {
+         return false;
+      }
+   }
+
+   /**
+    * Writes the names of the cached proxy classes, in the format of the class lists of class data sharing
+    * (<code>-XX:SharedClassListFile</code>). Only the classes loaded from the class path can be archived, so the
+    * cache directory has to be on the class path when the archive is dumped and used.
+    */
+   void writeClassList(File classListFile) throws IOException
+   {
+      List<String> classNames = new ArrayList<String>();
+      collectClassNames(directory, "", classNames);
+      Collections.sort(classNames);
+      PrintWriter writer = new PrintWriter(classListFile, "UTF-8");
+      try
+      {
+         for (String className : classNames)
+         {
+            writer.println(className);
+         }
+      }
+      finally
+      {
+         writer.close();
+      }
+   }
+
+   private static void collectClassNames(File directory, String path, List<String> classNames)
+   {
+      File[] files = directory.listFiles();
+      if (files == null)
+      {
+         return;
+      }
+      for (File file : files)
+      {
+         if (file.isDirectory())
+         {
+            collectClassNames(file, path + file.getName() + "/", classNames);
+         }
+         else if (file.getName().endsWith(".class") && file.getName().contains(CACHED_PROXY_CLASS_INFIX))
+         {
+            classNames.add(path + file.getName().substring(0, file.getName().length() - ".class".length()));
+         }
+      }
+   }
+}
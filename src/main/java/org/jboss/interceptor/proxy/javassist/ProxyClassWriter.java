@@ -0,0 +1,152 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.proxy.javassist;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javassist.bytecode.ClassFile;
+import javassist.util.proxy.ProxyFactory;
+
+/**
+ * Generates proxy classes at build time, as class files which {@link ProxyClassCache} loads at runtime instead of
+ * generating the proxy classes again. The proxy classes are generated by {@link ProxyFactory}, exactly as they would
+ * be at runtime, and renamed after their superclass (see {@link ProxyClassCache#getPregeneratedProxyClassName(String)}),
+ * so that they can be found through its class loader.
+ *
+ * A pregenerated proxy class overrides all the methods of its superclass, since the methods that are intercepted
+ * depend on the interception model built at runtime. This lets one class serve the subclassing proxies, whatever
+ * methods their model intercepts, as well as the delegating proxies, which must forward all their methods. The
+ * methods without interceptors are still invoked through the method handler, which then invokes the superclass
+ * method directly, without an interception chain (see {@link org.jboss.interceptor.proxy.ClassInterceptionPlan}).
+ * Proxy classes bound to a single method handler cannot be pregenerated.
+ *
+ * @author Marius Bogoevici
+ */
+public class ProxyClassWriter
+{
+   private ProxyClassWriter()
+   {
+   }
+
+   /**
+    * Writes the proxy class of the given superclass and interfaces under the given directory, in the directory
+    * structure of its package.
+    *
+    * @return the name of the proxy class
+    */
+   public static String writeProxyClass(Class<?> superclass, Class<?>[] interfaces, File outputDirectory) throws IOException
+   {
+      if (superclass.getName().startsWith("java.") || superclass.isInterface() || superclass.isPrimitive() || superclass.isArray())
+      {
+         throw new IllegalArgumentException("Cannot pregenerate a proxy class for " + superclass.getName());
+      }
+      String proxyClassName = ProxyClassCache.getPregeneratedProxyClassName(superclass.getName());
+      ClassFile classFile = generateProxyClass(ProxyClassCache.newProxyFactory(superclass, interfaces, null)).classFile;
+      classFile.renameClass(classFile.getName(), proxyClassName);
+      writeClassFile(classFile, new File(outputDirectory, toPath(proxyClassName)));
+      return proxyClassName;
+   }
+
+   /**
+    * Generates a proxy class through the given factory, which also defines it.
+    *
+    * @return the proxy class, together with its class file
+    */
+   static GeneratedProxyClass generateProxyClass(ProxyFactory proxyFactory) throws IOException
+   {
+      File generationDirectory = Files.createTempDirectory("jboss-interceptor-proxies").toFile();
+      try
+      {
+         proxyFactory.writeDirectory = generationDirectory.getPath();
+         // a proxy class taken from the cache of ProxyFactory would not be written
+         proxyFactory.setUseCache(false);
+         Class<?> generatedClass = proxyFactory.createClass();
+         return new GeneratedProxyClass(generatedClass, readClassFile(new File(generationDirectory, toPath(generatedClass.getName()))));
+      }
+      finally
+      {
+         delete(generationDirectory);
+      }
+   }
+
+   static void writeClassFile(ClassFile classFile, File file) throws IOException
+   {
+      file.getParentFile().mkdirs();
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      try
+      {
+         classFile.write(output);
+      }
+      finally
+      {
+         output.close();
+      }
+   }
+
+   static String toPath(String className)
+   {
+      return className.replace('.', File.separatorChar) + ".class";
+   }
+
+   static ClassFile readClassFile(File file) throws IOException
+   {
+      DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try
+      {
+         return new ClassFile(input);
+      }
+      finally
+      {
+         input.close();
+      }
+   }
+
+   private static void delete(File file)
+   {
+      File[] children = file.listFiles();
+      if (children != null)
+      {
+         for (File child : children)
+         {
+            delete(child);
+         }
+      }
+      file.delete();
+   }
+
+   static final class GeneratedProxyClass
+   {
+      final Class<?> proxyClass;
+
+      final ClassFile classFile;
+
+      GeneratedProxyClass(Class<?> proxyClass, ClassFile classFile)
+      {
+         this.proxyClass = proxyClass;
+         this.classFile = classFile;
+      }
+   }
+}
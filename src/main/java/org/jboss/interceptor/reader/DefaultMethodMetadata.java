@@ -67,6 +67,12 @@ public class DefaultMethodMetadata<M> implements MethodMetadata, Serializable
       }
    }
 
+   private DefaultMethodMetadata(Method javaMethod, Set<InterceptionType> interceptionTypes)
+   {
+      this.javaMethod = javaMethod;
+      this.supportedInterceptorTypes = interceptionTypes;
+   }
+
    public static <M> MethodMetadata of(M methodReference, AnnotatedMethodReader<M> methodReader)
    {
       return new DefaultMethodMetadata(methodReference, methodReader);
@@ -77,6 +83,14 @@ public class DefaultMethodMetadata<M> implements MethodMetadata, Serializable
       return new DefaultMethodMetadata(method, new ReflectiveAnnotatedMethodReader());
    }
 
+   /**
+    * @return the metadata of a method whose interception types are already known, without reading its annotations
+    */
+   public static MethodMetadata of(Method method, Set<InterceptionType> interceptionTypes)
+   {
+      return new DefaultMethodMetadata(method, interceptionTypes);
+   }
+
 
    public Set<InterceptionType> getSupportedInterceptionTypes()
    {
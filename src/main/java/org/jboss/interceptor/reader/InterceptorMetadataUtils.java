@@ -20,6 +20,8 @@ import org.jboss.interceptor.spi.model.InterceptionType;
 import org.jboss.interceptor.util.InterceptionTypeRegistry;
 import org.jboss.interceptor.util.InterceptorMetadataException;
 import org.jboss.interceptor.util.ReflectionUtils;
+import org.jboss.interceptor.util.StartupClassList;
+import org.jboss.interceptor.util.StartupProfiler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,11 +37,19 @@ public class InterceptorMetadataUtils
 
    public static InterceptorMetadata readMetadataForInterceptorClass(InterceptorReference<?> interceptorReference)
    {
+      if (StartupClassList.isRecording() && interceptorReference instanceof ClassMetadataInterceptorReference)
+      {
+         StartupClassList.recordMetadata(interceptorReference.getClassMetadata().getClassName(), false);
+      }
       return new SimpleInterceptorMetadata(interceptorReference, false, buildMethodMap(interceptorReference.getClassMetadata(), false));
    }
 
    public static InterceptorMetadata readMetadataForTargetClass(ClassMetadata<?> classMetadata)
    {
+      if (StartupClassList.isRecording())
+      {
+         StartupClassList.recordMetadata(classMetadata.getClassName(), true);
+      }
       return new SimpleInterceptorMetadata(ClassMetadataInterceptorReference.of(classMetadata), true, buildMethodMap(classMetadata, true));
    }
 
@@ -136,8 +146,26 @@ public class InterceptorMetadataUtils
    }
 
    static Map<InterceptionType, List<MethodMetadata>> buildMethodMap(ClassMetadata<?> interceptorClass, boolean forTargetClass)
+   {
+      StartupProfiler.Sample sample = StartupProfiler.start(StartupProfiler.Phase.METADATA_READING, interceptorClass);
+      try
+      {
+         return readMethodMap(interceptorClass, forTargetClass);
+      }
+      finally
+      {
+         StartupProfiler.end(sample);
+      }
+   }
+
+   private static Map<InterceptionType, List<MethodMetadata>> readMethodMap(ClassMetadata<?> interceptorClass, boolean forTargetClass)
    {
       Map<InterceptionType, List<MethodMetadata>> methodMap = new HashMap<InterceptionType, List<MethodMetadata>>();
+      if (!hasInterceptorMethods(interceptorClass))
+      {
+         // nothing to resolve, which spares resolving the methods of metadata that is not read through reflection
+         return methodMap;
+      }
       ClassMetadata<?> currentClass = interceptorClass;
       Set<MethodReference> foundMethods = new HashSet<MethodReference>();
       do
@@ -181,7 +209,22 @@ public class InterceptorMetadataUtils
          }
          currentClass = currentClass.getSuperclass();
       }
-      while (currentClass != null && !OBJECT_CLASS_NAME.equals(currentClass.getJavaClass()));
+      while (currentClass != null && !OBJECT_CLASS_NAME.equals(currentClass.getClassName()));
       return methodMap;
    }
+
+   private static boolean hasInterceptorMethods(ClassMetadata<?> interceptorClass)
+   {
+      for (ClassMetadata<?> currentClass = interceptorClass; currentClass != null && !OBJECT_CLASS_NAME.equals(currentClass.getClassName()); currentClass = currentClass.getSuperclass())
+      {
+         for (MethodMetadata method : currentClass.getDeclaredMethods())
+         {
+            if (!method.getSupportedInterceptionTypes().isEmpty())
+            {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
 }
@@ -24,7 +24,6 @@ import java.util.Iterator;
 import org.jboss.interceptor.spi.metadata.ClassMetadata;
 import org.jboss.interceptor.spi.metadata.MethodMetadata;
 import org.jboss.interceptor.util.ArrayIterator;
-import org.jboss.interceptor.util.ImmutableIteratorWrapper;
 
 /**
  * @author Marius Bogoevici
@@ -33,17 +32,36 @@ public class ReflectiveClassMetadata<T> implements ClassMetadata<T>, Serializabl
 {
 
    private static final long serialVersionUID = -2088679292389273922L;
-   
+
    private Class<T> clazz;
 
-   private ReflectiveClassMetadata(Class<T> clazz)
+   private ClassMetadata<?> superclass;
+
+   /**
+    * The metadata of the declared methods, read on first use. It is kept with this instance, so that it is cached
+    * together with it, and shared by the subclasses that reach it through {@link #getSuperclass()}.
+    */
+   private transient volatile MethodMetadata[] declaredMethods;
+
+   private ReflectiveClassMetadata(Class<T> clazz, ClassMetadata<?> superclass)
    {
       this.clazz = clazz;
+      this.superclass = superclass;
    }
 
    public static <T> ClassMetadata<T> of(Class<T> clazz)
    {
-      return new ReflectiveClassMetadata<T>(clazz);
+      Class<?> superClass = clazz.getSuperclass();
+      return of(clazz, superClass == null ? null : of(superClass));
+   }
+
+   /**
+    * @param superclass the metadata of the superclass of the class, e.g. as cached by a
+    * {@link org.jboss.interceptor.reader.cache.MetadataCachingReader}, or null if it has none
+    */
+   public static <T> ClassMetadata<T> of(Class<T> clazz, ClassMetadata<?> superclass)
+   {
+      return new ReflectiveClassMetadata<T>(clazz, superclass);
    }
 
    public String getClassName()
@@ -53,32 +71,40 @@ public class ReflectiveClassMetadata<T> implements ClassMetadata<T>, Serializabl
 
    public Iterable<MethodMetadata> getDeclaredMethods()
    {
+      final MethodMetadata[] methods = readDeclaredMethods();
       return new Iterable<MethodMetadata>()
       {
          public Iterator<MethodMetadata> iterator()
          {
-             return new ImmutableIteratorWrapper<Method>(new ArrayIterator<Method>(ReflectiveClassMetadata.this.clazz.getDeclaredMethods()))
-             {
-                @Override
-                protected MethodMetadata wrapObject(Method method)
-                {
-                   return DefaultMethodMetadata.of(method);
-                }
-             };
+             return new ArrayIterator<MethodMetadata>(methods);
          }
       };     
    }
 
+   private MethodMetadata[] readDeclaredMethods()
+   {
+      MethodMetadata[] methodMetadata = declaredMethods;
+      if (methodMetadata == null)
+      {
+         Method[] methods = clazz.getDeclaredMethods();
+         methodMetadata = new MethodMetadata[methods.length];
+         for (int i = 0; i < methods.length; i++)
+         {
+            methodMetadata[i] = DefaultMethodMetadata.of(methods[i]);
+         }
+         declaredMethods = methodMetadata;
+      }
+      return methodMetadata;
+   }
+
    public Class<T> getJavaClass()
    {
       return clazz;
    }   
 
-   @SuppressWarnings({ "unchecked", "rawtypes" })
    public ClassMetadata<?> getSuperclass()
    {
-      Class<?> superClass = clazz.getSuperclass();
-      return superClass == null? null : new ReflectiveClassMetadata(superClass);
+      return superclass;
    }
 
    @Override
@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.reader.cache;
+
+import java.io.Serializable;
+
+/**
+ * A snapshot of the statistics of a metadata cache, as collected since its creation or since its counters were
+ * last reset (see {@link DefaultMetadataCachingReader#resetStatistics()}).
+ *
+ * @author Marius Bogoevici
+ */
+public final class CacheStatistics implements Serializable
+{
+   private static final long serialVersionUID = 1L;
+
+   private final long hitCount;
+
+   private final long missCount;
+
+   private final long loadCount;
+
+   private final long totalLoadTime;
+
+   private final long maximumLoadTime;
+
+   private final long size;
+
+   public CacheStatistics(long hitCount, long missCount, long loadCount, long totalLoadTime, long maximumLoadTime, long size)
+   {
+      this.hitCount = hitCount;
+      this.missCount = missCount;
+      this.loadCount = loadCount;
+      this.totalLoadTime = totalLoadTime;
+      this.maximumLoadTime = maximumLoadTime;
+      this.size = size;
+   }
+
+   /**
+    * @return the number of lookups which found their value already computed or being computed
+    */
+   public long getHitCount()
+   {
+      return hitCount;
+   }
+
+   /**
+    * @return the number of lookups which had to compute their value
+    */
+   public long getMissCount()
+   {
+      return missCount;
+   }
+
+   /**
+    * @return the number of computed values, including the failed computations
+    */
+   public long getLoadCount()
+   {
+      return loadCount;
+   }
+
+   /**
+    * @return the time spent computing values, in nanoseconds
+    */
+   public long getTotalLoadTime()
+   {
+      return totalLoadTime;
+   }
+
+   /**
+    * @return the longest time spent computing a value, in nanoseconds
+    */
+   public long getMaximumLoadTime()
+   {
+      return maximumLoadTime;
+   }
+
+   /**
+    * @return the number of entries currently in the cache
+    */
+   public long getSize()
+   {
+      return size;
+   }
+
+   public double getHitRate()
+   {
+      long requestCount = hitCount + missCount;
+      return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "CacheStatistics[hits=" + hitCount + ", misses=" + missCount + ", loads=" + loadCount
+            + ", totalLoadTime=" + totalLoadTime + "ns, maximumLoadTime=" + maximumLoadTime + "ns, size=" + size + "]";
+   }
+}
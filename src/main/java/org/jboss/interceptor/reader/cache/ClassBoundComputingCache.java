@@ -0,0 +1,351 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.reader.cache;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+import com.google.common.collect.ComputationException;
+
+/**
+ * A cache computing its values on demand, whose entries are stored with the {@link Class} each key is bound to
+ * (see {@link #getKeyClass(Object)}), so that they are released together with the class, and with its class loader.
+ * The entries of keys whose class has not been loaded are stored with their class loader instead, and are released
+ * together with it only if their values do not refer to it.
+ *
+ * Values are computed without holding any lock: the first thread that needs a value installs a task computing it,
+ * and concurrent threads that need the same value wait for that task. A failed computation is not cached, and
+ * its cause is thrown wrapped in a {@link ComputationException}.
+ *
+ * If a maximum size is set, the oldest entries are evicted when it is exceeded. The size is approximate, since
+ * entries released together with their classes are only discounted when their turn to be evicted comes.
+ *
+ * Lookups and computations are counted (see {@link #getStatistics()}) with {@link LongAdder}s, which do not add
+ * contention between concurrent lookups.
+ *
+ * @author Marius Bogoevici
+ */
+abstract class ClassBoundComputingCache<K, V>
+{
+   private final ClassValue<ConcurrentMap<K, FutureTask<V>>> entries = new ClassValue<ConcurrentMap<K, FutureTask<V>>>()
+   {
+      @Override
+      protected ConcurrentMap<K, FutureTask<V>> computeValue(Class<?> type)
+      {
+         ConcurrentMap<K, FutureTask<V>> classEntries = new ConcurrentHashMap<K, FutureTask<V>>();
+         allClassEntries.add(new WeakReference<ConcurrentMap<K, FutureTask<V>>>(classEntries));
+         return classEntries;
+      }
+   };
+
+   // the entries of the keys whose class is not loaded, by class loader (see getKeyClass)
+   private final Map<ClassLoader, ConcurrentMap<K, FutureTask<V>>> classLoaderEntries = new WeakHashMap<ClassLoader, ConcurrentMap<K, FutureTask<V>>>();
+
+   // the entries of all the classes, for computing the size of the cache
+   private final Queue<WeakReference<ConcurrentMap<K, FutureTask<V>>>> allClassEntries = new ConcurrentLinkedQueue<WeakReference<ConcurrentMap<K, FutureTask<V>>>>();
+
+   // the counters are updated on every lookup, so they must not be contended
+   private final LongAdder hitCount = new LongAdder();
+
+   private final LongAdder missCount = new LongAdder();
+
+   private final LongAdder loadCount = new LongAdder();
+
+   private final LongAdder totalLoadTime = new LongAdder();
+
+   private final LongAccumulator maximumLoadTime = new LongAccumulator(new LongBinaryOperator()
+   {
+      public long applyAsLong(long left, long right)
+      {
+         return Math.max(left, right);
+      }
+   }, 0);
+
+   private final int maximumSize;
+
+   private final AtomicInteger size = new AtomicInteger();
+
+   // the entries in insertion order, only if the size is bounded
+   private final Queue<EntryReference<K, V>> insertionOrder;
+
+   /**
+    * @param maximumSize the maximum number of entries, or 0 for an unbounded cache
+    */
+   ClassBoundComputingCache(int maximumSize)
+   {
+      if (maximumSize < 0)
+      {
+         throw new IllegalArgumentException("The maximum size must not be negative: " + maximumSize);
+      }
+      this.maximumSize = maximumSize;
+      this.insertionOrder = maximumSize > 0 ? new ConcurrentLinkedQueue<EntryReference<K, V>>() : null;
+   }
+
+   /**
+    * @return the class whose lifecycle the entry of the given key follows, or null if the key refers to a class that
+    * has not been loaded, whose entry is then stored with its class loader (see {@link #getKeyClassLoader(Object)})
+    */
+   protected abstract Class<?> getKeyClass(K key);
+
+   /**
+    * @return the class loader of the class of a key for which {@link #getKeyClass(Object)} is null
+    */
+   protected ClassLoader getKeyClassLoader(K key)
+   {
+      throw new IllegalArgumentException("No class is bound to " + key);
+   }
+
+   protected abstract V computeValue(K key);
+
+   private ConcurrentMap<K, FutureTask<V>> getClassEntries(K key)
+   {
+      Class<?> keyClass = getKeyClass(key);
+      if (keyClass != null)
+      {
+         return entries.get(keyClass);
+      }
+      ClassLoader classLoader = getKeyClassLoader(key);
+      synchronized (classLoaderEntries)
+      {
+         ConcurrentMap<K, FutureTask<V>> classEntries = classLoaderEntries.get(classLoader);
+         if (classEntries == null)
+         {
+            classEntries = new ConcurrentHashMap<K, FutureTask<V>>();
+            allClassEntries.add(new WeakReference<ConcurrentMap<K, FutureTask<V>>>(classEntries));
+            classLoaderEntries.put(classLoader, classEntries);
+         }
+         return classEntries;
+      }
+   }
+
+   public V get(final K key)
+   {
+      ConcurrentMap<K, FutureTask<V>> classEntries = getClassEntries(key);
+      FutureTask<V> task = classEntries.get(key);
+      boolean computed = false;
+      if (task != null)
+      {
+         hitCount.increment();
+      }
+      else
+      {
+         FutureTask<V> newTask = new FutureTask<V>(new Callable<V>()
+         {
+            public V call() throws Exception
+            {
+               long start = System.nanoTime();
+               try
+               {
+                  return computeValue(key);
+               }
+               finally
+               {
+                  long loadTime = System.nanoTime() - start;
+                  loadCount.increment();
+                  totalLoadTime.add(loadTime);
+                  maximumLoadTime.accumulate(loadTime);
+               }
+            }
+         });
+         task = classEntries.putIfAbsent(key, newTask);
+         if (task == null)
+         {
+            missCount.increment();
+            task = newTask;
+            newTask.run();
+            computed = true;
+         }
+         else
+         {
+            hitCount.increment();
+         }
+      }
+      try
+      {
+         V value = task.get();
+         if (computed)
+         {
+            added(classEntries, key);
+         }
+         return value;
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new ComputationException(e);
+      }
+      catch (ExecutionException e)
+      {
+         classEntries.remove(key, task);
+         throw new ComputationException(e.getCause());
+      }
+   }
+
+   /**
+    * Installs a value computed elsewhere, unless the key already has a value or one is being computed.
+    *
+    * @return true if the value was installed
+    */
+   boolean putIfAbsent(K key, final V value)
+   {
+      ConcurrentMap<K, FutureTask<V>> classEntries = getClassEntries(key);
+      FutureTask<V> task = new FutureTask<V>(new Callable<V>()
+      {
+         public V call() throws Exception
+         {
+            return value;
+         }
+      });
+      task.run();
+      if (classEntries.putIfAbsent(key, task) != null)
+      {
+         return false;
+      }
+      added(classEntries, key);
+      return true;
+   }
+
+   /**
+    * @return the values computed successfully so far, by key
+    */
+   Map<K, V> getComputedValues()
+   {
+      Map<K, V> values = new HashMap<K, V>();
+      for (WeakReference<ConcurrentMap<K, FutureTask<V>>> classEntriesReference : allClassEntries)
+      {
+         ConcurrentMap<K, FutureTask<V>> classEntries = classEntriesReference.get();
+         if (classEntries == null)
+         {
+            continue;
+         }
+         for (Map.Entry<K, FutureTask<V>> entry : classEntries.entrySet())
+         {
+            if (entry.getValue().isDone())
+            {
+               try
+               {
+                  values.put(entry.getKey(), entry.getValue().get());
+               }
+               catch (ExecutionException e)
+               {
+                  // failed computations have no value
+               }
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+               }
+            }
+         }
+      }
+      return values;
+   }
+
+   private void added(ConcurrentMap<K, FutureTask<V>> classEntries, K key)
+   {
+      if (insertionOrder == null)
+      {
+         return;
+      }
+      insertionOrder.add(new EntryReference<K, V>(classEntries, key));
+      if (size.incrementAndGet() > maximumSize)
+      {
+         EntryReference<K, V> eldest = insertionOrder.poll();
+         if (eldest != null)
+         {
+            size.decrementAndGet();
+            eldest.evict();
+         }
+      }
+   }
+
+   /**
+    * @return the number of entries in this cache, including the ones being computed
+    */
+   long size()
+   {
+      long size = 0;
+      for (Iterator<WeakReference<ConcurrentMap<K, FutureTask<V>>>> iterator = allClassEntries.iterator(); iterator.hasNext();)
+      {
+         ConcurrentMap<K, FutureTask<V>> classEntries = iterator.next().get();
+         if (classEntries == null)
+         {
+            // released together with its class
+            iterator.remove();
+         }
+         else
+         {
+            size += classEntries.size();
+         }
+      }
+      return size;
+   }
+
+   CacheStatistics getStatistics()
+   {
+      return new CacheStatistics(hitCount.sum(), missCount.sum(), loadCount.sum(), totalLoadTime.sum(), maximumLoadTime.get(), size());
+   }
+
+   void resetStatistics()
+   {
+      hitCount.reset();
+      missCount.reset();
+      loadCount.reset();
+      totalLoadTime.reset();
+      maximumLoadTime.reset();
+   }
+
+   /**
+    * Refers weakly to an entry, so that entries released with their classes are not retained.
+    */
+   private static class EntryReference<K, V>
+   {
+      private final WeakReference<ConcurrentMap<K, FutureTask<V>>> classEntries;
+
+      private final WeakReference<K> key;
+
+      EntryReference(ConcurrentMap<K, FutureTask<V>> classEntries, K key)
+      {
+         this.classEntries = new WeakReference<ConcurrentMap<K, FutureTask<V>>>(classEntries);
+         this.key = new WeakReference<K>(key);
+      }
+
+      void evict()
+      {
+         ConcurrentMap<K, FutureTask<V>> classEntries = this.classEntries.get();
+         K key = this.key.get();
+         if (classEntries != null && key != null)
+         {
+            classEntries.remove(key);
+         }
+      }
+   }
+}
@@ -1,58 +1,300 @@
 package org.jboss.interceptor.reader.cache;
 
-import com.google.common.base.Function;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
 import com.google.common.collect.ComputationException;
-import com.google.common.collect.MapMaker;
 import org.jboss.interceptor.reader.ClassMetadataInterceptorReference;
 import org.jboss.interceptor.reader.InterceptorMetadataUtils;
 import org.jboss.interceptor.reader.ReflectiveClassMetadata;
+import org.jboss.interceptor.reader.SimpleInterceptorMetadata;
+import org.jboss.interceptor.reader.classfile.ClassFileClassMetadata;
 import org.jboss.interceptor.spi.metadata.ClassMetadata;
 import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
 import org.jboss.interceptor.spi.metadata.InterceptorReference;
-
-import java.util.concurrent.ConcurrentMap;
+import org.jboss.interceptor.spi.metadata.MethodMetadata;
+import org.jboss.interceptor.spi.model.InterceptionType;
+import org.jboss.interceptor.util.InterceptorMetadataException;
 
 /**
  *
  */
 public class DefaultMetadataCachingReader implements MetadataCachingReader
 {
-   private final ConcurrentMap<InterceptorReference<?>, InterceptorMetadata<?>> interceptorMetadataCache;
+   private final ClassBoundComputingCache<InterceptorReference<?>, InterceptorMetadata<?>> interceptorMetadataCache;
 
-   private final ConcurrentMap<ClassMetadata<?>, InterceptorMetadata<?>> classMetadataInterceptorMetadataCache;
+   private final ClassBoundComputingCache<ClassMetadata<?>, InterceptorMetadata<?>> classMetadataInterceptorMetadataCache;
 
-   private final ConcurrentMap<Class<?>, ClassMetadata<?>> reflectiveClassMetadataCache;
+   private final ClassBoundComputingCache<Class<?>, ClassMetadata<?>> reflectiveClassMetadataCache;
 
    private boolean unwrapRuntimeExceptions;
 
    public DefaultMetadataCachingReader()
    {
-      this.interceptorMetadataCache = new MapMaker().makeComputingMap( new Function<InterceptorReference<?>, InterceptorMetadata<?>>()
+      this(0);
+   }
+
+   /**
+    * @param maximumSize the maximum number of entries of each cache, or 0 if they are unbounded. Whether bounded or not,
+    * the entries of the caches are released together with the classes they are read from.
+    */
+   public DefaultMetadataCachingReader(int maximumSize)
+   {
+      this.interceptorMetadataCache = new ClassBoundComputingCache<InterceptorReference<?>, InterceptorMetadata<?>>(maximumSize)
       {
-         public InterceptorMetadata<?> apply(InterceptorReference<?> from)
+         @Override
+         protected Class<?> getKeyClass(InterceptorReference<?> key)
+         {
+            return getBoundClass(key.getClassMetadata());
+         }
+
+         @Override
+         protected ClassLoader getKeyClassLoader(InterceptorReference<?> key)
+         {
+            return ((ClassFileClassMetadata<?>) key.getClassMetadata()).getClassLoader();
+         }
+
+         @Override
+         protected InterceptorMetadata<?> computeValue(InterceptorReference<?> from)
          {
             return InterceptorMetadataUtils.readMetadataForInterceptorClass(from);
          }
-      });
+      };
 
-      this.classMetadataInterceptorMetadataCache = new MapMaker().makeComputingMap(new Function<ClassMetadata<?>, InterceptorMetadata<?>>()
+      this.classMetadataInterceptorMetadataCache = new ClassBoundComputingCache<ClassMetadata<?>, InterceptorMetadata<?>>(maximumSize)
       {
-         public InterceptorMetadata<?> apply(ClassMetadata<?> from)
+         @Override
+         protected Class<?> getKeyClass(ClassMetadata<?> key)
+         {
+            return getBoundClass(key);
+         }
+
+         @Override
+         protected ClassLoader getKeyClassLoader(ClassMetadata<?> key)
+         {
+            return ((ClassFileClassMetadata<?>) key).getClassLoader();
+         }
+
+         @Override
+         protected InterceptorMetadata<?> computeValue(ClassMetadata<?> from)
          {
             return InterceptorMetadataUtils.readMetadataForTargetClass(from);
          }
-      });
+      };
 
-      this.reflectiveClassMetadataCache = new MapMaker().makeComputingMap(new Function<Class<?>, ClassMetadata<?>>()
+      this.reflectiveClassMetadataCache = new ClassBoundComputingCache<Class<?>, ClassMetadata<?>>(maximumSize)
       {
-         public ClassMetadata<?> apply(Class<?> from)
+         @Override
+         protected Class<?> getKeyClass(Class<?> key)
          {
-            return ReflectiveClassMetadata.of(from);
+            return key;
          }
-      });
+
+         @Override
+         protected ClassMetadata<?> computeValue(Class<?> from)
+         {
+            return readClassMetadata(from);
+         }
+      };
       this.unwrapRuntimeExceptions = true;
    }
 
+   /**
+    * @return the class whose lifecycle the entries read from the given class metadata follow, or null for the metadata
+    * read from class files, whose classes are not loaded for caching it. Since such metadata equals by class loader
+    * and class name, its entries are stored with its class loader (see {@link ClassBoundComputingCache}).
+    */
+   private static Class<?> getBoundClass(ClassMetadata<?> classMetadata)
+   {
+      return classMetadata instanceof ClassFileClassMetadata ? null : classMetadata.getJavaClass();
+   }
+
+   /**
+    * Reads the metadata of a class, which is then cached. Reflection is used by default.
+    *
+    * The metadata of the declared methods is kept with the returned {@link ClassMetadata}, so it is bounded and counted
+    * by this cache, and so is the metadata of the superclasses, if resolved with {@link #getSuperclassMetadata(Class)}.
+    */
+   protected <T> ClassMetadata<T> readClassMetadata(Class<T> clazz)
+   {
+      return ReflectiveClassMetadata.of(clazz, getSuperclassMetadata(clazz));
+   }
+
+   /**
+    * @return the cached metadata of the superclass of the given class, or null if it has none
+    */
+   protected ClassMetadata<?> getSuperclassMetadata(Class<?> clazz)
+   {
+      Class<?> superclass = clazz.getSuperclass();
+      return superclass == null ? null : getClassMetadata(superclass);
+   }
+
+   /**
+    * Reads the metadata of the given classes in parallel, in the common fork/join pool.
+    *
+    * @see #preloadMetadata(Collection, Collection, ForkJoinPool)
+    */
+   public void preloadMetadata(Collection<Class<?>> interceptorClasses, Collection<Class<?>> targetClasses)
+   {
+      preloadMetadata(interceptorClasses, targetClasses, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * Reads and caches, in parallel, the metadata of the given interceptor and target classes, so that their first use
+    * does not have to. The methods of the superclasses shared by several of the classes are read only once.
+    *
+    * @throws InterceptorMetadataException if the metadata of any of the classes cannot be read, after all the other classes
+    * have been read. The failures of the individual classes are added to it as suppressed exceptions.
+    */
+   public void preloadMetadata(Collection<Class<?>> interceptorClasses, Collection<Class<?>> targetClasses, ForkJoinPool forkJoinPool)
+   {
+      Set<Class<?>> hierarchyClasses = new LinkedHashSet<Class<?>>();
+      addHierarchies(hierarchyClasses, interceptorClasses);
+      addHierarchies(hierarchyClasses, targetClasses);
+      Map<Class<?>, Throwable> failures = new ConcurrentHashMap<Class<?>, Throwable>();
+      forkJoinPool.invoke(new MetadataPreloadAction(new MetadataPreloadAction.ClassProcessor()
+      {
+         public void process(Class<?> clazz)
+         {
+            // reads the declared methods, shared by all the subclasses
+            getClassMetadata(clazz).getDeclaredMethods();
+         }
+      }, hierarchyClasses.toArray(new Class<?>[hierarchyClasses.size()]), failures));
+      interceptorClasses = withoutFailures(interceptorClasses, failures);
+      targetClasses = withoutFailures(targetClasses, failures);
+      forkJoinPool.invoke(new MetadataPreloadAction(new MetadataPreloadAction.ClassProcessor()
+      {
+         public void process(Class<?> clazz)
+         {
+            getInterceptorMetadata(clazz);
+         }
+      }, interceptorClasses.toArray(new Class<?>[interceptorClasses.size()]), failures));
+      forkJoinPool.invoke(new MetadataPreloadAction(new MetadataPreloadAction.ClassProcessor()
+      {
+         public void process(Class<?> clazz)
+         {
+            getTargetClassInterceptorMetadata(clazz);
+         }
+      }, targetClasses.toArray(new Class<?>[targetClasses.size()]), failures));
+      if (!failures.isEmpty())
+      {
+         StringBuilder classNames = new StringBuilder();
+         for (Class<?> failedClass : failures.keySet())
+         {
+            classNames.append(classNames.length() == 0 ? "" : ", ").append(failedClass.getName());
+         }
+         InterceptorMetadataException exception = new InterceptorMetadataException("Cannot read the interceptor metadata of " + failures.size() + " classes: " + classNames);
+         for (Throwable failure : failures.values())
+         {
+            exception.addSuppressed(failure);
+         }
+         throw exception;
+      }
+   }
+
+   private static void addHierarchies(Set<Class<?>> hierarchyClasses, Collection<Class<?>> classes)
+   {
+      for (Class<?> clazz : classes)
+      {
+         for (Class<?> currentClass = clazz; currentClass != null && currentClass != Object.class && hierarchyClasses.add(currentClass); )
+         {
+            currentClass = currentClass.getSuperclass();
+         }
+      }
+   }
+
+   private static Collection<Class<?>> withoutFailures(Collection<Class<?>> classes, Map<Class<?>, Throwable> failures)
+   {
+      if (failures.isEmpty())
+      {
+         return classes;
+      }
+      Collection<Class<?>> remainingClasses = new ArrayList<Class<?>>(classes);
+      remainingClasses.removeAll(failures.keySet());
+      return remainingClasses;
+   }
+
+   /**
+    * Writes the interceptor metadata cached so far for interceptor and target classes to a snapshot file, which
+    * {@link #readSnapshot(File, ClassLoader)} can restore after a restart, without reading the classes again.
+    * Metadata cached for other kinds of {@link InterceptorReference}s is not written.
+    *
+    * @return the number of entries written
+    */
+   public int writeSnapshot(File file) throws IOException
+   {
+      List<InterceptorMetadata<?>> interceptorMetadata = new ArrayList<InterceptorMetadata<?>>();
+      for (Map.Entry<InterceptorReference<?>, InterceptorMetadata<?>> entry : interceptorMetadataCache.getComputedValues().entrySet())
+      {
+         if (entry.getKey() instanceof ClassMetadataInterceptorReference)
+         {
+            interceptorMetadata.add(entry.getValue());
+         }
+      }
+      interceptorMetadata.addAll(classMetadataInterceptorMetadataCache.getComputedValues().values());
+      return MetadataSnapshot.write(file, interceptorMetadata);
+   }
+
+   /**
+    * Restores into the caches the interceptor metadata written by {@link #writeSnapshot(File)}. The classes are loaded
+    * through the given class loader, and the metadata of a class is only restored if its class file and the class
+    * files of its superclasses are unchanged since the snapshot was written, and if the class has no cached metadata yet.
+    *
+    * @return the number of restored entries
+    * @throws IOException if the snapshot cannot be read or is corrupted
+    */
+   public int readSnapshot(File file, ClassLoader classLoader) throws IOException
+   {
+      return MetadataSnapshot.read(file, classLoader, new MetadataSnapshot.Restorer()
+      {
+         public boolean restore(Class<?> clazz, boolean targetClass, Map<InterceptionType, List<MethodMetadata>> interceptorMethodMap)
+         {
+            ClassMetadata<?> classMetadata = getClassMetadata(clazz);
+            if (targetClass)
+            {
+               return classMetadataInterceptorMetadataCache.putIfAbsent(classMetadata,
+                     new SimpleInterceptorMetadata(ClassMetadataInterceptorReference.of(classMetadata), true, interceptorMethodMap));
+            }
+            InterceptorReference<?> interceptorReference = ClassMetadataInterceptorReference.of(classMetadata);
+            return interceptorMetadataCache.putIfAbsent(interceptorReference,
+                  new SimpleInterceptorMetadata(interceptorReference, false, interceptorMethodMap));
+         }
+      });
+   }
+
+   public CacheStatistics getInterceptorMetadataStatistics()
+   {
+      return interceptorMetadataCache.getStatistics();
+   }
+
+   public CacheStatistics getTargetClassInterceptorMetadataStatistics()
+   {
+      return classMetadataInterceptorMetadataCache.getStatistics();
+   }
+
+   public CacheStatistics getClassMetadataStatistics()
+   {
+      return reflectiveClassMetadataCache.getStatistics();
+   }
+
+   /**
+    * Resets the counters of all the caches. The cached entries are kept.
+    */
+   public void resetStatistics()
+   {
+      interceptorMetadataCache.resetStatistics();
+      classMetadataInterceptorMetadataCache.resetStatistics();
+      reflectiveClassMetadataCache.resetStatistics();
+   }
+
    public void setUnwrapRuntimeExceptions(boolean unwrapRuntimeExceptions)
    {
       this.unwrapRuntimeExceptions = unwrapRuntimeExceptions;
@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.reader.cache;
+
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads the metadata of a range of classes, splitting the range between the threads of a fork/join pool.
+ * The failures are collected per class, so that reading the other classes carries on.
+ *
+ * @author Marius Bogoevici
+ */
+class MetadataPreloadAction extends RecursiveAction
+{
+   private static final long serialVersionUID = 1L;
+
+   private static final int THRESHOLD = 8;
+
+   interface ClassProcessor
+   {
+      void process(Class<?> clazz);
+   }
+
+   private final ClassProcessor classProcessor;
+
+   private final Class<?>[] classes;
+
+   private final int from;
+
+   private final int to;
+
+   private final Map<Class<?>, Throwable> failures;
+
+   MetadataPreloadAction(ClassProcessor classProcessor, Class<?>[] classes, Map<Class<?>, Throwable> failures)
+   {
+      this(classProcessor, classes, 0, classes.length, failures);
+   }
+
+   private MetadataPreloadAction(ClassProcessor classProcessor, Class<?>[] classes, int from, int to, Map<Class<?>, Throwable> failures)
+   {
+      this.classProcessor = classProcessor;
+      this.classes = classes;
+      this.from = from;
+      this.to = to;
+      this.failures = failures;
+   }
+
+   @Override
+   protected void compute()
+   {
+      if (to - from <= THRESHOLD)
+      {
+         for (int i = from; i < to; i++)
+         {
+            try
+            {
+               classProcessor.process(classes[i]);
+            }
+            catch (RuntimeException e)
+            {
+               failures.put(classes[i], e);
+            }
+            catch (LinkageError e)
+            {
+               failures.put(classes[i], e);
+            }
+         }
+      }
+      else
+      {
+         int middle = (from + to) >>> 1;
+         invokeAll(new MetadataPreloadAction(classProcessor, classes, from, middle, failures),
+               new MetadataPreloadAction(classProcessor, classes, middle, to, failures));
+      }
+   }
+}
@@ -0,0 +1,382 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.reader.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.jboss.interceptor.reader.DefaultMethodMetadata;
+import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
+import org.jboss.interceptor.spi.metadata.MethodMetadata;
+import org.jboss.interceptor.spi.model.InterceptionType;
+import org.jboss.interceptor.util.DescriptorUtils;
+import org.jboss.interceptor.util.ReflectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes and reads the binary snapshot of the interceptor metadata cached by a {@link DefaultMetadataCachingReader}.
+ *
+ * After a header, the snapshot holds an entry for the metadata of each interceptor or target class: the name of the
+ * class, a CRC32 checksum of the class files of the class and of its superclasses, and the interceptor methods of each
+ * interception type, as their declaring class name, name and descriptor. It ends with the CRC32 of all the preceding
+ * bytes. The snapshot is read through a memory-mapped buffer, and an entry is only restored if the checksum of the
+ * class files it was read from is unchanged.
+ *
+ * @author Marius Bogoevici
+ */
+class MetadataSnapshot
+{
+   private static final Logger LOG = LoggerFactory.getLogger(MetadataSnapshot.class);
+
+   private static final int MAGIC = 0x4A494D53;
+
+   private static final int VERSION = 1;
+
+   private static final int HEADER_LENGTH = 12;
+
+   private static final int TRAILER_LENGTH = 8;
+
+   private static final long NO_CHECKSUM = -1;
+
+   private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+   /**
+    * Installs the metadata restored from a snapshot.
+    */
+   interface Restorer
+   {
+      /**
+       * @return false if the class has metadata already, so it was not restored
+       */
+      boolean restore(Class<?> clazz, boolean targetClass, Map<InterceptionType, List<MethodMetadata>> interceptorMethodMap);
+   }
+
+   private MetadataSnapshot()
+   {
+   }
+
+   /**
+    * Writes the given metadata to a temporary file first, which then replaces the given file. The metadata of classes
+    * whose class files cannot be found is left out.
+    */
+   static int write(File file, Collection<InterceptorMetadata<?>> interceptorMetadata) throws IOException
+   {
+      ByteArrayOutputStream entries = new ByteArrayOutputStream();
+      DataOutputStream output = new DataOutputStream(entries);
+      int entryCount = 0;
+      for (InterceptorMetadata<?> metadata : interceptorMetadata)
+      {
+         Class<?> clazz = metadata.getInterceptorClass().getJavaClass();
+         long checksum = getHierarchyChecksum(clazz);
+         if (checksum == NO_CHECKSUM)
+         {
+            continue;
+         }
+         output.writeBoolean(metadata.isTargetClass());
+         writeString(output, clazz.getName());
+         output.writeLong(checksum);
+         List<InterceptionType> interceptionTypes = new ArrayList<InterceptionType>();
+         for (InterceptionType interceptionType : InterceptionType.values())
+         {
+            if (!metadata.getInterceptorMethods(interceptionType).isEmpty())
+            {
+               interceptionTypes.add(interceptionType);
+            }
+         }
+         output.writeByte(interceptionTypes.size());
+         for (InterceptionType interceptionType : interceptionTypes)
+         {
+            List<MethodMetadata> methods = metadata.getInterceptorMethods(interceptionType);
+            output.writeByte(interceptionType.ordinal());
+            output.writeShort(methods.size());
+            for (MethodMetadata method : methods)
+            {
+               writeString(output, method.getJavaMethod().getDeclaringClass().getName());
+               writeString(output, method.getJavaMethod().getName());
+               writeString(output, DescriptorUtils.getDescriptor(method.getJavaMethod()));
+            }
+         }
+         entryCount++;
+      }
+      output.flush();
+
+      ByteArrayOutputStream snapshot = new ByteArrayOutputStream(HEADER_LENGTH + entries.size() + TRAILER_LENGTH);
+      output = new DataOutputStream(snapshot);
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(entryCount);
+      entries.writeTo(output);
+      output.flush();
+      CRC32 crc = new CRC32();
+      crc.update(snapshot.toByteArray());
+      output.writeLong(crc.getValue());
+      output.flush();
+
+      File temporaryFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+      try
+      {
+         Files.write(temporaryFile.toPath(), snapshot.toByteArray());
+         Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      finally
+      {
+         temporaryFile.delete();
+      }
+      return entryCount;
+   }
+
+   /**
+    * Restores the entries of the snapshot whose classes can be loaded through the given class loader and whose
+    * class files are unchanged.
+    *
+    * @return the number of restored entries
+    * @throws IOException if the file cannot be read, or is not a valid snapshot
+    */
+   static int read(File file, ClassLoader classLoader, Restorer restorer) throws IOException
+   {
+      ByteBuffer buffer = map(file);
+      if (buffer.remaining() < HEADER_LENGTH + TRAILER_LENGTH || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+      {
+         throw new IOException("Not an interceptor metadata snapshot: " + file);
+      }
+      ByteBuffer contents = buffer.duplicate();
+      contents.position(0);
+      contents.limit(buffer.limit() - TRAILER_LENGTH);
+      CRC32 crc = new CRC32();
+      crc.update(contents);
+      if (crc.getValue() != buffer.getLong(buffer.limit() - TRAILER_LENGTH))
+      {
+         throw new IOException("The interceptor metadata snapshot is corrupted: " + file);
+      }
+      int entryCount = buffer.getInt();
+      int restoredCount = 0;
+      try
+      {
+         for (int i = 0; i < entryCount; i++)
+         {
+            if (readEntry(buffer, classLoader, restorer))
+            {
+               restoredCount++;
+            }
+         }
+      }
+      catch (BufferUnderflowException e)
+      {
+         // only a snapshot written by a different version would not parse after its checksum matches
+         throw new IOException("Cannot read the interceptor metadata snapshot " + file, e);
+      }
+      catch (IndexOutOfBoundsException e)
+      {
+         throw new IOException("Cannot read the interceptor metadata snapshot " + file, e);
+      }
+      return restoredCount;
+   }
+
+   private static ByteBuffer map(File file) throws IOException
+   {
+      FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      try
+      {
+         if (channel.size() > Integer.MAX_VALUE)
+         {
+            throw new IOException("Not an interceptor metadata snapshot: " + file);
+         }
+         // the mapping stays valid once the channel is closed
+         return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      finally
+      {
+         channel.close();
+      }
+   }
+
+   private static boolean readEntry(ByteBuffer buffer, ClassLoader classLoader, Restorer restorer)
+   {
+      boolean targetClass = buffer.get() != 0;
+      String className = readString(buffer);
+      long checksum = buffer.getLong();
+      // the methods are read in full before resolving anything, so that a stale entry can be skipped
+      Map<InterceptionType, List<String[]>> methodsByType = new EnumMap<InterceptionType, List<String[]>>(InterceptionType.class);
+      int interceptionTypeCount = buffer.get();
+      for (int i = 0; i < interceptionTypeCount; i++)
+      {
+         InterceptionType interceptionType = InterceptionType.values()[buffer.get()];
+         int methodCount = buffer.getShort() & 0xFFFF;
+         List<String[]> methods = new ArrayList<String[]>(methodCount);
+         for (int j = 0; j < methodCount; j++)
+         {
+            methods.add(new String[]{readString(buffer), readString(buffer), readString(buffer)});
+         }
+         methodsByType.put(interceptionType, methods);
+      }
+      try
+      {
+         Class<?> clazz = Class.forName(className, false, classLoader);
+         if (getHierarchyChecksum(clazz) != checksum)
+         {
+            LOG.debug("Not restoring the interceptor metadata of " + className + ", since its class files have changed");
+            return false;
+         }
+         return restorer.restore(clazz, targetClass, resolveMethods(clazz, methodsByType));
+      }
+      catch (ClassNotFoundException e)
+      {
+         LOG.debug("Not restoring the interceptor metadata of " + className + ", since it cannot be loaded");
+         return false;
+      }
+      catch (NoSuchMethodException e)
+      {
+         LOG.debug("Not restoring the interceptor metadata of " + className + ", since it cannot be resolved", e);
+         return false;
+      }
+      catch (LinkageError e)
+      {
+         LOG.debug("Not restoring the interceptor metadata of " + className + ", since it cannot be loaded", e);
+         return false;
+      }
+   }
+
+   private static Map<InterceptionType, List<MethodMetadata>> resolveMethods(Class<?> clazz, Map<InterceptionType, List<String[]>> methodsByType) throws ClassNotFoundException, NoSuchMethodException
+   {
+      // a method carries all the interception types it is listed for, as when it is read from its annotations
+      Map<Method, Set<InterceptionType>> interceptionTypesByMethod = new LinkedHashMap<Method, Set<InterceptionType>>();
+      Map<InterceptionType, List<Method>> javaMethodsByType = new EnumMap<InterceptionType, List<Method>>(InterceptionType.class);
+      for (Map.Entry<InterceptionType, List<String[]>> entry : methodsByType.entrySet())
+      {
+         List<Method> javaMethods = new ArrayList<Method>();
+         for (String[] method : entry.getValue())
+         {
+            Method javaMethod = resolveMethod(clazz, method[0], method[1], method[2]);
+            Set<InterceptionType> interceptionTypes = interceptionTypesByMethod.get(javaMethod);
+            if (interceptionTypes == null)
+            {
+               interceptionTypes = EnumSet.noneOf(InterceptionType.class);
+               interceptionTypesByMethod.put(javaMethod, interceptionTypes);
+            }
+            interceptionTypes.add(entry.getKey());
+            javaMethods.add(javaMethod);
+         }
+         javaMethodsByType.put(entry.getKey(), javaMethods);
+      }
+      Map<Method, MethodMetadata> methodMetadata = new LinkedHashMap<Method, MethodMetadata>();
+      for (Map.Entry<Method, Set<InterceptionType>> entry : interceptionTypesByMethod.entrySet())
+      {
+         ReflectionUtils.ensureAccessible(entry.getKey());
+         methodMetadata.put(entry.getKey(), DefaultMethodMetadata.of(entry.getKey(), entry.getValue()));
+      }
+      Map<InterceptionType, List<MethodMetadata>> interceptorMethodMap = new EnumMap<InterceptionType, List<MethodMetadata>>(InterceptionType.class);
+      for (Map.Entry<InterceptionType, List<Method>> entry : javaMethodsByType.entrySet())
+      {
+         List<MethodMetadata> methods = new ArrayList<MethodMetadata>();
+         for (Method javaMethod : entry.getValue())
+         {
+            methods.add(methodMetadata.get(javaMethod));
+         }
+         interceptorMethodMap.put(entry.getKey(), methods);
+      }
+      return interceptorMethodMap;
+   }
+
+   private static Method resolveMethod(Class<?> clazz, String declaringClassName, String name, String descriptor) throws ClassNotFoundException, NoSuchMethodException
+   {
+      Class<?> declaringClass = clazz;
+      while (declaringClass != null && !declaringClass.getName().equals(declaringClassName))
+      {
+         declaringClass = declaringClass.getSuperclass();
+      }
+      if (declaringClass == null)
+      {
+         throw new NoSuchMethodException(declaringClassName + "." + name + descriptor);
+      }
+      return declaringClass.getDeclaredMethod(name, DescriptorUtils.getParameterTypes(descriptor, declaringClass.getClassLoader()));
+   }
+
+   /**
+    * @return the checksum of the class files of the class and its superclasses, or {@link #NO_CHECKSUM} if any of
+    * them cannot be found, e.g. for generated classes
+    */
+   static long getHierarchyChecksum(Class<?> clazz)
+   {
+      CRC32 crc = new CRC32();
+      byte[] bytes = new byte[4096];
+      for (Class<?> currentClass = clazz; currentClass != null && currentClass != Object.class; currentClass = currentClass.getSuperclass())
+      {
+         String resourceName = currentClass.getName().replace('.', '/') + ".class";
+         ClassLoader classLoader = currentClass.getClassLoader();
+         InputStream classFile = classLoader != null ? classLoader.getResourceAsStream(resourceName) : ClassLoader.getSystemResourceAsStream(resourceName);
+         if (classFile == null)
+         {
+            return NO_CHECKSUM;
+         }
+         try
+         {
+            try
+            {
+               for (int count = classFile.read(bytes); count != -1; count = classFile.read(bytes))
+               {
+                  crc.update(bytes, 0, count);
+               }
+            }
+            finally
+            {
+               classFile.close();
+            }
+         }
+         catch (IOException e)
+         {
+            return NO_CHECKSUM;
+         }
+      }
+      return crc.getValue();
+   }
+
+   private static void writeString(DataOutputStream output, String value) throws IOException
+   {
+      byte[] bytes = value.getBytes(UTF_8);
+      output.writeShort(bytes.length);
+      output.write(bytes);
+   }
+
+   private static String readString(ByteBuffer buffer)
+   {
+      byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+      buffer.get(bytes);
+      return new String(bytes, UTF_8);
+   }
+}
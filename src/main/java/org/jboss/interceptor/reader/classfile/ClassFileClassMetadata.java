@@ -0,0 +1,290 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.reader.classfile;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.annotation.Annotation;
+
+import org.jboss.interceptor.reader.ReflectiveClassMetadata;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.spi.metadata.MethodMetadata;
+import org.jboss.interceptor.util.InterceptorMetadataException;
+
+/**
+ * {@link ClassMetadata} read from the bytes of a class file, so that the class does not have to be loaded for
+ * finding out its annotations and the interception types of its methods. The class is loaded, but not initialized,
+ * only when {@link #getJavaClass()} is called, and so are the methods, on {@link MethodMetadata#getJavaMethod()}.
+ *
+ * The superclasses are read the same way, through the class loader the class file was read with. The metadata of a
+ * superclass is read once for all its subclasses in use, see {@link #getSuperclass()}.
+ *
+ * @author Marius Bogoevici
+ */
+public class ClassFileClassMetadata<T> implements ClassMetadata<T>
+{
+   private static final long serialVersionUID = 1L;
+
+   // the superclasses read so far, by class loader and class name. They are referred to weakly, so that they are
+   // released together with their subclasses, and with their class loader.
+   private static final Map<ClassLoader, ConcurrentMap<String, WeakReference<ClassFileClassMetadata<?>>>> superclasses = new WeakHashMap<ClassLoader, ConcurrentMap<String, WeakReference<ClassFileClassMetadata<?>>>>();
+
+   private final String className;
+
+   private final String superclassName;
+
+   private final Set<String> annotationClassNames;
+
+   private final List<ClassFileMethodMetadata> declaredMethods;
+
+   private final transient ClassLoader classLoader;
+
+   private transient volatile Class<T> javaClass;
+
+   private transient volatile ClassMetadata<?> superclass;
+
+   private ClassFileClassMetadata(ClassFile classFile, ClassLoader classLoader)
+   {
+      this.className = classFile.getName();
+      this.superclassName = classFile.getSuperclass();
+      this.annotationClassNames = getAnnotationClassNames((AnnotationsAttribute) classFile.getAttribute(AnnotationsAttribute.visibleTag));
+      this.classLoader = classLoader;
+      List<ClassFileMethodMetadata> declaredMethods = new ArrayList<ClassFileMethodMetadata>();
+      for (Object method : classFile.getMethods())
+      {
+         MethodInfo methodInfo = (MethodInfo) method;
+         if (methodInfo.isMethod())
+         {
+            declaredMethods.add(new ClassFileMethodMetadata(this, methodInfo.getName(), methodInfo.getDescriptor(), methodInfo.getAccessFlags(),
+                  getAnnotationClassNames((AnnotationsAttribute) methodInfo.getAttribute(AnnotationsAttribute.visibleTag))));
+         }
+      }
+      this.declaredMethods = Collections.unmodifiableList(declaredMethods);
+   }
+
+   /**
+    * @param classLoader the class loader that loads the class and its superclasses, <code>null</code> for the bootstrap class loader
+    */
+   public static <T> ClassFileClassMetadata<T> of(ClassFile classFile, ClassLoader classLoader)
+   {
+      return new ClassFileClassMetadata<T>(classFile, classLoader);
+   }
+
+   public static <T> ClassFileClassMetadata<T> of(InputStream classFileStream, ClassLoader classLoader) throws IOException
+   {
+      return of(new ClassFile(new DataInputStream(new BufferedInputStream(classFileStream))), classLoader);
+   }
+
+   /**
+    * Reads the class file of the given class as a resource of the given class loader.
+    *
+    * @throws InterceptorMetadataException if the class file cannot be found or read
+    */
+   public static <T> ClassFileClassMetadata<T> of(String className, ClassLoader classLoader)
+   {
+      String resourceName = className.replace('.', '/') + ".class";
+      InputStream classFileStream = classLoader != null ? classLoader.getResourceAsStream(resourceName) : ClassLoader.getSystemResourceAsStream(resourceName);
+      if (classFileStream == null)
+      {
+         throw new InterceptorMetadataException("Cannot find the class file of " + className);
+      }
+      try
+      {
+         try
+         {
+            return of(classFileStream, classLoader);
+         }
+         finally
+         {
+            classFileStream.close();
+         }
+      }
+      catch (IOException e)
+      {
+         throw new InterceptorMetadataException("Cannot read the class file of " + className, e);
+      }
+   }
+
+   private static Set<String> getAnnotationClassNames(AnnotationsAttribute annotationsAttribute)
+   {
+      if (annotationsAttribute == null)
+      {
+         return Collections.emptySet();
+      }
+      Set<String> annotationClassNames = new HashSet<String>();
+      for (Annotation annotation : annotationsAttribute.getAnnotations())
+      {
+         annotationClassNames.add(annotation.getTypeName());
+      }
+      return Collections.unmodifiableSet(annotationClassNames);
+   }
+
+   public String getClassName()
+   {
+      return className;
+   }
+
+   /**
+    * @return the names of the runtime visible annotations of the class
+    */
+   public Set<String> getAnnotationClassNames()
+   {
+      return annotationClassNames;
+   }
+
+   public boolean isAnnotationPresent(String annotationClassName)
+   {
+      return annotationClassNames.contains(annotationClassName);
+   }
+
+   /**
+    * @return true if any of the declared methods is annotated for a supported interception type
+    */
+   public boolean declaresInterceptorMethods()
+   {
+      for (ClassFileMethodMetadata method : declaredMethods)
+      {
+         if (!method.getSupportedInterceptionTypes().isEmpty())
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   @SuppressWarnings({"unchecked", "rawtypes"})
+   public Iterable<MethodMetadata> getDeclaredMethods()
+   {
+      return (Iterable) declaredMethods;
+   }
+
+   /**
+    * @return the class loader the class file was read with, <code>null</code> for the bootstrap class loader
+    */
+   public ClassLoader getClassLoader()
+   {
+      return classLoader;
+   }
+
+   /**
+    * Loads the class, without initializing it.
+    */
+   @SuppressWarnings("unchecked")
+   public Class<T> getJavaClass()
+   {
+      Class<T> javaClass = this.javaClass;
+      if (javaClass == null)
+      {
+         try
+         {
+            javaClass = (Class<T>) Class.forName(className, false, classLoader);
+         }
+         catch (ClassNotFoundException e)
+         {
+            throw new InterceptorMetadataException("Cannot load class " + className, e);
+         }
+         this.javaClass = javaClass;
+      }
+      return javaClass;
+   }
+
+   public ClassMetadata<?> getSuperclass()
+   {
+      if (superclassName == null)
+      {
+         return null;
+      }
+      ClassMetadata<?> superclass = this.superclass;
+      if (superclass == null)
+      {
+         superclass = getSuperclass(superclassName, classLoader);
+         this.superclass = superclass;
+      }
+      return superclass;
+   }
+
+   /**
+    * @return the metadata of the given superclass, shared with the other subclasses that have read it
+    */
+   private static ClassFileClassMetadata<?> getSuperclass(String className, ClassLoader classLoader)
+   {
+      ConcurrentMap<String, WeakReference<ClassFileClassMetadata<?>>> classLoaderSuperclasses;
+      synchronized (superclasses)
+      {
+         classLoaderSuperclasses = superclasses.get(classLoader);
+         if (classLoaderSuperclasses == null)
+         {
+            classLoaderSuperclasses = new ConcurrentHashMap<String, WeakReference<ClassFileClassMetadata<?>>>();
+            superclasses.put(classLoader, classLoaderSuperclasses);
+         }
+      }
+      WeakReference<ClassFileClassMetadata<?>> superclassReference = classLoaderSuperclasses.get(className);
+      ClassFileClassMetadata<?> superclass = superclassReference != null ? superclassReference.get() : null;
+      if (superclass == null)
+      {
+         // concurrent subclasses may read the superclass twice, and keep different but equal metadata
+         superclass = of(className, classLoader);
+         classLoaderSuperclasses.put(className, new WeakReference<ClassFileClassMetadata<?>>(superclass));
+      }
+      return superclass;
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return className.hashCode();
+   }
+
+   @Override
+   public boolean equals(Object obj)
+   {
+      if (!(obj instanceof ClassFileClassMetadata))
+      {
+         return false;
+      }
+      ClassFileClassMetadata<?> other = (ClassFileClassMetadata<?>) obj;
+      return className.equals(other.className) && classLoader == other.classLoader;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "ClassFileClassMetadata[" + className + "]";
+   }
+
+   private Object writeReplace()
+   {
+      return ReflectiveClassMetadata.of(getJavaClass());
+   }
+}
@@ -0,0 +1,152 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.reader.classfile;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import javassist.bytecode.AccessFlag;
+
+import org.jboss.interceptor.reader.DefaultMethodMetadata;
+import org.jboss.interceptor.spi.metadata.MethodMetadata;
+import org.jboss.interceptor.spi.model.InterceptionType;
+import org.jboss.interceptor.util.DescriptorUtils;
+import org.jboss.interceptor.util.InterceptionTypeRegistry;
+import org.jboss.interceptor.util.InterceptorMetadataException;
+
+/**
+ * {@link MethodMetadata} read from a class file. The interception types of the method are known from its annotations,
+ * while the {@link Method} itself is only resolved on the first call to {@link #getJavaMethod()}.
+ *
+ * @author Marius Bogoevici
+ */
+public class ClassFileMethodMetadata implements MethodMetadata, Serializable
+{
+   private static final long serialVersionUID = 1L;
+
+   private final transient ClassFileClassMetadata<?> declaringClass;
+
+   private final String name;
+
+   private final String descriptor;
+
+   private final int accessFlags;
+
+   private final Set<String> annotationClassNames;
+
+   private final Set<InterceptionType> supportedInterceptionTypes;
+
+   private transient volatile Method javaMethod;
+
+   ClassFileMethodMetadata(ClassFileClassMetadata<?> declaringClass, String name, String descriptor, int accessFlags, Set<String> annotationClassNames)
+   {
+      this.declaringClass = declaringClass;
+      this.name = name;
+      this.descriptor = descriptor;
+      this.accessFlags = accessFlags;
+      this.annotationClassNames = annotationClassNames;
+      Set<InterceptionType> supportedInterceptionTypes = EnumSet.noneOf(InterceptionType.class);
+      for (InterceptionType interceptionType : InterceptionTypeRegistry.getSupportedInterceptionTypes())
+      {
+         if (annotationClassNames.contains(interceptionType.annotationClassName()))
+         {
+            supportedInterceptionTypes.add(interceptionType);
+         }
+      }
+      this.supportedInterceptionTypes = supportedInterceptionTypes.isEmpty() ? Collections.<InterceptionType>emptySet() : Collections.unmodifiableSet(supportedInterceptionTypes);
+   }
+
+   public String getName()
+   {
+      return name;
+   }
+
+   /**
+    * @return the JVM descriptor of the method, e.g. <code>(Ljavax/interceptor/InvocationContext;)Ljava/lang/Object;</code>
+    */
+   public String getDescriptor()
+   {
+      return descriptor;
+   }
+
+   public boolean isPrivate()
+   {
+      return (accessFlags & AccessFlag.PRIVATE) != 0;
+   }
+
+   public boolean isAnnotationPresent(String annotationClassName)
+   {
+      return annotationClassNames.contains(annotationClassName);
+   }
+
+   public Set<InterceptionType> getSupportedInterceptionTypes()
+   {
+      return supportedInterceptionTypes;
+   }
+
+   /**
+    * Resolves the method, loading its declaring class and parameter types if they are not loaded yet.
+    */
+   public Method getJavaMethod()
+   {
+      Method javaMethod = this.javaMethod;
+      if (javaMethod == null)
+      {
+         try
+         {
+            javaMethod = declaringClass.getJavaClass().getDeclaredMethod(name, DescriptorUtils.getParameterTypes(descriptor, declaringClass.getClassLoader()));
+         }
+         catch (NoSuchMethodException e)
+         {
+            throw new InterceptorMetadataException("Cannot resolve method " + name + descriptor + " of " + declaringClass.getClassName(), e);
+         }
+         catch (ClassNotFoundException e)
+         {
+            throw new InterceptorMetadataException("Cannot resolve method " + name + descriptor + " of " + declaringClass.getClassName(), e);
+         }
+         this.javaMethod = javaMethod;
+      }
+      return javaMethod;
+   }
+
+   public Class<?> getReturnType()
+   {
+      try
+      {
+         return DescriptorUtils.getReturnType(descriptor, declaringClass.getClassLoader());
+      }
+      catch (ClassNotFoundException e)
+      {
+         throw new InterceptorMetadataException("Cannot resolve the return type of method " + name + descriptor + " of " + declaringClass.getClassName(), e);
+      }
+   }
+
+   @Override
+   public String toString()
+   {
+      return "ClassFileMethodMetadata[" + declaringClass.getClassName() + "." + name + descriptor + "]";
+   }
+
+   private Object writeReplace()
+   {
+      return DefaultMethodMetadata.of(getJavaMethod());
+   }
+}
@@ -0,0 +1,153 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.reader.index;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.interceptor.reader.ReflectiveClassMetadata;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.spi.metadata.MethodMetadata;
+import org.jboss.interceptor.spi.model.InterceptionType;
+import org.jboss.interceptor.util.InterceptorMetadataException;
+
+/**
+ * {@link ClassMetadata} served from the interceptor metadata index (see {@link MetadataIndex}). All the declared methods
+ * are returned, but their interception types come from the index: the methods recorded in it have the recorded
+ * types, and the other ones have none. Neither the annotations of the methods nor those of the class are read.
+ *
+ * @author Marius Bogoevici
+ */
+public class IndexedClassMetadata<T> implements ClassMetadata<T>, Serializable
+{
+   private static final long serialVersionUID = 1L;
+
+   private final Class<T> clazz;
+
+   private final ClassMetadata<?> superclass;
+
+   // read on first use, and cached together with this instance
+   private transient volatile MethodMetadata[] declaredMethods;
+
+   private IndexedClassMetadata(Class<T> clazz, ClassMetadata<?> superclass)
+   {
+      this.clazz = clazz;
+      this.superclass = superclass;
+   }
+
+   /**
+    * @return the indexed metadata of the given class, or its {@link ReflectiveClassMetadata} if the class is not
+    * covered by the index of its class loader
+    */
+   public static <T> ClassMetadata<T> of(Class<T> clazz)
+   {
+      Class<?> superclass = clazz.getSuperclass();
+      return of(clazz, superclass == null ? null : of(superclass));
+   }
+
+   /**
+    * @param superclass the metadata of the superclass of the class, e.g. as cached by an
+    * {@link IndexedMetadataCachingReader}, or null if it has none
+    * @return the indexed metadata of the given class, or its {@link ReflectiveClassMetadata} if the class is not
+    * covered by the index of its class loader
+    */
+   public static <T> ClassMetadata<T> of(Class<T> clazz, ClassMetadata<?> superclass)
+   {
+      if (isIndexed(clazz))
+      {
+         return new IndexedClassMetadata<T>(clazz, superclass);
+      }
+      return ReflectiveClassMetadata.of(clazz, superclass);
+   }
+
+   public static boolean isIndexed(Class<?> clazz)
+   {
+      return MetadataIndex.getIndexedMethods(clazz) != null;
+   }
+
+   public Iterable<MethodMetadata> getDeclaredMethods()
+   {
+      return Arrays.asList(readDeclaredMethods());
+   }
+
+   private MethodMetadata[] readDeclaredMethods()
+   {
+      MethodMetadata[] methodMetadata = declaredMethods;
+      if (methodMetadata == null)
+      {
+         Map<Method, Set<InterceptionType>> indexedInterceptionTypes = new HashMap<Method, Set<InterceptionType>>();
+         for (MetadataIndex.IndexedMethod indexedMethod : MetadataIndex.getIndexedMethods(clazz))
+         {
+            try
+            {
+               Method method = clazz.getDeclaredMethod(indexedMethod.name, indexedMethod.getParameterTypes(clazz.getClassLoader()));
+               indexedInterceptionTypes.put(method, indexedMethod.interceptionTypes);
+            }
+            catch (NoSuchMethodException e)
+            {
+               throw new InterceptorMetadataException("The interceptor metadata index is out of date for " + clazz.getName() + ": " + indexedMethod.name + indexedMethod.descriptor, e);
+            }
+            catch (ClassNotFoundException e)
+            {
+               throw new InterceptorMetadataException("The interceptor metadata index is out of date for " + clazz.getName() + ": " + indexedMethod.name + indexedMethod.descriptor, e);
+            }
+         }
+         Method[] methods = clazz.getDeclaredMethods();
+         methodMetadata = new MethodMetadata[methods.length];
+         for (int i = 0; i < methods.length; i++)
+         {
+            Set<InterceptionType> interceptionTypes = indexedInterceptionTypes.get(methods[i]);
+            methodMetadata[i] = new IndexedMethodMetadata(methods[i], interceptionTypes != null ? interceptionTypes : Collections.<InterceptionType>emptySet());
+         }
+         declaredMethods = methodMetadata;
+      }
+      return methodMetadata;
+   }
+
+   public Class<T> getJavaClass()
+   {
+      return clazz;
+   }
+
+   public String getClassName()
+   {
+      return clazz.getName();
+   }
+
+   public ClassMetadata<?> getSuperclass()
+   {
+      return superclass;
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return clazz.hashCode();
+   }
+
+   @Override
+   public boolean equals(Object obj)
+   {
+      return obj instanceof IndexedClassMetadata && clazz.equals(((IndexedClassMetadata<?>) obj).clazz);
+   }
+}
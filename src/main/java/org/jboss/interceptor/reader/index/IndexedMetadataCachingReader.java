@@ -0,0 +1,47 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.reader.index;
+
+import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+
+/**
+ * A {@link DefaultMetadataCachingReader} which reads the metadata of classes from the interceptor metadata index built
+ * by the <code>jboss-interceptor-metadata-processor</code> annotation processor, and only falls back to reflection for
+ * the classes which are not covered by the index.
+ *
+ * @author Marius Bogoevici
+ */
+public class IndexedMetadataCachingReader extends DefaultMetadataCachingReader
+{
+   public IndexedMetadataCachingReader()
+   {
+      super();
+   }
+
+   public IndexedMetadataCachingReader(int maximumSize)
+   {
+      super(maximumSize);
+   }
+
+   @Override
+   protected <T> ClassMetadata<T> readClassMetadata(Class<T> clazz)
+   {
+      return IndexedClassMetadata.of(clazz, getSuperclassMetadata(clazz));
+   }
+}
@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.reader.index;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Set;
+
+import org.jboss.interceptor.reader.DefaultMethodMetadata;
+import org.jboss.interceptor.spi.metadata.MethodMetadata;
+import org.jboss.interceptor.spi.model.InterceptionType;
+
+/**
+ * {@link MethodMetadata} whose interception types come from the interceptor metadata index, rather than from the
+ * annotations of the method.
+ *
+ * @author Marius Bogoevici
+ */
+class IndexedMethodMetadata implements MethodMetadata, Serializable
+{
+   private static final long serialVersionUID = 1L;
+
+   private final transient Method javaMethod;
+
+   private final transient Set<InterceptionType> supportedInterceptionTypes;
+
+   IndexedMethodMetadata(Method javaMethod, Set<InterceptionType> supportedInterceptionTypes)
+   {
+      this.javaMethod = javaMethod;
+      this.supportedInterceptionTypes = supportedInterceptionTypes;
+   }
+
+   public Method getJavaMethod()
+   {
+      return javaMethod;
+   }
+
+   public Set<InterceptionType> getSupportedInterceptionTypes()
+   {
+      return supportedInterceptionTypes;
+   }
+
+   public Class<?> getReturnType()
+   {
+      return javaMethod.getReturnType();
+   }
+
+   private Object writeReplace()
+   {
+      return DefaultMethodMetadata.of(javaMethod);
+   }
+}
@@ -0,0 +1,200 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.reader.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.jboss.interceptor.spi.model.InterceptionType;
+import org.jboss.interceptor.util.DescriptorUtils;
+import org.jboss.interceptor.util.InterceptionTypeRegistry;
+import org.jboss.interceptor.util.InterceptorMetadataException;
+
+/**
+ * The interceptor metadata index of a class loader, merged from all the index resources it can see. The index resources
+ * are written at build time by the <code>jboss-interceptor-metadata-processor</code> annotation processor, and list the
+ * classes declaring interceptor methods, together with the methods which are relevant for reading their metadata.
+ *
+ * @author Marius Bogoevici
+ */
+class MetadataIndex
+{
+   static final String INDEX_RESOURCE_NAME = "META-INF/jboss-interceptor/metadata.idx";
+
+   static final String INDEX_HEADER = "jboss-interceptor-metadata-index 1";
+
+   static final String NOT_ANNOTATED = "-";
+
+   private static final MetadataIndex EMPTY_INDEX = new MetadataIndex(Collections.<String, IndexedMethod[]>emptyMap());
+
+   // the indexes only hold names, so they do not keep the class loaders alive
+   private static final Map<ClassLoader, MetadataIndex> indexes = new WeakHashMap<ClassLoader, MetadataIndex>();
+
+   private final Map<String, IndexedMethod[]> indexedClasses;
+
+   private MetadataIndex(Map<String, IndexedMethod[]> indexedClasses)
+   {
+      this.indexedClasses = indexedClasses;
+   }
+
+   static MetadataIndex forClassLoader(ClassLoader classLoader)
+   {
+      if (classLoader == null)
+      {
+         return EMPTY_INDEX;
+      }
+      synchronized (indexes)
+      {
+         MetadataIndex index = indexes.get(classLoader);
+         if (index == null)
+         {
+            index = read(classLoader);
+            indexes.put(classLoader, index);
+         }
+         return index;
+      }
+   }
+
+   /**
+    * @return the indexed methods of the given class, or <code>null</code> if the class is not covered by the index
+    */
+   static IndexedMethod[] getIndexedMethods(Class<?> clazz)
+   {
+      return forClassLoader(clazz.getClassLoader()).indexedClasses.get(clazz.getName());
+   }
+
+   private static MetadataIndex read(ClassLoader classLoader)
+   {
+      Map<String, IndexedMethod[]> indexedClasses = new HashMap<String, IndexedMethod[]>();
+      try
+      {
+         Enumeration<URL> resources = classLoader.getResources(INDEX_RESOURCE_NAME);
+         while (resources.hasMoreElements())
+         {
+            read(resources.nextElement(), indexedClasses);
+         }
+      }
+      catch (IOException e)
+      {
+         throw new InterceptorMetadataException("Cannot read the interceptor metadata index", e);
+      }
+      return indexedClasses.isEmpty() ? EMPTY_INDEX : new MetadataIndex(indexedClasses);
+   }
+
+   private static void read(URL resource, Map<String, IndexedMethod[]> indexedClasses) throws IOException
+   {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openStream(), "UTF-8"));
+      try
+      {
+         if (!INDEX_HEADER.equals(reader.readLine()))
+         {
+            throw new InterceptorMetadataException("Unsupported interceptor metadata index: " + resource);
+         }
+         String className = null;
+         List<IndexedMethod> methods = new ArrayList<IndexedMethod>();
+         for (String line = reader.readLine(); line != null; line = reader.readLine())
+         {
+            if (line.length() == 0)
+            {
+               continue;
+            }
+            if (line.charAt(0) != ' ')
+            {
+               addIndexedClass(indexedClasses, className, methods);
+               className = line;
+               methods = new ArrayList<IndexedMethod>();
+            }
+            else
+            {
+               String[] fields = line.trim().split(" ");
+               if (className == null || fields.length != 3)
+               {
+                  throw new InterceptorMetadataException("Malformed interceptor metadata index " + resource + ": " + line);
+               }
+               methods.add(new IndexedMethod(fields[1], fields[2], parseInterceptionTypes(fields[0])));
+            }
+         }
+         addIndexedClass(indexedClasses, className, methods);
+      }
+      finally
+      {
+         reader.close();
+      }
+   }
+
+   private static void addIndexedClass(Map<String, IndexedMethod[]> indexedClasses, String className, List<IndexedMethod> methods)
+   {
+      // the first index covering a class wins, as it happens for classes
+      if (className != null && !indexedClasses.containsKey(className))
+      {
+         indexedClasses.put(className, methods.toArray(new IndexedMethod[methods.size()]));
+      }
+   }
+
+   private static Set<InterceptionType> parseInterceptionTypes(String interceptionTypeNames)
+   {
+      Set<InterceptionType> interceptionTypes = EnumSet.noneOf(InterceptionType.class);
+      if (!NOT_ANNOTATED.equals(interceptionTypeNames))
+      {
+         for (String interceptionTypeName : interceptionTypeNames.split(","))
+         {
+            InterceptionType interceptionType = InterceptionType.valueOf(interceptionTypeName);
+            if (InterceptionTypeRegistry.isSupported(interceptionType))
+            {
+               interceptionTypes.add(interceptionType);
+            }
+         }
+      }
+      return interceptionTypes;
+   }
+
+   static final class IndexedMethod
+   {
+      final String name;
+
+      final String descriptor;
+
+      final Set<InterceptionType> interceptionTypes;
+
+      IndexedMethod(String name, String descriptor, Set<InterceptionType> interceptionTypes)
+      {
+         this.name = name;
+         this.descriptor = descriptor;
+         this.interceptionTypes = interceptionTypes;
+      }
+
+      /**
+       * @return the parameter types of the method, loaded through the class loader of the declaring class
+       */
+      Class<?>[] getParameterTypes(ClassLoader classLoader) throws ClassNotFoundException
+      {
+         return DescriptorUtils.getParameterTypes(descriptor, classLoader);
+      }
+   }
+}
@@ -0,0 +1,35 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.spi.context;
+
+import javax.interceptor.InvocationContext;
+
+/**
+ * An {@link InvocationContextFactory} that may reuse the invocation contexts it creates. Each context
+ * obtained from it is handed back through {@link #release(InvocationContext)} once the interception chain
+ * it was created for has completed, on the same thread that created it.
+ *
+ * Recycling is only safe for synchronous invocations: interceptors must not retain a reference to the
+ * invocation context (or to its context data) after <code>proceed()</code> has returned.
+ *
+ * @author Marius Bogoevici
+ */
+public interface RecyclingInvocationContextFactory extends InvocationContextFactory
+{
+   void release(InvocationContext invocationContext);
+}
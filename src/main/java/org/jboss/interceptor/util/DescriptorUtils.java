@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds JVM method descriptors, such as <code>(Ljavax/interceptor/InvocationContext;)V</code>, and resolves the types
+ * they name. Classes are loaded without being initialized.
+ *
+ * @author Marius Bogoevici
+ */
+public final class DescriptorUtils
+{
+   private static final Map<Class<?>, Character> PRIMITIVE_DESCRIPTORS = new HashMap<Class<?>, Character>();
+
+   static
+   {
+      PRIMITIVE_DESCRIPTORS.put(boolean.class, 'Z');
+      PRIMITIVE_DESCRIPTORS.put(byte.class, 'B');
+      PRIMITIVE_DESCRIPTORS.put(char.class, 'C');
+      PRIMITIVE_DESCRIPTORS.put(short.class, 'S');
+      PRIMITIVE_DESCRIPTORS.put(int.class, 'I');
+      PRIMITIVE_DESCRIPTORS.put(long.class, 'J');
+      PRIMITIVE_DESCRIPTORS.put(float.class, 'F');
+      PRIMITIVE_DESCRIPTORS.put(double.class, 'D');
+      PRIMITIVE_DESCRIPTORS.put(void.class, 'V');
+   }
+
+   private DescriptorUtils()
+   {
+   }
+
+   public static String getDescriptor(Method method)
+   {
+      StringBuilder descriptor = new StringBuilder("(");
+      for (Class<?> parameterType : method.getParameterTypes())
+      {
+         appendDescriptor(descriptor, parameterType);
+      }
+      descriptor.append(')');
+      appendDescriptor(descriptor, method.getReturnType());
+      return descriptor.toString();
+   }
+
+   private static void appendDescriptor(StringBuilder descriptor, Class<?> type)
+   {
+      if (type.isArray())
+      {
+         // the name of an array class is already in descriptor form
+         descriptor.append(type.getName().replace('.', '/'));
+      }
+      else if (type.isPrimitive())
+      {
+         descriptor.append(PRIMITIVE_DESCRIPTORS.get(type));
+      }
+      else
+      {
+         descriptor.append('L').append(type.getName().replace('.', '/')).append(';');
+      }
+   }
+
+   public static Class<?>[] getParameterTypes(String methodDescriptor, ClassLoader classLoader) throws ClassNotFoundException
+   {
+      List<Class<?>> parameterTypes = new ArrayList<Class<?>>();
+      int position = 1;
+      while (methodDescriptor.charAt(position) != ')')
+      {
+         int end = getTypeDescriptorEnd(methodDescriptor, position);
+         parameterTypes.add(toClass(methodDescriptor.substring(position, end), classLoader));
+         position = end;
+      }
+      return parameterTypes.toArray(new Class<?>[parameterTypes.size()]);
+   }
+
+   public static Class<?> getReturnType(String methodDescriptor, ClassLoader classLoader) throws ClassNotFoundException
+   {
+      return toClass(methodDescriptor.substring(methodDescriptor.indexOf(')') + 1), classLoader);
+   }
+
+   private static int getTypeDescriptorEnd(String descriptor, int start)
+   {
+      int end = start;
+      while (descriptor.charAt(end) == '[')
+      {
+         end++;
+      }
+      if (descriptor.charAt(end) == 'L')
+      {
+         end = descriptor.indexOf(';', end);
+      }
+      return end + 1;
+   }
+
+   private static Class<?> toClass(String typeDescriptor, ClassLoader classLoader) throws ClassNotFoundException
+   {
+      switch (typeDescriptor.charAt(0))
+      {
+         case 'Z': return boolean.class;
+         case 'B': return byte.class;
+         case 'C': return char.class;
+         case 'S': return short.class;
+         case 'I': return int.class;
+         case 'J': return long.class;
+         case 'F': return float.class;
+         case 'D': return double.class;
+         case 'V': return void.class;
+         case 'L': return Class.forName(typeDescriptor.substring(1, typeDescriptor.length() - 1).replace('/', '.'), false, classLoader);
+         default: return Class.forName(typeDescriptor.replace('/', '.'), false, classLoader);
+      }
+   }
+}
@@ -17,15 +17,20 @@
 
 package org.jboss.interceptor.util;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.concurrent.Callable;
 
+import javassist.util.proxy.MethodFilter;
 import javassist.util.proxy.MethodHandler;
 import javassist.util.proxy.ProxyFactory;
 import org.jboss.interceptor.proxy.InterceptorException;
 import org.jboss.interceptor.proxy.LifecycleMixin;
+import org.jboss.interceptor.proxy.javassist.ProxyClassCache;
+import org.jboss.interceptor.proxy.javassist.ProxyClassWriter;
 import org.jboss.interceptor.spi.metadata.ClassMetadata;
 import org.jboss.interceptor.spi.model.InterceptionType;
 import org.jboss.interceptor.util.proxy.TargetInstanceProxy;
@@ -39,6 +44,8 @@ public class InterceptionUtils
    public static final String PRE_DESTROY = "lifecycle_mixin_$$_preDestroy";
 
 
+   private static final Class<?>[] PROXY_INTERFACES = new Class<?>[]{LifecycleMixin.class, TargetInstanceProxy.class};
+
    private static Class<? extends Annotation> INTERCEPTORS_ANNOTATION_CLASS = null;
    private static Class<? extends Annotation> EXCLUDE_CLASS_INTERCEPTORS_ANNOTATION_CLASS = null;
 
@@ -148,33 +155,73 @@ public class InterceptionUtils
 
    public static <T> Class<T> createProxyClass(Class<T> proxyClass, boolean forSubclassing)
    {
-      ProxyFactory proxyFactory = new ProxyFactory();
-      if (proxyClass != null)
+      return createProxyClass(proxyClass, forSubclassing, null);
+   }
+
+   /**
+    * Creates a proxy class overriding only the methods accepted by the given filter (all of them if the filter
+    * is <code>null</code>). A filter can only be used for subclassing proxies, since delegating proxies must
+    * forward all their methods to the target instance.
+    *
+    * Proxy classes are cached, see {@link ProxyClassCache}.
+    */
+   public static <T> Class<T> createProxyClass(Class<T> proxyClass, boolean forSubclassing, MethodFilter methodFilter)
+   {
+      StartupProfiler.Sample sample = StartupProfiler.start(StartupProfiler.Phase.PROXY_CLASS_GENERATION, proxyClass);
+      try
       {
-         proxyFactory.setSuperclass(proxyClass);
-         proxyFactory.setUseWriteReplace(false);
+         return ProxyClassCache.getProxyClass(proxyClass, PROXY_INTERFACES, forSubclassing, methodFilter);
       }
+      finally
+      {
+         StartupProfiler.end(sample);
+      }
+   }
 
-      if (forSubclassing)
-         proxyFactory.setInterfaces(new Class<?>[]{LifecycleMixin.class, TargetInstanceProxy.class});
-      else
-         proxyFactory.setInterfaces(new Class<?>[]{LifecycleMixin.class, TargetInstanceProxy.class});
-      Class<T> clazz = proxyFactory.createClass();
-      return clazz;
+   /**
+    * Writes, at build time, the proxy class that {@link #createProxyClass(Class, boolean, MethodFilter)} uses for the
+    * given class instead of generating one at runtime.
+    *
+    * @return the name of the proxy class
+    * @see ProxyClassWriter
+    */
+   public static String writeProxyClass(Class<?> proxyClass, File outputDirectory) throws IOException
+   {
+      return ProxyClassWriter.writeProxyClass(proxyClass, PROXY_INTERFACES, outputDirectory);
    }
 
+   /**
+    * Creates a proxy class for a single method handler. Such proxy classes cannot be generated at build time, so
+    * this fails in closed-world mode (see {@link ProxyClassCache#isClosedWorld()}). Delegating proxies can be created
+    * in that mode from the shared proxy classes instead, see
+    * {@link org.jboss.interceptor.proxy.InterceptorProxyCreatorImpl#createDelegatingProxy(Object, ClassMetadata)}.
+    */
    public static <T> Class<T> createProxyClassWithHandler(ClassMetadata<T> proxyClass, MethodHandler methodHandler)
    {
+      if (ProxyClassCache.isClosedWorld())
+      {
+         throw new InterceptorException("Cannot create a proxy class for " + (proxyClass == null ? Object.class.getName() : proxyClass.getClassName())
+               + " bound to a method handler, since the generation of proxy classes at runtime is disabled;"
+               + " delegating proxies must be created from the shared proxy class of their class instead");
+      }
       ProxyFactory proxyFactory = new ProxyFactory();
       proxyFactory.setUseWriteReplace(false);
       if (proxyClass != null)
       {
          proxyFactory.setSuperclass(proxyClass.getJavaClass());
       }
-      proxyFactory.setInterfaces(new Class<?>[]{LifecycleMixin.class, TargetInstanceProxy.class});
+      proxyFactory.setInterfaces(PROXY_INTERFACES);
       proxyFactory.setHandler(methodHandler);
-      Class<T> clazz = proxyFactory.createClass();
-      return clazz;
+      StartupProfiler.Sample sample = StartupProfiler.start(StartupProfiler.Phase.PROXY_CLASS_GENERATION, proxyClass == null ? Object.class : proxyClass);
+      try
+      {
+         Class<T> clazz = proxyFactory.createClass();
+         return clazz;
+      }
+      finally
+      {
+         StartupProfiler.end(sample);
+      }
    }
 
 }
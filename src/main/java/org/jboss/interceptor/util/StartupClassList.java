@@ -0,0 +1,399 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javassist.util.proxy.MethodFilter;
+import javassist.util.proxy.RuntimeSupport;
+
+import org.jboss.interceptor.proxy.javassist.ProxyClassCache;
+import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The classes whose interceptor metadata was read, and the proxy classes that were created, during a training run of an
+ * application, so that later runs can read the same metadata and create the same proxy classes in the background
+ * (see {@link #preload(ClassLoader, DefaultMetadataCachingReader, ForkJoinPool)}), before they are first needed.
+ *
+ * A training run is started by {@link #startRecording()} and ended by {@link #stopRecording()}. Alternatively, if the
+ * <code>{@value #RECORD_PROPERTY}</code> system property is set, the run is recorded from the start and written on
+ * shutdown to the file named by the property.
+ *
+ * The list is written to a file in UTF-8, starting with the line {@value #HEADER}, followed by a line for each entry,
+ * holding, separated by spaces:
+ * <ul>
+ * <li><code>interceptor</code> or <code>target</code>, followed by the name of a class whose metadata was read as
+ * an interceptor or as a target class;</li>
+ * <li><code>proxy</code>, followed by the name of the proxied class, <code>subclassing</code> or <code>delegating</code>,
+ * the names of the proxied interfaces, separated by commas, or <code>-</code> if none, and the overridden methods, as
+ * names followed by descriptors separated by commas, or <code>*</code> if all the methods are overridden.</li>
+ * </ul>
+ *
+ * @author Marius Bogoevici
+ */
+public final class StartupClassList
+{
+   public static final String RECORD_PROPERTY = "org.jboss.interceptor.startupClassList.record";
+
+   public static final String HEADER = "jboss-interceptor-startup-classes 1";
+
+   private static final String INTERCEPTOR = "interceptor";
+
+   private static final String TARGET = "target";
+
+   private static final String PROXY = "proxy";
+
+   private static final String SUBCLASSING = "subclassing";
+
+   private static final String DELEGATING = "delegating";
+
+   private static final String NONE = "-";
+
+   private static final String ALL = "*";
+
+   private static final Logger LOG = LoggerFactory.getLogger(StartupClassList.class);
+
+   private static volatile StartupClassList recording;
+
+   static
+   {
+      final String recordingFileName = System.getProperty(RECORD_PROPERTY);
+      if (recordingFileName != null)
+      {
+         startRecording();
+         Runtime.getRuntime().addShutdownHook(new Thread("jboss-interceptor-startup-class-list")
+         {
+            @Override
+            public void run()
+            {
+               StartupClassList startupClassList = stopRecording();
+               if (startupClassList != null)
+               {
+                  try
+                  {
+                     startupClassList.write(new File(recordingFileName));
+                  }
+                  catch (IOException e)
+                  {
+                     LOG.warn("Cannot write the startup class list to " + recordingFileName + ": " + e);
+                  }
+               }
+            }
+         });
+      }
+   }
+
+   // in the order in which they were first used, which is the best order for preloading them
+   private final Set<String> entries = Collections.synchronizedSet(new LinkedHashSet<String>());
+
+   public StartupClassList()
+   {
+   }
+
+   /**
+    * Starts recording a new training run, discarding the one being recorded, if any.
+    */
+   public static void startRecording()
+   {
+      recording = new StartupClassList();
+   }
+
+   /**
+    * @return the recorded training run, or <code>null</code> if none was being recorded
+    */
+   public static StartupClassList stopRecording()
+   {
+      StartupClassList startupClassList = recording;
+      recording = null;
+      return startupClassList;
+   }
+
+   public static boolean isRecording()
+   {
+      return recording != null;
+   }
+
+   /**
+    * Records that the interceptor metadata of the given class was read, if a training run is being recorded.
+    */
+   public static void recordMetadata(String className, boolean targetClass)
+   {
+      StartupClassList startupClassList = recording;
+      if (startupClassList != null)
+      {
+         startupClassList.entries.add((targetClass ? TARGET : INTERCEPTOR) + " " + className);
+      }
+   }
+
+   /**
+    * Records that a proxy class was used, if a training run is being recorded.
+    *
+    * @param overriddenMethods the names and descriptors of the overridden methods, or <code>null</code> if all the
+    * methods are overridden
+    */
+   public static void recordProxyClass(Class<?> superclass, Class<?>[] interfaces, boolean forSubclassing, Collection<String> overriddenMethods)
+   {
+      StartupClassList startupClassList = recording;
+      if (startupClassList != null)
+      {
+         StringBuilder entry = new StringBuilder(PROXY).append(' ').append((superclass == null ? Object.class : superclass).getName());
+         entry.append(' ').append(forSubclassing ? SUBCLASSING : DELEGATING).append(' ');
+         appendList(entry, interfaces.length == 0 ? null : new ArrayList<String>(getClassNames(interfaces)), NONE);
+         entry.append(' ');
+         appendList(entry, overriddenMethods, ALL);
+         startupClassList.entries.add(entry.toString());
+      }
+   }
+
+   private static List<String> getClassNames(Class<?>[] classes)
+   {
+      List<String> classNames = new ArrayList<String>(classes.length);
+      for (Class<?> clazz : classes)
+      {
+         classNames.add(clazz.getName());
+      }
+      return classNames;
+   }
+
+   private static void appendList(StringBuilder entry, Collection<String> values, String empty)
+   {
+      if (values == null)
+      {
+         entry.append(empty);
+         return;
+      }
+      boolean first = true;
+      for (String value : values)
+      {
+         entry.append(first ? "" : ",").append(value);
+         first = false;
+      }
+   }
+
+   /**
+    * @return the recorded entries, in the format of the lines of the list file
+    */
+   public List<String> getEntries()
+   {
+      synchronized (entries)
+      {
+         return new ArrayList<String>(entries);
+      }
+   }
+
+   public void write(File file) throws IOException
+   {
+      Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+      try
+      {
+         writer.write(HEADER);
+         writer.write('\n');
+         for (String entry : getEntries())
+         {
+            writer.write(entry);
+            writer.write('\n');
+         }
+      }
+      finally
+      {
+         writer.close();
+      }
+   }
+
+   /**
+    * @throws IOException if the file cannot be read, or is not a startup class list
+    */
+   public static StartupClassList read(File file) throws IOException
+   {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      try
+      {
+         if (!HEADER.equals(reader.readLine()))
+         {
+            throw new IOException(file + " is not a startup class list");
+         }
+         StartupClassList startupClassList = new StartupClassList();
+         for (String line = reader.readLine(); line != null; line = reader.readLine())
+         {
+            if (line.length() > 0)
+            {
+               startupClassList.entries.add(line);
+            }
+         }
+         return startupClassList;
+      }
+      finally
+      {
+         reader.close();
+      }
+   }
+
+   /**
+    * Reads the recorded interceptor metadata into the given reader, and creates the recorded proxy classes, in the
+    * given pool, without waiting for them. The entries whose classes cannot be loaded through the given class loader,
+    * e.g. because the application changed since the training run, are skipped.
+    *
+    * @param metadataCachingReader the reader whose metadata is read, or <code>null</code> for only creating the proxy classes
+    * @return the task performing the preloading, which can be waited for
+    */
+   public ForkJoinTask<?> preload(final ClassLoader classLoader, final DefaultMetadataCachingReader metadataCachingReader, ForkJoinPool forkJoinPool)
+   {
+      final List<String> entries = getEntries();
+      return forkJoinPool.submit(new Runnable()
+      {
+         public void run()
+         {
+            if (metadataCachingReader != null)
+            {
+               preloadMetadata(entries, classLoader, metadataCachingReader);
+            }
+            List<ForkJoinTask<?>> proxyClassTasks = new ArrayList<ForkJoinTask<?>>();
+            for (final String entry : entries)
+            {
+               if (entry.startsWith(PROXY + " "))
+               {
+                  proxyClassTasks.add(ForkJoinTask.adapt(new Runnable()
+                  {
+                     public void run()
+                     {
+                        preloadProxyClass(entry, classLoader);
+                     }
+                  }));
+               }
+            }
+            ForkJoinTask.invokeAll(proxyClassTasks);
+         }
+      });
+   }
+
+   private static void preloadMetadata(List<String> entries, ClassLoader classLoader, DefaultMetadataCachingReader metadataCachingReader)
+   {
+      Set<Class<?>> interceptorClasses = new LinkedHashSet<Class<?>>();
+      Set<Class<?>> targetClasses = new LinkedHashSet<Class<?>>();
+      for (String entry : entries)
+      {
+         String[] fields = entry.split(" ");
+         if (fields.length == 2 && (INTERCEPTOR.equals(fields[0]) || TARGET.equals(fields[0])))
+         {
+            Class<?> clazz = loadClass(fields[1], classLoader);
+            if (clazz != null)
+            {
+               (INTERCEPTOR.equals(fields[0]) ? interceptorClasses : targetClasses).add(clazz);
+            }
+         }
+      }
+      try
+      {
+         metadataCachingReader.preloadMetadata(interceptorClasses, targetClasses);
+      }
+      catch (InterceptorMetadataException e)
+      {
+         // the classes failing now will fail again when they are used, and be reported then
+         LOG.debug("Cannot preload the interceptor metadata of all the recorded classes", e);
+      }
+   }
+
+   private static void preloadProxyClass(String entry, ClassLoader classLoader)
+   {
+      String[] fields = entry.split(" ");
+      if (fields.length != 5)
+      {
+         LOG.debug("Skipping the malformed startup class list entry: " + entry);
+         return;
+      }
+      Class<?> superclass = loadClass(fields[1], classLoader);
+      List<Class<?>> interfaces = new ArrayList<Class<?>>();
+      if (!NONE.equals(fields[3]))
+      {
+         for (String interfaceName : fields[3].split(","))
+         {
+            interfaces.add(loadClass(interfaceName, classLoader));
+         }
+      }
+      if (superclass == null || interfaces.contains(null))
+      {
+         return;
+      }
+      MethodFilter methodFilter = ALL.equals(fields[4]) ? null : new OverriddenMethodFilter(Arrays.asList(fields[4].split(",")));
+      try
+      {
+         ProxyClassCache.getProxyClass(superclass, interfaces.toArray(new Class<?>[interfaces.size()]), SUBCLASSING.equals(fields[2]), methodFilter);
+      }
+      catch (RuntimeException e)
+      {
+         LOG.debug("Cannot preload the proxy class of " + superclass.getName(), e);
+      }
+   }
+
+   private static Class<?> loadClass(String className, ClassLoader classLoader)
+   {
+      try
+      {
+         return Class.forName(className, false, classLoader);
+      }
+      catch (ClassNotFoundException e)
+      {
+         LOG.debug("Skipping the recorded class " + className + ", which cannot be loaded");
+         return null;
+      }
+      catch (LinkageError e)
+      {
+         LOG.debug("Skipping the recorded class " + className + ", which cannot be loaded", e);
+         return null;
+      }
+   }
+
+   /**
+    * Overrides the same methods as the filter of the recorded proxy class, so that the proxy class cache finds the
+    * preloaded proxy class when the recorded one is requested.
+    */
+   private static class OverriddenMethodFilter implements MethodFilter
+   {
+      private final Set<String> overriddenMethods;
+
+      OverriddenMethodFilter(Collection<String> overriddenMethods)
+      {
+         this.overriddenMethods = new HashSet<String>(overriddenMethods);
+      }
+
+      public boolean isHandled(Method method)
+      {
+         return overriddenMethods.contains(method.getName() + RuntimeSupport.makeDescriptor(method));
+      }
+   }
+}
@@ -0,0 +1,262 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptor.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jboss.interceptor.util.StartupProfiler.Phase;
+
+/**
+ * A snapshot of the results of the {@link StartupProfiler}, as collected since it was enabled or last reset.
+ *
+ * The results are broken down by class and phase (see {@link #getEntries()}), and can be written as a table sorted
+ * by the most expensive classes (see {@link #writeTable(Appendable)}), or as JSON (see {@link #writeJson(Appendable)}).
+ *
+ * @author Marius Bogoevici
+ */
+public final class StartupProfile
+{
+   // the count, time and allocated bytes of each phase
+   static final int VALUES_PER_PHASE = 3;
+
+   private final List<Entry> entries = new ArrayList<Entry>();
+
+   private final long[] phaseCounts = new long[Phase.values().length];
+
+   private final long[] phaseTimes = new long[Phase.values().length];
+
+   private final long[] phaseAllocatedBytes = new long[Phase.values().length];
+
+   StartupProfile(Map<String, AtomicLongArray> classProfiles)
+   {
+      for (Map.Entry<String, AtomicLongArray> classProfile : classProfiles.entrySet())
+      {
+         for (Phase phase : Phase.values())
+         {
+            int index = phase.ordinal() * VALUES_PER_PHASE;
+            long count = classProfile.getValue().get(index);
+            if (count > 0)
+            {
+               Entry entry = new Entry(classProfile.getKey(), phase, count, classProfile.getValue().get(index + 1), classProfile.getValue().get(index + 2));
+               entries.add(entry);
+               phaseCounts[phase.ordinal()] += entry.count;
+               phaseTimes[phase.ordinal()] += entry.time;
+               phaseAllocatedBytes[phase.ordinal()] += entry.allocatedBytes;
+            }
+         }
+      }
+      Collections.sort(entries, new Comparator<Entry>()
+      {
+         public int compare(Entry entry1, Entry entry2)
+         {
+            if (entry1.time != entry2.time)
+            {
+               return entry1.time > entry2.time ? -1 : 1;
+            }
+            int result = entry1.className.compareTo(entry2.className);
+            return result != 0 ? result : entry1.phase.compareTo(entry2.phase);
+         }
+      });
+   }
+
+   /**
+    * @return the results of each phase performed for each class, the most time-consuming first
+    */
+   public List<Entry> getEntries()
+   {
+      return Collections.unmodifiableList(entries);
+   }
+
+   public long getCount(Phase phase)
+   {
+      return phaseCounts[phase.ordinal()];
+   }
+
+   /**
+    * @return the time spent in the phase, excluding the phases nested in it, in nanoseconds
+    */
+   public long getTime(Phase phase)
+   {
+      return phaseTimes[phase.ordinal()];
+   }
+
+   /**
+    * @return the bytes allocated in the phase, excluding the phases nested in it
+    */
+   public long getAllocatedBytes(Phase phase)
+   {
+      return phaseAllocatedBytes[phase.ordinal()];
+   }
+
+   public void writeTable(Appendable out) throws IOException
+   {
+      String format = "%-60s %-26s %8s %12s %14s%n";
+      out.append(String.format(format, "Class", "Phase", "Count", "Time (ms)", "Allocated (KB)"));
+      for (Entry entry : entries)
+      {
+         out.append(String.format(format, entry.className, entry.phase, entry.count, toMillis(entry.time), toKilobytes(entry.allocatedBytes)));
+      }
+      out.append(String.format("%n"));
+      for (Phase phase : Phase.values())
+      {
+         out.append(String.format(format, "Total", phase, getCount(phase), toMillis(getTime(phase)), toKilobytes(getAllocatedBytes(phase))));
+      }
+   }
+
+   public void writeJson(Appendable out) throws IOException
+   {
+      out.append("{\"phases\":[");
+      for (Phase phase : Phase.values())
+      {
+         out.append(phase.ordinal() == 0 ? "" : ",");
+         out.append("{\"phase\":\"").append(phase.name())
+               .append("\",\"count\":").append(String.valueOf(getCount(phase)))
+               .append(",\"time\":").append(String.valueOf(getTime(phase)))
+               .append(",\"allocatedBytes\":").append(String.valueOf(getAllocatedBytes(phase))).append('}');
+      }
+      out.append("],\"entries\":[");
+      for (int i = 0; i < entries.size(); i++)
+      {
+         Entry entry = entries.get(i);
+         out.append(i == 0 ? "" : ",");
+         out.append("{\"className\":");
+         appendJsonString(out, entry.className);
+         out.append(",\"phase\":\"").append(entry.phase.name())
+               .append("\",\"count\":").append(String.valueOf(entry.count))
+               .append(",\"time\":").append(String.valueOf(entry.time))
+               .append(",\"allocatedBytes\":").append(String.valueOf(entry.allocatedBytes)).append('}');
+      }
+      out.append("]}");
+   }
+
+   private static void appendJsonString(Appendable out, String value) throws IOException
+   {
+      out.append('"');
+      for (int i = 0; i < value.length(); i++)
+      {
+         char c = value.charAt(i);
+         if (c == '"' || c == '\\')
+         {
+            out.append('\\').append(c);
+         }
+         else if (c < 0x20)
+         {
+            out.append(String.format("\\u%04x", (int) c));
+         }
+         else
+         {
+            out.append(c);
+         }
+      }
+      out.append('"');
+   }
+
+   private static String toMillis(long nanos)
+   {
+      return String.format("%.3f", nanos / 1000000.0);
+   }
+
+   private static String toKilobytes(long bytes)
+   {
+      return String.format("%.1f", bytes / 1024.0);
+   }
+
+   @Override
+   public String toString()
+   {
+      StringBuilder table = new StringBuilder();
+      try
+      {
+         writeTable(table);
+      }
+      catch (IOException e)
+      {
+         // cannot happen with a StringBuilder
+         throw new IllegalStateException(e);
+      }
+      return table.toString();
+   }
+
+   /**
+    * The results of a phase performed for a class.
+    */
+   public static final class Entry
+   {
+      private final String className;
+
+      private final Phase phase;
+
+      private final long count;
+
+      private final long time;
+
+      private final long allocatedBytes;
+
+      Entry(String className, Phase phase, long count, long time, long allocatedBytes)
+      {
+         this.className = className;
+         this.phase = phase;
+         this.count = count;
+         this.time = time;
+         this.allocatedBytes = allocatedBytes;
+      }
+
+      public String getClassName()
+      {
+         return className;
+      }
+
+      public Phase getPhase()
+      {
+         return phase;
+      }
+
+      public long getCount()
+      {
+         return count;
+      }
+
+      /**
+       * @return the time spent in the phase, excluding the phases nested in it, in nanoseconds
+       */
+      public long getTime()
+      {
+         return time;
+      }
+
+      /**
+       * @return the bytes allocated in the phase, excluding the phases nested in it
+       */
+      public long getAllocatedBytes()
+      {
+         return allocatedBytes;
+      }
+
+      @Override
+      public String toString()
+      {
+         return "Entry[" + className + ", " + phase + ", count=" + count + ", time=" + time + "ns, allocatedBytes=" + allocatedBytes + "]";
+      }
+   }
+}
@@ -0,0 +1,108 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptors.builder;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.interceptor.builder.InterceptionModelBuilder;
+import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
+import org.jboss.interceptor.reader.cache.MetadataCachingReader;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
+import org.jboss.interceptor.spi.model.InterceptionModel;
+import org.jboss.interceptor.spi.model.InterceptionType;
+import org.jboss.interceptors.proxy.FirstInterceptor;
+import org.jboss.interceptors.proxy.FootballTeam;
+import org.jboss.interceptors.proxy.SecondInterceptor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Marius Bogoevici
+ */
+public class InterceptionModelBuilderTestCase
+{
+   private MetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+
+   private InterceptionModelBuilder<ClassMetadata<?>, ?> builder;
+
+   private InterceptorMetadata firstInterceptor;
+
+   private InterceptorMetadata secondInterceptor;
+
+   private Method getNameMethod;
+
+   @Before
+   public void setUp() throws Exception
+   {
+      builder = InterceptionModelBuilder.<ClassMetadata<?>>newBuilderFor(metadataCachingReader.getClassMetadata(FootballTeam.class));
+      firstInterceptor = metadataCachingReader.getInterceptorMetadata(FirstInterceptor.class);
+      secondInterceptor = metadataCachingReader.getInterceptorMetadata(SecondInterceptor.class);
+      getNameMethod = FootballTeam.class.getMethod("getName");
+   }
+
+   @Test
+   public void testGlobalAndMethodInterceptors() throws Exception
+   {
+      builder.interceptAll().with(firstInterceptor);
+      builder.interceptAroundInvoke(getNameMethod).with(secondInterceptor);
+      InterceptionModel<ClassMetadata<?>, ?> interceptionModel = builder.build();
+      Assert.assertEquals(Arrays.asList(firstInterceptor, secondInterceptor), interceptionModel.getInterceptors(InterceptionType.AROUND_INVOKE, getNameMethod));
+      Assert.assertEquals(Arrays.asList(firstInterceptor), interceptionModel.getInterceptors(InterceptionType.AROUND_INVOKE, FootballTeam.class.getMethod("afterActivating")));
+      Assert.assertEquals(Arrays.asList(firstInterceptor), interceptionModel.getInterceptors(InterceptionType.POST_CONSTRUCT, null));
+   }
+
+   @Test
+   public void testIgnoredGlobalInterceptors() throws Exception
+   {
+      builder.interceptAll().with(firstInterceptor);
+      builder.interceptAroundInvoke(getNameMethod).with(secondInterceptor);
+      builder.ignoreGlobalInterceptors(getNameMethod);
+      Assert.assertEquals(Arrays.asList(secondInterceptor), builder.build().getInterceptors(InterceptionType.AROUND_INVOKE, getNameMethod));
+   }
+
+   @Test
+   public void testMethodInterceptorsAreResolvedOnce() throws Exception
+   {
+      builder.interceptAll().with(firstInterceptor);
+      InterceptionModel<ClassMetadata<?>, ?> interceptionModel = builder.build();
+      List<?> interceptors = interceptionModel.getInterceptors(InterceptionType.AROUND_INVOKE, getNameMethod);
+      Assert.assertSame(interceptors, interceptionModel.getInterceptors(InterceptionType.AROUND_INVOKE, FootballTeam.class.getMethod("getName")));
+   }
+
+   @Test(expected = UnsupportedOperationException.class)
+   public void testInterceptorsCannotBeModified() throws Exception
+   {
+      builder.interceptAroundInvoke(getNameMethod).with(firstInterceptor);
+      builder.build().getInterceptors(InterceptionType.AROUND_INVOKE, getNameMethod).clear();
+   }
+
+   @Test
+   public void testBuiltModelIsNotChangedByBuilder() throws Exception
+   {
+      builder.interceptAroundInvoke(getNameMethod).with(firstInterceptor);
+      InterceptionModel<ClassMetadata<?>, ?> interceptionModel = builder.build();
+      builder.interceptAroundInvoke(getNameMethod).with(secondInterceptor);
+      Assert.assertEquals(Arrays.asList(firstInterceptor), interceptionModel.getInterceptors(InterceptionType.AROUND_INVOKE, getNameMethod));
+      Assert.assertEquals(1, interceptionModel.getAllInterceptors().size());
+      Assert.assertEquals(Arrays.asList(firstInterceptor, secondInterceptor), builder.build().getInterceptors(InterceptionType.AROUND_INVOKE, getNameMethod));
+   }
+}
@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.interceptors.context;
+
+import java.lang.reflect.Method;
+
+import javax.interceptor.InvocationContext;
+
+import junit.framework.Assert;
+
+import org.jboss.interceptor.proxy.ThreadLocalInvocationContextFactory;
+import org.junit.Test;
+
+/**
+ * @author Marius Bogoevici
+ */
+public class ThreadLocalInvocationContextFactoryTestCase
+{
+   @Test
+   public void testContextIsRecycledAndCleared() throws Exception
+   {
+      ThreadLocalInvocationContextFactory invocationContextFactory = new ThreadLocalInvocationContextFactory();
+      Method method = Object.class.getMethod("toString");
+      String target = "target";
+      InvocationContext invocationContext = invocationContextFactory.newInvocationContext(null, target, method, new Object[0]);
+      Assert.assertSame(target, invocationContext.getTarget());
+      Assert.assertSame(method, invocationContext.getMethod());
+      invocationContext.getContextData().put("key", "value");
+      invocationContextFactory.release(invocationContext);
+
+      Assert.assertNull(invocationContext.getTarget());
+      Assert.assertNull(invocationContext.getMethod());
+      Assert.assertTrue(invocationContext.getContextData().isEmpty());
+
+      InvocationContext recycledInvocationContext = invocationContextFactory.newInvocationContext(null, target, method, new Object[0]);
+      Assert.assertSame(invocationContext, recycledInvocationContext);
+      invocationContextFactory.release(recycledInvocationContext);
+   }
+
+   @Test
+   public void testNestedContextsAreDistinct() throws Exception
+   {
+      ThreadLocalInvocationContextFactory invocationContextFactory = new ThreadLocalInvocationContextFactory(1);
+      Method method = Object.class.getMethod("toString");
+      InvocationContext outer = invocationContextFactory.newInvocationContext(null, "outer", method, new Object[0]);
+      InvocationContext inner = invocationContextFactory.newInvocationContext(null, "inner", method, new Object[0]);
+      Assert.assertNotSame(outer, inner);
+      invocationContextFactory.release(inner);
+      // contexts beyond the capacity of the stack are not recycled
+      Assert.assertEquals("inner", inner.getTarget());
+      Assert.assertEquals("outer", outer.getTarget());
+      invocationContextFactory.release(outer);
+      Assert.assertNull(outer.getTarget());
+   }
+
+   @Test
+   public void testContextsAreNotSharedBetweenThreads() throws Exception
+   {
+      final ThreadLocalInvocationContextFactory invocationContextFactory = new ThreadLocalInvocationContextFactory();
+      final Method method = Object.class.getMethod("toString");
+      InvocationContext invocationContext = invocationContextFactory.newInvocationContext(null, "target", method, new Object[0]);
+      final InvocationContext[] otherThreadInvocationContext = new InvocationContext[1];
+      Thread thread = new Thread()
+      {
+         @Override
+         public void run()
+         {
+            otherThreadInvocationContext[0] = invocationContextFactory.newInvocationContext(null, "other", method, new Object[0]);
+            invocationContextFactory.release(otherThreadInvocationContext[0]);
+         }
+      };
+      thread.start();
+      thread.join();
+      Assert.assertNotSame(invocationContext, otherThreadInvocationContext[0]);
+      Assert.assertEquals("target", invocationContext.getTarget());
+      invocationContextFactory.release(invocationContext);
+   }
+}
@@ -0,0 +1,55 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.interceptors.invoker;
+
+import javax.interceptor.InvocationContext;
+
+/**
+ * @author Marius Bogoevici
+ */
+public class Calculator implements Adder
+{
+   public int add(int first, int second)
+   {
+      return first + second;
+   }
+
+   double scale(double value, long factor)
+   {
+      return value * factor;
+   }
+
+   protected String concat(String prefix, char[] characters)
+   {
+      return prefix + new String(characters);
+   }
+
+   public void fail(String message) throws CalculatorException
+   {
+      throw new CalculatorException(message);
+   }
+
+   private int secret()
+   {
+      return 42;
+   }
+
+   Object intercept(InvocationContext invocationContext) throws Exception
+   {
+      return "intercepted:" + invocationContext.proceed();
+   }
+}
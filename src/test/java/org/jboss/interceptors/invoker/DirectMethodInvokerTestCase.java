@@ -0,0 +1,168 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.interceptors.invoker;
+
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import javax.interceptor.InvocationContext;
+
+import junit.framework.Assert;
+
+import org.jboss.interceptor.proxy.ConstructorInvoker;
+import org.jboss.interceptor.proxy.DefaultInvocationContextFactory;
+import org.jboss.interceptor.proxy.InterceptorMethodInvoker;
+import org.jboss.interceptor.proxy.MethodInvoker;
+import org.jboss.interceptor.proxy.ReflectiveConstructorInvoker;
+import org.jboss.interceptor.proxy.ReflectiveMethodInvoker;
+import org.jboss.interceptor.proxy.javassist.DirectMethodInvokerFactory;
+import org.jboss.interceptor.spi.context.InterceptionChain;
+import org.junit.Test;
+
+/**
+ * @author Marius Bogoevici
+ */
+public class DirectMethodInvokerTestCase
+{
+   @Test
+   public void testPrimitiveArgumentsAndReturnValue() throws Throwable
+   {
+      MethodInvoker invoker = DirectMethodInvokerFactory.createMethodInvoker(Calculator.class.getMethod("add", int.class, int.class));
+      Assert.assertFalse(invoker instanceof ReflectiveMethodInvoker);
+      Assert.assertEquals(5, invoker.invoke(new Calculator(), new Object[]{2, 3}));
+      // widening conversions are allowed, like in Method.invoke()
+      Assert.assertEquals(100, invoker.invoke(new Calculator(), new Object[]{(short) 1, 'c'}));
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testArgumentTypeMismatch() throws Throwable
+   {
+      MethodInvoker invoker = DirectMethodInvokerFactory.createMethodInvoker(Calculator.class.getMethod("add", int.class, int.class));
+      invoker.invoke(new Calculator(), new Object[]{2L, 3});
+   }
+
+   @Test
+   public void testNonPublicMethods() throws Throwable
+   {
+      MethodInvoker scaleInvoker = DirectMethodInvokerFactory.createMethodInvoker(Calculator.class.getDeclaredMethod("scale", double.class, long.class));
+      Assert.assertFalse(scaleInvoker instanceof ReflectiveMethodInvoker);
+      Assert.assertEquals(7.5, scaleInvoker.invoke(new Calculator(), new Object[]{2.5, 3L}));
+      MethodInvoker concatInvoker = DirectMethodInvokerFactory.createMethodInvoker(Calculator.class.getDeclaredMethod("concat", String.class, char[].class));
+      Assert.assertFalse(concatInvoker instanceof ReflectiveMethodInvoker);
+      Assert.assertEquals("abc", concatInvoker.invoke(new Calculator(), new Object[]{"a", new char[]{'b', 'c'}}));
+   }
+
+   @Test
+   public void testPrivateMethodFallsBackToReflection() throws Throwable
+   {
+      MethodInvoker invoker = DirectMethodInvokerFactory.createMethodInvoker(Calculator.class.getDeclaredMethod("secret"));
+      Assert.assertTrue(invoker instanceof ReflectiveMethodInvoker);
+      Assert.assertEquals(42, invoker.invoke(new Calculator(), null));
+   }
+
+   @Test
+   public void testInterfaceMethod() throws Throwable
+   {
+      MethodInvoker invoker = DirectMethodInvokerFactory.createMethodInvoker(Adder.class.getMethod("add", int.class, int.class));
+      Assert.assertFalse(invoker instanceof ReflectiveMethodInvoker);
+      Assert.assertEquals(3, invoker.invoke(new Calculator(), new Object[]{1, 2}));
+   }
+
+   @Test
+   public void testExceptionsAreNotWrapped() throws Throwable
+   {
+      MethodInvoker invoker = DirectMethodInvokerFactory.createMethodInvoker(Calculator.class.getMethod("fail", String.class));
+      try
+      {
+         invoker.invoke(new Calculator(), new Object[]{"failed"});
+         Assert.fail();
+      }
+      catch (CalculatorException e)
+      {
+         Assert.assertEquals("failed", e.getMessage());
+      }
+   }
+
+   @Test
+   public void testInvokerClassIsGeneratedOnce() throws Throwable
+   {
+      Method method = Calculator.class.getMethod("add", int.class, int.class);
+      Assert.assertSame(DirectMethodInvokerFactory.createMethodInvoker(method).getClass(), DirectMethodInvokerFactory.createMethodInvoker(method).getClass());
+   }
+
+   @Test
+   public void testInvokerOfClassLoadedAgainByChildClassLoader() throws Throwable
+   {
+      Method method = Calculator.class.getMethod("add", int.class, int.class);
+      DirectMethodInvokerFactory.createMethodInvoker(method);
+      // loads its own copy of the class, which must not get the invoker of the class loaded by its parent
+      ClassLoader classLoader = new URLClassLoader(new URL[]{Calculator.class.getProtectionDomain().getCodeSource().getLocation()}, Calculator.class.getClassLoader())
+      {
+         @Override
+         protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+         {
+            if (name.equals(Calculator.class.getName()))
+            {
+               Class<?> clazz = findLoadedClass(name);
+               return clazz != null ? clazz : findClass(name);
+            }
+            return super.loadClass(name, resolve);
+         }
+      };
+      Class<?> calculatorClass = classLoader.loadClass(Calculator.class.getName());
+      Assert.assertNotSame(Calculator.class, calculatorClass);
+      MethodInvoker invoker = DirectMethodInvokerFactory.createMethodInvoker(calculatorClass.getMethod("add", int.class, int.class));
+      Assert.assertSame(classLoader, invoker.getClass().getClassLoader());
+      Assert.assertEquals(5, invoker.invoke(calculatorClass.newInstance(), new Object[]{2, 3}));
+   }
+
+   @Test
+   public void testConstructor() throws Throwable
+   {
+      ConstructorInvoker<CalculatorException> invoker = DirectMethodInvokerFactory.createConstructorInvoker(CalculatorException.class.getConstructor(String.class));
+      Assert.assertFalse(invoker instanceof ReflectiveConstructorInvoker);
+      Assert.assertEquals("message", invoker.newInstance(new Object[]{"message"}).getMessage());
+   }
+
+   @Test
+   public void testAbstractClassConstructorFallsBackToReflection() throws Throwable
+   {
+      ConstructorInvoker<Number> invoker = DirectMethodInvokerFactory.createConstructorInvoker(Number.class.getConstructor());
+      Assert.assertTrue(invoker instanceof ReflectiveConstructorInvoker);
+   }
+
+   @Test
+   public void testInterceptorMethod() throws Throwable
+   {
+      InterceptorMethodInvoker invoker = DirectMethodInvokerFactory.createInterceptorMethodInvoker(Calculator.class.getDeclaredMethod("intercept", InvocationContext.class));
+      Assert.assertFalse(invoker instanceof ReflectiveMethodInvoker);
+      InvocationContext invocationContext = new DefaultInvocationContextFactory().newInvocationContext(new InterceptionChain()
+      {
+         public Object invokeNextInterceptor(InvocationContext invocationContext) throws Throwable
+         {
+            return "result";
+         }
+
+         public boolean hasNextInterceptor()
+         {
+            return false;
+         }
+      }, new Calculator(), null, null);
+      Assert.assertEquals("intercepted:result", invoker.invoke(new Calculator(), invocationContext));
+   }
+}
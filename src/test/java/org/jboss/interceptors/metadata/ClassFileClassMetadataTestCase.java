@@ -0,0 +1,165 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptors.metadata;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+import org.jboss.interceptor.reader.ClassMetadataInterceptorReference;
+import org.jboss.interceptor.reader.InterceptorMetadataUtils;
+import org.jboss.interceptor.reader.ReflectiveClassMetadata;
+import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
+import org.jboss.interceptor.reader.classfile.ClassFileClassMetadata;
+import org.jboss.interceptor.reader.classfile.ClassFileMethodMetadata;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
+import org.jboss.interceptor.spi.metadata.MethodMetadata;
+import org.jboss.interceptor.spi.model.InterceptionType;
+import org.jboss.interceptor.util.InterceptionTypeRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Marius Bogoevici
+ */
+public class ClassFileClassMetadataTestCase
+{
+   @Test
+   public void testClassFileIsReadWithoutLoadingTheClass() throws Exception
+   {
+      TestClassLoader classLoader = new TestClassLoader();
+      ClassFileClassMetadata<?> classMetadata = ClassFileClassMetadata.of(OverrideChildInterceptor.class.getName(), classLoader);
+      Assert.assertTrue(classMetadata.declaresInterceptorMethods());
+      for (MethodMetadata method : classMetadata.getDeclaredMethods())
+      {
+         ClassFileMethodMetadata classFileMethod = (ClassFileMethodMetadata) method;
+         if (classFileMethod.getName().equals("methodOverriddenAndUsedAsInterceptor"))
+         {
+            Assert.assertEquals("(Ljavax/interceptor/InvocationContext;)V", classFileMethod.getDescriptor());
+            Assert.assertTrue(method.getSupportedInterceptionTypes().contains(InterceptionType.POST_CONSTRUCT));
+         }
+         else if (classFileMethod.getName().equals("methodOverriddenAndNotUsedAsInterceptor"))
+         {
+            Assert.assertTrue(method.getSupportedInterceptionTypes().isEmpty());
+         }
+      }
+      Assert.assertEquals(OverrideParentInterceptor.class.getName(), classMetadata.getSuperclass().getClassName());
+      Assert.assertFalse(classLoader.isLoaded(OverrideChildInterceptor.class.getName()));
+      Assert.assertFalse(classLoader.isLoaded(OverrideParentInterceptor.class.getName()));
+
+      Assert.assertSame(classLoader, classMetadata.getJavaClass().getClassLoader());
+      Assert.assertTrue(classLoader.isLoaded(OverrideChildInterceptor.class.getName()));
+   }
+
+   @Test
+   public void testSuperclassIsReadOnce() throws Exception
+   {
+      TestClassLoader classLoader = new TestClassLoader();
+      ClassMetadata<?> superclass = ClassFileClassMetadata.of(ChildInterceptor.class.getName(), classLoader).getSuperclass();
+      Assert.assertEquals(ParentInterceptor.class.getName(), superclass.getClassName());
+      Assert.assertSame(superclass, ClassFileClassMetadata.of(ChildInterceptor.class.getName(), classLoader).getSuperclass());
+      Assert.assertSame(superclass.getSuperclass(), ClassFileClassMetadata.of(ParentInterceptor.class.getName(), classLoader).getSuperclass());
+
+      // the same superclass read through another class loader is another class
+      ClassMetadata<?> otherSuperclass = ClassFileClassMetadata.of(ChildInterceptor.class.getName(), new TestClassLoader()).getSuperclass();
+      Assert.assertNotSame(superclass, otherSuperclass);
+      Assert.assertFalse(superclass.equals(otherSuperclass));
+   }
+
+   @Test
+   public void testTargetClassWithoutInterceptorMethodsIsNotLoaded() throws Exception
+   {
+      TestClassLoader classLoader = new TestClassLoader();
+      ClassMetadata<?> classMetadata = ClassFileClassMetadata.of(NotAnInterceptor.class.getName(), classLoader);
+      InterceptorMetadata<?> interceptorMetadata = InterceptorMetadataUtils.readMetadataForTargetClass(classMetadata);
+      for (InterceptionType interceptionType : InterceptionTypeRegistry.getSupportedInterceptionTypes())
+      {
+         Assert.assertTrue(interceptorMetadata.getInterceptorMethods(interceptionType).isEmpty());
+      }
+      Assert.assertFalse(classLoader.isLoaded(NotAnInterceptor.class.getName()));
+   }
+
+   @Test
+   public void testCachingMetadataDoesNotLoadTheClass() throws Exception
+   {
+      TestClassLoader classLoader = new TestClassLoader();
+      DefaultMetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+      InterceptorMetadata<?> interceptorMetadata = metadataCachingReader.getInterceptorMetadata(ClassMetadataInterceptorReference.of(ClassFileClassMetadata.of(NotAnInterceptor.class.getName(), classLoader)));
+      Assert.assertSame(interceptorMetadata, metadataCachingReader.getInterceptorMetadata(ClassMetadataInterceptorReference.of(ClassFileClassMetadata.of(NotAnInterceptor.class.getName(), classLoader))));
+      InterceptorMetadata<?> targetClassMetadata = metadataCachingReader.getTargetClassInterceptorMetadata(ClassFileClassMetadata.of(NotAnInterceptor.class.getName(), classLoader));
+      Assert.assertSame(targetClassMetadata, metadataCachingReader.getTargetClassInterceptorMetadata(ClassFileClassMetadata.of(NotAnInterceptor.class.getName(), classLoader)));
+      Assert.assertFalse(classLoader.isLoaded(NotAnInterceptor.class.getName()));
+
+      // the same class file read through another class loader is another class
+      Assert.assertNotSame(interceptorMetadata, metadataCachingReader.getInterceptorMetadata(ClassMetadataInterceptorReference.of(ClassFileClassMetadata.of(NotAnInterceptor.class.getName(), new TestClassLoader()))));
+      Assert.assertEquals(1, metadataCachingReader.getInterceptorMetadataStatistics().getHitCount());
+      Assert.assertEquals(2, metadataCachingReader.getInterceptorMetadataStatistics().getSize());
+   }
+
+   @Test
+   public void testClassFileMetadataMatchesReflectiveMetadata()
+   {
+      assertSameInterceptorMethods(InterceptorWithAllMethods.class);
+      assertSameInterceptorMethods(ChildInterceptor.class);
+      assertSameInterceptorMethods(OverrideChildInterceptor.class);
+   }
+
+   private static void assertSameInterceptorMethods(Class<?> clazz)
+   {
+      InterceptorMetadata<?> expected = InterceptorMetadataUtils.readMetadataForInterceptorClass(ClassMetadataInterceptorReference.of(ReflectiveClassMetadata.of(clazz)));
+      InterceptorMetadata<?> actual = InterceptorMetadataUtils.readMetadataForInterceptorClass(ClassMetadataInterceptorReference.of(ClassFileClassMetadata.of(clazz.getName(), clazz.getClassLoader())));
+      for (InterceptionType interceptionType : InterceptionTypeRegistry.getSupportedInterceptionTypes())
+      {
+         List<MethodMetadata> expectedMethods = expected.getInterceptorMethods(interceptionType);
+         List<MethodMetadata> actualMethods = actual.getInterceptorMethods(interceptionType);
+         Assert.assertEquals(interceptionType.name(), expectedMethods.size(), actualMethods.size());
+         for (int i = 0; i < expectedMethods.size(); i++)
+         {
+            Assert.assertEquals(expectedMethods.get(i).getJavaMethod(), actualMethods.get(i).getJavaMethod());
+         }
+      }
+   }
+
+   /**
+    * Loads the classes of this package by itself, so that the test can tell whether they have been loaded.
+    */
+   private static class TestClassLoader extends URLClassLoader
+   {
+      TestClassLoader()
+      {
+         super(new URL[]{NotAnInterceptor.class.getProtectionDomain().getCodeSource().getLocation()}, NotAnInterceptor.class.getClassLoader());
+      }
+
+      @Override
+      protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+      {
+         if (name.startsWith(NotAnInterceptor.class.getPackage().getName() + "."))
+         {
+            Class<?> clazz = findLoadedClass(name);
+            return clazz != null ? clazz : findClass(name);
+         }
+         return super.loadClass(name, resolve);
+      }
+
+      boolean isLoaded(String className)
+      {
+         return findLoadedClass(className) != null;
+      }
+   }
+}
@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptors.metadata;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jboss.interceptor.reader.ReflectiveClassMetadata;
+import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
+import org.jboss.interceptor.reader.cache.MetadataCachingReader;
+import org.jboss.interceptor.reader.index.IndexedClassMetadata;
+import org.jboss.interceptor.reader.index.IndexedMetadataCachingReader;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
+import org.jboss.interceptor.spi.metadata.MethodMetadata;
+import org.jboss.interceptor.spi.model.InterceptionType;
+import org.jboss.interceptor.util.InterceptionTypeRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Reads the classes listed in the test index (META-INF/jboss-interceptor/metadata.idx) through the index. The format of
+ * the indexes written by the annotation processor is checked against the reader by the tests of the processor.
+ *
+ * @author Marius Bogoevici
+ */
+public class IndexedMetadataCachingReaderTestCase
+{
+   private final MetadataCachingReader reflectiveReader = new DefaultMetadataCachingReader();
+
+   private final MetadataCachingReader indexedReader = new IndexedMetadataCachingReader();
+
+   @Test
+   public void testIndexedClassesAreNotReadThroughReflection()
+   {
+      Assert.assertTrue(indexedReader.getClassMetadata(InterceptorWithAllMethods.class) instanceof IndexedClassMetadata);
+      Assert.assertTrue(indexedReader.getClassMetadata(OverrideChildInterceptor.class).getSuperclass() instanceof IndexedClassMetadata);
+   }
+
+   @Test
+   public void testClassesMissingFromTheIndexAreReadThroughReflection()
+   {
+      Assert.assertFalse(IndexedClassMetadata.isIndexed(InterceptorWithSomeMethods.class));
+      Assert.assertTrue(indexedReader.getClassMetadata(InterceptorWithSomeMethods.class) instanceof ReflectiveClassMetadata);
+      assertSameInterceptorMethods(InterceptorWithSomeMethods.class);
+   }
+
+   @Test
+   public void testIndexedMetadataMatchesReflectiveMetadata()
+   {
+      assertSameInterceptorMethods(InterceptorWithAllMethods.class);
+      assertSameInterceptorMethods(ChildInterceptor.class);
+      assertSameInterceptorMethods(OverrideChildInterceptor.class);
+   }
+
+   @Test
+   public void testAllDeclaredMethodsAreReturned()
+   {
+      ClassMetadata<?> classMetadata = indexedReader.getClassMetadata(OverrideChildInterceptor.class);
+      Set<Method> declaredMethods = new HashSet<Method>();
+      for (MethodMetadata methodMetadata : classMetadata.getDeclaredMethods())
+      {
+         declaredMethods.add(methodMetadata.getJavaMethod());
+         if (!methodMetadata.getJavaMethod().getName().equals("methodDefinedOnChildAndUsedAsInterceptor")
+               && !methodMetadata.getJavaMethod().getName().equals("methodOverriddenAndUsedAsInterceptor"))
+         {
+            Assert.assertTrue(methodMetadata.getJavaMethod().toString(), methodMetadata.getSupportedInterceptionTypes().isEmpty());
+         }
+      }
+      Assert.assertEquals(new HashSet<Method>(Arrays.asList(OverrideChildInterceptor.class.getDeclaredMethods())), declaredMethods);
+   }
+
+   private void assertSameInterceptorMethods(Class<?> clazz)
+   {
+      InterceptorMetadata<?> expected = reflectiveReader.getInterceptorMetadata(clazz);
+      InterceptorMetadata<?> actual = indexedReader.getInterceptorMetadata(clazz);
+      for (InterceptionType interceptionType : InterceptionTypeRegistry.getSupportedInterceptionTypes())
+      {
+         List<MethodMetadata> expectedMethods = expected.getInterceptorMethods(interceptionType);
+         List<MethodMetadata> actualMethods = actual.getInterceptorMethods(interceptionType);
+         Assert.assertEquals(interceptionType.name(), expectedMethods.size(), actualMethods.size());
+         for (int i = 0; i < expectedMethods.size(); i++)
+         {
+            Assert.assertEquals(expectedMethods.get(i).getJavaMethod(), actualMethods.get(i).getJavaMethod());
+         }
+      }
+   }
+}
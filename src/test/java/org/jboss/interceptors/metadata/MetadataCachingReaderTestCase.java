@@ -0,0 +1,270 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptors.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.jboss.interceptor.reader.cache.CacheStatistics;
+import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
+import org.jboss.interceptor.reader.cache.MetadataCachingReader;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
+import org.jboss.interceptor.spi.metadata.MethodMetadata;
+import org.jboss.interceptor.spi.model.InterceptionType;
+import org.jboss.interceptor.util.InterceptorMetadataException;
+import org.jboss.interceptors.invoker.Adder;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Marius Bogoevici
+ */
+public class MetadataCachingReaderTestCase
+{
+   @Test
+   public void testMetadataIsCached()
+   {
+      MetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+      Assert.assertSame(metadataCachingReader.getClassMetadata(InterceptorWithAllMethods.class), metadataCachingReader.getClassMetadata(InterceptorWithAllMethods.class));
+      Assert.assertSame(metadataCachingReader.getInterceptorMetadata(InterceptorWithAllMethods.class), metadataCachingReader.getInterceptorMetadata(InterceptorWithAllMethods.class));
+      Assert.assertSame(metadataCachingReader.getTargetClassInterceptorMetadata(InterceptorWithAllMethods.class), metadataCachingReader.getTargetClassInterceptorMetadata(InterceptorWithAllMethods.class));
+   }
+
+   @Test
+   public void testEldestEntriesAreEvicted()
+   {
+      MetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader(1);
+      Object classMetadata = metadataCachingReader.getClassMetadata(InterceptorWithAllMethods.class);
+      Assert.assertSame(classMetadata, metadataCachingReader.getClassMetadata(InterceptorWithAllMethods.class));
+      metadataCachingReader.getClassMetadata(InterceptorWithSomeMethods.class);
+      Assert.assertNotSame(classMetadata, metadataCachingReader.getClassMetadata(InterceptorWithAllMethods.class));
+   }
+
+   @Test
+   public void testSuperclassMetadataIsCached()
+   {
+      DefaultMetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+      ClassMetadata<?> superclassMetadata = metadataCachingReader.getClassMetadata(ChildInterceptor.class).getSuperclass();
+      Assert.assertSame(metadataCachingReader.getClassMetadata(ParentInterceptor.class), superclassMetadata);
+      Assert.assertSame(metadataCachingReader.getClassMetadata(GrandParentInterceptor.class), superclassMetadata.getSuperclass());
+      Assert.assertSame(superclassMetadata.getDeclaredMethods().iterator().next(), superclassMetadata.getDeclaredMethods().iterator().next());
+      // ChildInterceptor, ParentInterceptor, GrandParentInterceptor and Object
+      Assert.assertEquals(4, metadataCachingReader.getClassMetadataStatistics().getSize());
+   }
+
+   @Test
+   public void testMethodMetadataIsEvictedWithClassMetadata()
+   {
+      MetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader(1);
+      MethodMetadata methodMetadata = metadataCachingReader.getClassMetadata(InterceptorWithAllMethods.class).getDeclaredMethods().iterator().next();
+      Assert.assertSame(methodMetadata, metadataCachingReader.getClassMetadata(InterceptorWithAllMethods.class).getDeclaredMethods().iterator().next());
+      metadataCachingReader.getClassMetadata(InterceptorWithSomeMethods.class);
+      Assert.assertNotSame(methodMetadata, metadataCachingReader.getClassMetadata(InterceptorWithAllMethods.class).getDeclaredMethods().iterator().next());
+   }
+
+   @Test
+   public void testFailedComputationIsNotCached()
+   {
+      MetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+      for (int i = 0; i < 2; i++)
+      {
+         try
+         {
+            metadataCachingReader.getInterceptorMetadata(InterceptorWithDuplicateAnnotations.class);
+            Assert.fail();
+         }
+         catch (InterceptorMetadataException e)
+         {
+            // expected
+         }
+      }
+   }
+
+   @Test
+   public void testStatistics()
+   {
+      DefaultMetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+      metadataCachingReader.getInterceptorMetadata(InterceptorWithAllMethods.class);
+      metadataCachingReader.getInterceptorMetadata(InterceptorWithAllMethods.class);
+      metadataCachingReader.getInterceptorMetadata(InterceptorWithSomeMethods.class);
+      CacheStatistics statistics = metadataCachingReader.getInterceptorMetadataStatistics();
+      Assert.assertEquals(1, statistics.getHitCount());
+      Assert.assertEquals(2, statistics.getMissCount());
+      Assert.assertEquals(2, statistics.getLoadCount());
+      Assert.assertEquals(2, statistics.getSize());
+      Assert.assertTrue(statistics.getMaximumLoadTime() > 0);
+      Assert.assertTrue(statistics.getTotalLoadTime() >= statistics.getMaximumLoadTime());
+      // the two interceptor classes and their shared superclass, Object
+      Assert.assertEquals(3, metadataCachingReader.getClassMetadataStatistics().getMissCount());
+      Assert.assertEquals(0, metadataCachingReader.getTargetClassInterceptorMetadataStatistics().getLoadCount());
+
+      metadataCachingReader.resetStatistics();
+      statistics = metadataCachingReader.getInterceptorMetadataStatistics();
+      Assert.assertEquals(0, statistics.getHitCount());
+      Assert.assertEquals(0, statistics.getMissCount());
+      Assert.assertEquals(0, statistics.getMaximumLoadTime());
+      Assert.assertEquals(2, statistics.getSize());
+   }
+
+   @Test
+   public void testPreloadMetadata()
+   {
+      DefaultMetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+      ForkJoinPool forkJoinPool = new ForkJoinPool(2);
+      try
+      {
+         metadataCachingReader.preloadMetadata(Arrays.<Class<?>>asList(InterceptorWithAllMethods.class, ChildInterceptor.class, OverrideChildInterceptor.class),
+               Arrays.<Class<?>>asList(SimpleInheritanceChildInterceptor.class), forkJoinPool);
+      }
+      finally
+      {
+         forkJoinPool.shutdown();
+      }
+      Assert.assertEquals(3, metadataCachingReader.getInterceptorMetadataStatistics().getSize());
+      Assert.assertEquals(1, metadataCachingReader.getTargetClassInterceptorMetadataStatistics().getSize());
+      metadataCachingReader.resetStatistics();
+      metadataCachingReader.getInterceptorMetadata(ChildInterceptor.class);
+      metadataCachingReader.getTargetClassInterceptorMetadata(SimpleInheritanceChildInterceptor.class);
+      Assert.assertEquals(0, metadataCachingReader.getInterceptorMetadataStatistics().getMissCount());
+      Assert.assertEquals(0, metadataCachingReader.getTargetClassInterceptorMetadataStatistics().getMissCount());
+   }
+
+   @Test
+   public void testPreloadMetadataReportsAllFailures()
+   {
+      DefaultMetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+      try
+      {
+         metadataCachingReader.preloadMetadata(Arrays.<Class<?>>asList(InterceptorWithDuplicateAnnotations.class, InterceptorWithAllMethods.class),
+               Collections.<Class<?>>emptyList());
+         Assert.fail();
+      }
+      catch (InterceptorMetadataException e)
+      {
+         Assert.assertEquals(1, e.getSuppressed().length);
+         Assert.assertTrue(e.getSuppressed()[0] instanceof InterceptorMetadataException);
+      }
+      Assert.assertEquals(1, metadataCachingReader.getInterceptorMetadataStatistics().getSize());
+   }
+
+   @Test
+   public void testSnapshot() throws Exception
+   {
+      DefaultMetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+      metadataCachingReader.getInterceptorMetadata(InterceptorWithAllMethods.class);
+      metadataCachingReader.getInterceptorMetadata(OverrideChildInterceptor.class);
+      metadataCachingReader.getTargetClassInterceptorMetadata(SimpleInheritanceChildInterceptor.class);
+      metadataCachingReader.getTargetClassInterceptorMetadata(NotAnInterceptor.class);
+      File snapshot = File.createTempFile("interceptor-metadata", ".snapshot");
+      try
+      {
+         Assert.assertEquals(4, metadataCachingReader.writeSnapshot(snapshot));
+
+         DefaultMetadataCachingReader restoredReader = new DefaultMetadataCachingReader();
+         Assert.assertEquals(4, restoredReader.readSnapshot(snapshot, getClass().getClassLoader()));
+         assertSameInterceptorMethods(metadataCachingReader.getInterceptorMetadata(InterceptorWithAllMethods.class), restoredReader.getInterceptorMetadata(InterceptorWithAllMethods.class));
+         assertSameInterceptorMethods(metadataCachingReader.getInterceptorMetadata(OverrideChildInterceptor.class), restoredReader.getInterceptorMetadata(OverrideChildInterceptor.class));
+         assertSameInterceptorMethods(metadataCachingReader.getTargetClassInterceptorMetadata(SimpleInheritanceChildInterceptor.class), restoredReader.getTargetClassInterceptorMetadata(SimpleInheritanceChildInterceptor.class));
+         Assert.assertEquals(0, restoredReader.getInterceptorMetadataStatistics().getLoadCount());
+         Assert.assertEquals(0, restoredReader.getTargetClassInterceptorMetadataStatistics().getLoadCount());
+
+         // already cached, so not restored again
+         Assert.assertEquals(0, restoredReader.readSnapshot(snapshot, getClass().getClassLoader()));
+      }
+      finally
+      {
+         snapshot.delete();
+      }
+   }
+
+   @Test
+   public void testCorruptedSnapshotIsRejected() throws Exception
+   {
+      DefaultMetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+      metadataCachingReader.getInterceptorMetadata(InterceptorWithAllMethods.class);
+      File snapshot = File.createTempFile("interceptor-metadata", ".snapshot");
+      try
+      {
+         metadataCachingReader.writeSnapshot(snapshot);
+         RandomAccessFile snapshotFile = new RandomAccessFile(snapshot, "rw");
+         try
+         {
+            snapshotFile.seek(20);
+            int value = snapshotFile.read();
+            snapshotFile.seek(20);
+            snapshotFile.write(value ^ 0xFF);
+         }
+         finally
+         {
+            snapshotFile.close();
+         }
+         new DefaultMetadataCachingReader().readSnapshot(snapshot, getClass().getClassLoader());
+         Assert.fail();
+      }
+      catch (IOException e)
+      {
+         // expected
+      }
+      finally
+      {
+         snapshot.delete();
+      }
+   }
+
+   private static void assertSameInterceptorMethods(InterceptorMetadata<?> expected, InterceptorMetadata<?> actual)
+   {
+      Assert.assertEquals(expected.isTargetClass(), actual.isTargetClass());
+      for (InterceptionType interceptionType : InterceptionType.values())
+      {
+         List<MethodMetadata> expectedMethods = expected.getInterceptorMethods(interceptionType);
+         List<MethodMetadata> actualMethods = actual.getInterceptorMethods(interceptionType);
+         Assert.assertEquals(interceptionType.name(), expectedMethods.size(), actualMethods.size());
+         for (int i = 0; i < expectedMethods.size(); i++)
+         {
+            Assert.assertEquals(expectedMethods.get(i).getJavaMethod(), actualMethods.get(i).getJavaMethod());
+            Assert.assertEquals(expectedMethods.get(i).getSupportedInterceptionTypes(), actualMethods.get(i).getSupportedInterceptionTypes());
+         }
+      }
+   }
+
+   @Test
+   public void testMetadataIsReleasedWithClassLoader() throws Exception
+   {
+      MetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+      URL classesLocation = Adder.class.getProtectionDomain().getCodeSource().getLocation();
+      ClassLoader classLoader = new URLClassLoader(new URL[]{classesLocation}, null);
+      metadataCachingReader.getClassMetadata(classLoader.loadClass(Adder.class.getName()));
+      WeakReference<ClassLoader> classLoaderReference = new WeakReference<ClassLoader>(classLoader);
+      classLoader = null;
+      for (int i = 0; i < 50 && classLoaderReference.get() != null; i++)
+      {
+         System.gc();
+         Thread.sleep(10);
+      }
+      Assert.assertNull(classLoaderReference.get());
+   }
+}
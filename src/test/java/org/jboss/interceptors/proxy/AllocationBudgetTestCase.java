@@ -0,0 +1,232 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptors.proxy;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import javassist.util.proxy.MethodHandler;
+import javassist.util.proxy.ProxyObject;
+
+import org.jboss.interceptor.builder.InterceptionModelBuilder;
+import org.jboss.interceptor.proxy.DefaultInvocationContextFactory;
+import org.jboss.interceptor.proxy.DirectClassInterceptorInstantiator;
+import org.jboss.interceptor.proxy.InterceptorProxyCreatorImpl;
+import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
+import org.jboss.interceptor.reader.cache.MetadataCachingReader;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.spi.model.InterceptionModel;
+import org.jboss.interceptor.util.InterceptionUtils;
+import org.jboss.interceptors.invoker.Calculator;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Fails when an intercepted invocation allocates more than the budget of its scenario, as stored in
+ * {@value #BUDGETS_RESOURCE_NAME}, in bytes per invocation. The allocations are measured by
+ * <code>com.sun.management.ThreadMXBean</code> once the invocations have been compiled, and the test is skipped on
+ * JVMs which cannot measure them.
+ *
+ * The intercepted methods and the interceptors of these scenarios allocate nothing by themselves, so the budgets
+ * only account for the allocations of the proxies and of the library. A budget which is lowered by an optimization
+ * should be lowered in the file, so that the optimization is kept.
+ *
+ * @author Marius Bogoevici
+ */
+public class AllocationBudgetTestCase
+{
+   private static final String BUDGETS_RESOURCE_NAME = "allocation-budgets.properties";
+
+   private static final int WARMUP_INVOCATIONS = 50000;
+
+   private static final int MEASURED_INVOCATIONS = 20000;
+
+   private static final int MEASURED_ROUNDS = 3;
+
+   private MetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+
+   private Properties budgets = new Properties();
+
+   @Before
+   public void setUp() throws Exception
+   {
+      Assume.assumeTrue(AllocatedBytes.isSupported());
+      InputStream budgetsStream = AllocationBudgetTestCase.class.getClassLoader().getResourceAsStream(BUDGETS_RESOURCE_NAME);
+      try
+      {
+         budgets.load(budgetsStream);
+      }
+      finally
+      {
+         budgetsStream.close();
+      }
+   }
+
+   @Test
+   public void testSubclassingProxyWithReferenceResult() throws Exception
+   {
+      final Echo proxy = createSubclassingProxy();
+      assertWithinBudget("subclassing.reference", new Runnable()
+      {
+         public void run()
+         {
+            proxy.echo("value");
+         }
+      });
+   }
+
+   @Test
+   public void testSubclassingProxyWithPrimitiveArgument() throws Exception
+   {
+      final Echo proxy = createSubclassingProxy();
+      assertWithinBudget("subclassing.primitive", new Runnable()
+      {
+         public void run()
+         {
+            proxy.add(1, 2);
+         }
+      });
+   }
+
+   @Test
+   public void testDelegatingProxyWithReferenceResult() throws Exception
+   {
+      final Echo proxy = createDelegatingProxy();
+      assertWithinBudget("delegating.reference", new Runnable()
+      {
+         public void run()
+         {
+            proxy.echo("value");
+         }
+      });
+   }
+
+   @Test
+   public void testDelegatingProxyWithPrimitiveArgument() throws Exception
+   {
+      final Echo proxy = createDelegatingProxy();
+      assertWithinBudget("delegating.primitive", new Runnable()
+      {
+         public void run()
+         {
+            proxy.add(1, 2);
+         }
+      });
+   }
+
+   @Test
+   public void testSubclassingProxyWithoutInterceptorsOnTheMethod() throws Exception
+   {
+      ClassMetadata<Calculator> calculatorClass = metadataCachingReader.getClassMetadata(Calculator.class);
+      InterceptionModelBuilder<ClassMetadata<?>, ?> builder = InterceptionModelBuilder.<ClassMetadata<?>>newBuilderFor(calculatorClass);
+      builder.interceptAroundInvoke(Calculator.class.getMethod("fail", String.class)).with(metadataCachingReader.getInterceptorMetadata(FirstInterceptor.class));
+      InterceptorProxyCreatorImpl ipc = new InterceptorProxyCreatorImpl(new DirectClassInterceptorInstantiator(), new DefaultInvocationContextFactory(), builder.build());
+      // overrides all the methods, as a pregenerated proxy class does
+      final Calculator proxy = InterceptionUtils.createProxyClass(Calculator.class, true).newInstance();
+      ((ProxyObject) proxy).setHandler(ipc.createSubclassingMethodHandler(null, calculatorClass));
+      // measured before the invocations are compiled, since escape analysis would remove the allocations
+      long bytesPerInvocation = getBytesPerInvocation(new Runnable()
+      {
+         public void run()
+         {
+            proxy.add(1, 2);
+         }
+      }, 100, 1000);
+      // only the arguments array and the boxed arguments, allocated by the proxy method itself
+      Assert.assertTrue("An invocation without interceptors allocates " + bytesPerInvocation + " bytes", bytesPerInvocation <= 64);
+   }
+
+   private void assertWithinBudget(String scenario, Runnable invocation)
+   {
+      String budget = budgets.getProperty(scenario);
+      Assert.assertNotNull("No allocation budget for " + scenario + " in " + BUDGETS_RESOURCE_NAME, budget);
+      long bytesPerInvocation = getBytesPerInvocation(invocation, WARMUP_INVOCATIONS, MEASURED_INVOCATIONS);
+      Assert.assertTrue(scenario + " allocates " + bytesPerInvocation + " bytes per invocation, above its budget of " + budget,
+            bytesPerInvocation <= Long.parseLong(budget));
+   }
+
+   /**
+    * @return the fewest bytes allocated per invocation over several rounds, so that the allocations happening
+    * occasionally in the measuring thread, as the compilation of the invocations settles, are not counted
+    */
+   private static long getBytesPerInvocation(Runnable invocation, int warmupInvocations, int measuredInvocations)
+   {
+      for (int i = 0; i < warmupInvocations; i++)
+      {
+         invocation.run();
+      }
+      long bytesPerInvocation = Long.MAX_VALUE;
+      for (int round = 0; round < MEASURED_ROUNDS; round++)
+      {
+         long allocatedBytes = AllocatedBytes.get();
+         for (int i = 0; i < measuredInvocations; i++)
+         {
+            invocation.run();
+         }
+         bytesPerInvocation = Math.min(bytesPerInvocation, (AllocatedBytes.get() - allocatedBytes) / measuredInvocations);
+      }
+      return bytesPerInvocation;
+   }
+
+   private InterceptionModel<ClassMetadata<?>, Object> createInterceptionModel() throws Exception
+   {
+      InterceptionModelBuilder<ClassMetadata<?>, ?> builder = InterceptionModelBuilder.<ClassMetadata<?>>newBuilderFor(metadataCachingReader.getClassMetadata(Echo.class));
+      builder.interceptAll().with(metadataCachingReader.getInterceptorMetadata(ProceedingInterceptor.class), metadataCachingReader.getInterceptorMetadata(ProceedingInterceptor.Second.class));
+      return (InterceptionModel<ClassMetadata<?>, Object>) builder.build();
+   }
+
+   private Echo createSubclassingProxy() throws Exception
+   {
+      InterceptorProxyCreatorImpl ipc = new InterceptorProxyCreatorImpl(new DirectClassInterceptorInstantiator(), new DefaultInvocationContextFactory(), createInterceptionModel());
+      return ipc.createSubclassingProxy(metadataCachingReader.getClassMetadata(Echo.class), new Class<?>[0], new Object[0]);
+   }
+
+   private Echo createDelegatingProxy() throws Exception
+   {
+      InterceptorProxyCreatorImpl ipc = new InterceptorProxyCreatorImpl(new DirectClassInterceptorInstantiator(), new DefaultInvocationContextFactory(), createInterceptionModel());
+      MethodHandler methodHandler = ipc.createMethodHandler(new Echo(), metadataCachingReader.getClassMetadata(Echo.class));
+      return ipc.createProxyInstance(InterceptionUtils.createProxyClass(Echo.class, false), methodHandler);
+   }
+
+   /**
+    * Only loaded if <code>com.sun.management.ThreadMXBean</code> is available.
+    */
+   private static class AllocatedBytes
+   {
+      static boolean isSupported()
+      {
+         try
+         {
+            return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean
+                  && ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).isThreadAllocatedMemoryEnabled();
+         }
+         catch (LinkageError e)
+         {
+            return false;
+         }
+      }
+
+      static long get()
+      {
+         return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+   }
+}
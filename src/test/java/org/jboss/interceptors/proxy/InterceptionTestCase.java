@@ -35,10 +35,12 @@ import org.jboss.interceptor.proxy.InterceptorProxyCreatorImpl;
 import org.jboss.interceptor.proxy.javassist.CompositeHandler;
 import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
 import org.jboss.interceptor.reader.cache.MetadataCachingReader;
+import org.jboss.interceptor.spi.context.InvocationContextFactory;
 import org.jboss.interceptor.spi.instance.InterceptorInstantiator;
 import org.jboss.interceptor.spi.metadata.ClassMetadata;
 import org.jboss.interceptor.spi.model.InterceptionModel;
 import org.jboss.interceptor.util.InterceptionUtils;
+import org.jboss.interceptors.invoker.Calculator;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -190,6 +192,145 @@ public class InterceptionTestCase
       assertRawObject(proxy);
    }
 
+   @Test
+   public void testRepeatedInterceptionWithMethodRegisteredInterceptors() throws Exception
+   {
+      resetLogAndSetupClassesForMethod();
+      FootballTeam proxy = createAdvisedInstance(FootballTeam.class, TEAM_NAME);
+      Assert.assertEquals(TEAM_NAME, proxy.getName());
+      Assert.assertEquals(TEAM_NAME, proxy.getName());
+      Object[] logValues = InterceptorTestLogger.getLog().toArray();
+      Object[] expectedValues = new Object[]{
+            "org.jboss.interceptors.proxy.FirstInterceptor_aroundInvokeBefore",
+            "org.jboss.interceptors.proxy.SecondInterceptor_aroundInvokeBefore",
+            "org.jboss.interceptors.proxy.FootballTeam_aroundInvokeBefore",
+            "org.jboss.interceptors.proxy.FootballTeam_getName",
+            "org.jboss.interceptors.proxy.FootballTeam_aroundInvokeAfter",
+            "org.jboss.interceptors.proxy.SecondInterceptor_aroundInvokeAfter",
+            "org.jboss.interceptors.proxy.FirstInterceptor_aroundInvokeAfter",
+            "org.jboss.interceptors.proxy.FirstInterceptor_aroundInvokeBefore",
+            "org.jboss.interceptors.proxy.SecondInterceptor_aroundInvokeBefore",
+            "org.jboss.interceptors.proxy.FootballTeam_aroundInvokeBefore",
+            "org.jboss.interceptors.proxy.FootballTeam_getName",
+            "org.jboss.interceptors.proxy.FootballTeam_aroundInvokeAfter",
+            "org.jboss.interceptors.proxy.SecondInterceptor_aroundInvokeAfter",
+            "org.jboss.interceptors.proxy.FirstInterceptor_aroundInvokeAfter"
+      };
+      Assert.assertArrayEquals(iterateAndDisplay(logValues), expectedValues, logValues);
+   }
+
+   @Test
+   public void testInvocationOfNonInterceptedMethod() throws Exception
+   {
+      resetLogAndSetupClassesGlobally();
+      FootballTeam proxy = createAdvisedInstance(FootballTeam.class, TEAM_NAME);
+      proxy.afterActivating();
+      Object[] logValues = InterceptorTestLogger.getLog().toArray();
+      Assert.assertArrayEquals(iterateAndDisplay(logValues), new String[]{"org.jboss.interceptors.proxy.FootballTeam_postActivating"}, logValues);
+   }
+
+   @Test
+   public void testInterceptorInstancesAreNotSharedBetweenInstances() throws Exception
+   {
+      InterceptorTestLogger.reset();
+      ClassMetadata<?> footballTeamClass = metadataCachingReader.getClassMetadata(FootballTeam.class);
+      InterceptionModelBuilder<ClassMetadata<?>,?> builder = InterceptionModelBuilder.<ClassMetadata<?>>newBuilderFor(footballTeamClass);
+      builder.interceptAroundInvoke(FootballTeam.class.getMethod("getName")).with(metadataCachingReader.getInterceptorMetadata(CountingInterceptor.class));
+      InterceptorProxyCreatorImpl ipc = createInterceptorProxyCreator(builder.build());
+      FootballTeam firstProxy = proxifyInstance(ipc, new FootballTeam(TEAM_NAME), FootballTeam.class);
+      FootballTeam secondProxy = proxifyInstance(ipc, new FootballTeam(TEAM_NAME), FootballTeam.class);
+      firstProxy.getName();
+      firstProxy.getName();
+      secondProxy.getName();
+      Object[] logValues = InterceptorTestLogger.getLog().toArray();
+      Object[] expectedValues = new Object[]{
+            "org.jboss.interceptors.proxy.CountingInterceptor_invocation1",
+            "org.jboss.interceptors.proxy.FootballTeam_aroundInvokeBefore",
+            "org.jboss.interceptors.proxy.FootballTeam_getName",
+            "org.jboss.interceptors.proxy.FootballTeam_aroundInvokeAfter",
+            "org.jboss.interceptors.proxy.CountingInterceptor_invocation2",
+            "org.jboss.interceptors.proxy.FootballTeam_aroundInvokeBefore",
+            "org.jboss.interceptors.proxy.FootballTeam_getName",
+            "org.jboss.interceptors.proxy.FootballTeam_aroundInvokeAfter",
+            "org.jboss.interceptors.proxy.CountingInterceptor_invocation1",
+            "org.jboss.interceptors.proxy.FootballTeam_aroundInvokeBefore",
+            "org.jboss.interceptors.proxy.FootballTeam_getName",
+            "org.jboss.interceptors.proxy.FootballTeam_aroundInvokeAfter"
+      };
+      Assert.assertArrayEquals(iterateAndDisplay(logValues), expectedValues, logValues);
+   }
+
+   @Test
+   public void testInterceptorProceedingTwice() throws Exception
+   {
+      InterceptorTestLogger.reset();
+      ClassMetadata<?> footballTeamClass = metadataCachingReader.getClassMetadata(FootballTeam.class);
+      InterceptionModelBuilder<ClassMetadata<?>,?> builder = InterceptionModelBuilder.<ClassMetadata<?>>newBuilderFor(footballTeamClass);
+      builder.interceptAroundInvoke(FootballTeam.class.getMethod("getName")).with(metadataCachingReader.getInterceptorMetadata(RepeatingInterceptor.class),
+            metadataCachingReader.getInterceptorMetadata(CountingInterceptor.class));
+      FootballTeam proxy = proxifyInstance(createInterceptorProxyCreator(builder.build()), new FootballTeam(TEAM_NAME), FootballTeam.class);
+      Assert.assertEquals(TEAM_NAME, proxy.getName());
+      Object[] logValues = InterceptorTestLogger.getLog().toArray();
+      Object[] expectedValues = new Object[]{
+            "org.jboss.interceptors.proxy.CountingInterceptor_invocation1",
+            "org.jboss.interceptors.proxy.FootballTeam_aroundInvokeBefore",
+            "org.jboss.interceptors.proxy.FootballTeam_getName",
+            "org.jboss.interceptors.proxy.FootballTeam_aroundInvokeAfter",
+            "org.jboss.interceptors.proxy.CountingInterceptor_invocation2",
+            "org.jboss.interceptors.proxy.FootballTeam_aroundInvokeBefore",
+            "org.jboss.interceptors.proxy.FootballTeam_getName",
+            "org.jboss.interceptors.proxy.FootballTeam_aroundInvokeAfter"
+      };
+      Assert.assertArrayEquals(iterateAndDisplay(logValues), expectedValues, logValues);
+   }
+
+   @Test
+   public void testSubclassingAndDelegatingHandlersShareTheClassPlan() throws Exception
+   {
+      InterceptorProxyCreatorImpl ipc = createInterceptorProxyCreator(createCalculatorInterceptionModel());
+      Assert.assertEquals(3, createSubclassingCalculator(ipc).add(1, 2));
+      Assert.assertEquals(7, proxifyInstance(ipc, new Calculator(), Calculator.class).add(3, 4));
+   }
+
+   @Test
+   public void testDelegatingAndSubclassingHandlersShareTheClassPlan() throws Exception
+   {
+      InterceptorProxyCreatorImpl ipc = createInterceptorProxyCreator(createCalculatorInterceptionModel());
+      Assert.assertEquals(7, proxifyInstance(ipc, new Calculator(), Calculator.class).add(3, 4));
+      Assert.assertEquals(3, createSubclassingCalculator(ipc).add(1, 2));
+   }
+
+   private InterceptionModel<ClassMetadata<?>, ?> createCalculatorInterceptionModel() throws Exception
+   {
+      InterceptionModelBuilder<ClassMetadata<?>,?> builder = InterceptionModelBuilder.<ClassMetadata<?>>newBuilderFor(metadataCachingReader.getClassMetadata(Calculator.class));
+      builder.interceptAroundInvoke(Calculator.class.getMethod("fail", String.class)).with(metadataCachingReader.getInterceptorMetadata(FirstInterceptor.class));
+      return builder.build();
+   }
+
+   /**
+    * @return an instance of a subclassing proxy class overriding all the methods, as the pregenerated ones do
+    */
+   private Calculator createSubclassingCalculator(InterceptorProxyCreatorImpl ipc) throws Exception
+   {
+      Calculator calculator = InterceptionUtils.createProxyClass(Calculator.class, true).newInstance();
+      ((ProxyObject) calculator).setHandler(ipc.createSubclassingMethodHandler(null, metadataCachingReader.getClassMetadata(Calculator.class)));
+      return calculator;
+   }
+
+   @Test
+   public void testInvocationWithoutInterceptors() throws Exception
+   {
+      InterceptorTestLogger.reset();
+      ClassMetadata<?> valueBearerClass = metadataCachingReader.getClassMetadata(ValueBearerImpl.class);
+      InterceptionModel<ClassMetadata<?>, ?> interceptionModel = InterceptionModelBuilder.<ClassMetadata<?>>newBuilderFor(valueBearerClass).build();
+      this.interceptionModelRegistry = new HashMap<Class<?>, InterceptionModel<ClassMetadata<?>,?>>();
+      this.interceptionModelRegistry.put(ValueBearerImpl.class, interceptionModel);
+      ValueBearerImpl proxy = proxifyInstance(new ValueBearerImpl(42), ValueBearerImpl.class);
+      Assert.assertEquals(42, proxy.getValue());
+      Assert.assertEquals(42, proxy.getValue());
+      Assert.assertTrue(InterceptorTestLogger.getLog().isEmpty());
+   }
+
    @Test
    public void testInterceptionWithGlobalInterceptors() throws Exception
    {
@@ -524,11 +665,25 @@ public class InterceptionTestCase
 
    private <T> T proxifyInstance(T instance, Class<? extends T> targetClass)
    {
-      DefaultInvocationContextFactory contextFactory = new DefaultInvocationContextFactory();
-      InterceptorProxyCreatorImpl ipc = new InterceptorProxyCreatorImpl(interceptorInstantiator, contextFactory, (InterceptionModel<ClassMetadata<?>, Object>) interceptionModelRegistry.get(targetClass));
+      InterceptorProxyCreatorImpl ipc = createInterceptorProxyCreator((InterceptionModel<ClassMetadata<?>, Object>) interceptionModelRegistry.get(targetClass));
+      return proxifyInstance(ipc, instance, targetClass);
+   }
+
+   private <T> T proxifyInstance(InterceptorProxyCreatorImpl ipc, T instance, Class<? extends T> targetClass)
+   {
       ClassMetadata<? extends T> targetClassMetadata =  metadataCachingReader.getClassMetadata(targetClass);
       MethodHandler methodHandler = ipc.createMethodHandler(instance, targetClassMetadata);
       Class<? extends T> proxyClassWithHandler = InterceptionUtils.createProxyClassWithHandler(targetClassMetadata, methodHandler);
       return ipc.createProxyInstance(proxyClassWithHandler, methodHandler);
    }
+
+   protected InterceptorProxyCreatorImpl createInterceptorProxyCreator(InterceptionModel<ClassMetadata<?>, ?> interceptionModel)
+   {
+      return new InterceptorProxyCreatorImpl(interceptorInstantiator, createInvocationContextFactory(), interceptionModel);
+   }
+
+   protected InvocationContextFactory createInvocationContextFactory()
+   {
+      return new DefaultInvocationContextFactory();
+   }
 }
@@ -0,0 +1,146 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptors.proxy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.interceptor.builder.InterceptionModelBuilder;
+import org.jboss.interceptor.proxy.DefaultInvocationContextFactory;
+import org.jboss.interceptor.proxy.DirectClassInterceptorInstantiator;
+import org.jboss.interceptor.proxy.InterceptorProxyCreatorImpl;
+import org.jboss.interceptor.proxy.InvocationTrace;
+import org.jboss.interceptor.proxy.InvocationTraceRecorder;
+import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
+import org.jboss.interceptor.reader.cache.MetadataCachingReader;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.spi.model.InterceptionModel;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Marius Bogoevici
+ */
+public class InvocationTraceTestCase
+{
+   private MetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+
+   private FootballTeam proxy;
+
+   @Before
+   public void setUp() throws Exception
+   {
+      InterceptorTestLogger.reset();
+      proxy = createProxy();
+   }
+
+   @After
+   public void tearDown()
+   {
+      InvocationTraceRecorder recorder = InvocationTraceRecorder.getActiveRecorder();
+      if (recorder != null)
+      {
+         recorder.close();
+      }
+   }
+
+   @Test
+   public void testCallsAreRecorded() throws Exception
+   {
+      ByteArrayOutputStream traceBytes = new ByteArrayOutputStream();
+      InvocationTraceRecorder recorder = InvocationTraceRecorder.start(traceBytes);
+      proxy.echo("1");
+      proxy.echoInt(2);
+      proxy.echoObjectArray(null);
+      proxy.echoLongAsObject(3L);
+      proxy.echo("5");
+      recorder.close();
+      Assert.assertNull(InvocationTraceRecorder.getActiveRecorder());
+      proxy.echo("4");
+
+      InvocationTrace trace = InvocationTrace.read(new ByteArrayInputStream(traceBytes.toByteArray()));
+      Assert.assertEquals(4, trace.getMethods().size());
+      List<InvocationTrace.Call> calls = trace.getCalls();
+      Assert.assertEquals(5, calls.size());
+      assertCall(calls.get(0), "echo", "(Ljava/lang/String;)I", String.class.getName());
+      assertCall(calls.get(1), "echoInt", "(I)I", Integer.class.getName());
+      assertCall(calls.get(2), "echoObjectArray", "([Ljava/lang/Object;)[Ljava/lang/Object;", (String) null);
+      assertCall(calls.get(3), "echoLongAsObject", "(Ljava/lang/Long;)Ljava/lang/Long;", Long.class.getName());
+      assertCall(calls.get(4), "echo", "(Ljava/lang/String;)I", String.class.getName());
+      Assert.assertSame(calls.get(0).getMethod(), calls.get(4).getMethod());
+
+      long previousStartTime = 0;
+      for (InvocationTrace.Call call : calls)
+      {
+         // the interceptors bound to the class, and the around-invoke method of the target
+         Assert.assertEquals(3, call.getChainLength());
+         Assert.assertTrue(call.getDuration() >= 0);
+         Assert.assertTrue(call.getStartTime() >= previousStartTime);
+         previousStartTime = call.getStartTime();
+      }
+   }
+
+   @Test
+   public void testOnlyOneRecorderIsActive() throws Exception
+   {
+      InvocationTraceRecorder recorder = InvocationTraceRecorder.start(new ByteArrayOutputStream());
+      try
+      {
+         InvocationTraceRecorder.start(new ByteArrayOutputStream());
+         Assert.fail("A second recorder must not start");
+      }
+      catch (IllegalStateException e)
+      {
+         // expected
+      }
+      Assert.assertSame(recorder, InvocationTraceRecorder.getActiveRecorder());
+   }
+
+   @Test(expected = IOException.class)
+   public void testUnclosedTraceIsRejected() throws Exception
+   {
+      ByteArrayOutputStream traceBytes = new ByteArrayOutputStream();
+      InvocationTraceRecorder.start(traceBytes);
+      proxy.echo("1");
+      // nothing has been flushed yet
+      InvocationTrace.read(new ByteArrayInputStream(traceBytes.toByteArray()));
+   }
+
+   private static void assertCall(InvocationTrace.Call call, String methodName, String descriptor, String... argumentTypes)
+   {
+      Assert.assertEquals(FootballTeam.class.getName(), call.getMethod().getDeclaringClassName());
+      Assert.assertEquals(methodName, call.getMethod().getName());
+      Assert.assertEquals(descriptor, call.getMethod().getDescriptor());
+      Assert.assertEquals(Arrays.asList(argumentTypes), Arrays.asList(call.getArgumentTypes()));
+   }
+
+   private FootballTeam createProxy() throws Exception
+   {
+      ClassMetadata<FootballTeam> footballTeamClass = metadataCachingReader.getClassMetadata(FootballTeam.class);
+      InterceptionModelBuilder<ClassMetadata<?>, ?> builder = InterceptionModelBuilder.<ClassMetadata<?>>newBuilderFor(footballTeamClass);
+      builder.interceptAll().with(metadataCachingReader.getInterceptorMetadata(FirstInterceptor.class), metadataCachingReader.getInterceptorMetadata(SecondInterceptor.class));
+      InterceptionModel<ClassMetadata<?>, ?> interceptionModel = builder.build();
+      InterceptorProxyCreatorImpl ipc = new InterceptorProxyCreatorImpl(new DirectClassInterceptorInstantiator(), new DefaultInvocationContextFactory(), (InterceptionModel<ClassMetadata<?>, Object>) interceptionModel);
+      return ipc.createSubclassingProxy(footballTeamClass, new Class<?>[]{String.class}, new Object[]{"Ajax Amsterdam"});
+   }
+}
@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptors.proxy;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.interceptors.invoker.Calculator;
+
+/**
+ * Loads the given classes by itself, from the test classes and the given directory, so that they are loaded again
+ * for each test.
+ *
+ * @author Marius Bogoevici
+ */
+class IsolatingClassLoader extends URLClassLoader
+{
+   private final List<String> classNames;
+
+   IsolatingClassLoader(File directory, String... classNames) throws Exception
+   {
+      super(new URL[]{directory.toURI().toURL(), Calculator.class.getProtectionDomain().getCodeSource().getLocation()}, Calculator.class.getClassLoader());
+      this.classNames = Arrays.asList(classNames);
+   }
+
+   @Override
+   protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+   {
+      if (classNames.contains(name))
+      {
+         Class<?> clazz = findLoadedClass(name);
+         return clazz != null ? clazz : findClass(name);
+      }
+      return super.loadClass(name, resolve);
+   }
+}
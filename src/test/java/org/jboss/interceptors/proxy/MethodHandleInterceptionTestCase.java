@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.interceptors.proxy;
+
+import org.jboss.interceptor.builder.InterceptionModelBuilder;
+import org.jboss.interceptor.proxy.InterceptorProxyCreatorImpl;
+import org.jboss.interceptor.proxy.MethodHandleInterceptionChain;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.spi.model.InterceptionModel;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Runs the {@link InterceptionTestCase} tests with interception chains based on method handles.
+ *
+ * @author Marius Bogoevici
+ */
+public class MethodHandleInterceptionTestCase extends InterceptionTestCase
+{
+   @Override
+   protected InterceptorProxyCreatorImpl createInterceptorProxyCreator(InterceptionModel<ClassMetadata<?>, ?> interceptionModel)
+   {
+      InterceptorProxyCreatorImpl interceptorProxyCreator = super.createInterceptorProxyCreator(interceptionModel);
+      interceptorProxyCreator.setMethodHandleInterceptionChains(true);
+      return interceptorProxyCreator;
+   }
+
+   @Test
+   public void testMethodHandleInterceptionChainIsUsed() throws Exception
+   {
+      ChainRecordingInterceptor.reset();
+      ClassMetadata<FootballTeam> footballTeamClass = metadataCachingReader.getClassMetadata(FootballTeam.class);
+      InterceptionModelBuilder<ClassMetadata<?>, ?> builder = InterceptionModelBuilder.<ClassMetadata<?>>newBuilderFor(footballTeamClass);
+      builder.interceptAll().with(metadataCachingReader.getInterceptorMetadata(ChainRecordingInterceptor.class));
+      InterceptorProxyCreatorImpl ipc = createInterceptorProxyCreator(builder.build());
+      FootballTeam proxy = ipc.createSubclassingProxy(footballTeamClass, new Class<?>[]{String.class}, new Object[]{"Ajax Amsterdam"});
+      Assert.assertEquals(42, proxy.echoInt(42));
+      Assert.assertEquals(MethodHandleInterceptionChain.class.getName(), ChainRecordingInterceptor.getChainClassName());
+   }
+}
@@ -0,0 +1,173 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptors.proxy;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javassist.util.proxy.MethodHandler;
+import javassist.util.proxy.ProxyObject;
+
+import org.jboss.interceptor.builder.InterceptionModelBuilder;
+import org.jboss.interceptor.proxy.DefaultInvocationContextFactory;
+import org.jboss.interceptor.proxy.DirectClassInterceptorInstantiator;
+import org.jboss.interceptor.proxy.InterceptorException;
+import org.jboss.interceptor.proxy.InterceptorProxyCreatorImpl;
+import org.jboss.interceptor.proxy.javassist.ProxyClassCache;
+import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
+import org.jboss.interceptor.reader.cache.MetadataCachingReader;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.util.InterceptionUtils;
+import org.jboss.interceptors.invoker.Calculator;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Marius Bogoevici
+ */
+public class PregeneratedProxyClassTestCase
+{
+   @Test
+   public void testPregeneratedProxyClassIsUsed() throws Exception
+   {
+      File outputDirectory = Files.createTempDirectory("proxies").toFile();
+      String proxyClassName = InterceptionUtils.writeProxyClass(Calculator.class, outputDirectory);
+      Assert.assertEquals(ProxyClassCache.getPregeneratedProxyClassName(Calculator.class.getName()), proxyClassName);
+
+      ClassLoader classLoader = new IsolatingClassLoader(outputDirectory, Calculator.class.getName(), proxyClassName);
+      Class<?> calculatorClass = classLoader.loadClass(Calculator.class.getName());
+      Class<?> proxyClass = InterceptionUtils.createProxyClass(calculatorClass, true);
+      Assert.assertEquals(proxyClassName, proxyClass.getName());
+      Assert.assertSame(classLoader, proxyClass.getClassLoader());
+      Assert.assertSame(proxyClass, InterceptionUtils.createProxyClass(calculatorClass, false));
+
+      Object proxy = proxyClass.newInstance();
+      final List<String> invokedMethods = new ArrayList<String>();
+      ((ProxyObject) proxy).setHandler(new MethodHandler()
+      {
+         public Object invoke(Object self, Method thisMethod, Method proceed, Object[] args) throws Throwable
+         {
+            invokedMethods.add(thisMethod.getName());
+            return proceed.invoke(self, args);
+         }
+      });
+      Assert.assertEquals(5, calculatorClass.getMethod("add", int.class, int.class).invoke(proxy, 2, 3));
+      Assert.assertEquals(Arrays.asList("add"), invokedMethods);
+   }
+
+   @Test
+   public void testProxyClassIsWrittenAgain() throws Exception
+   {
+      File firstOutputDirectory = Files.createTempDirectory("proxies").toFile();
+      File secondOutputDirectory = Files.createTempDirectory("proxies").toFile();
+      String proxyClassName = InterceptionUtils.writeProxyClass(Calculator.class, firstOutputDirectory);
+      // the second generation must not be taken from the cache of the proxy factory
+      Assert.assertEquals(proxyClassName, InterceptionUtils.writeProxyClass(Calculator.class, secondOutputDirectory));
+      String path = proxyClassName.replace('.', File.separatorChar) + ".class";
+      Assert.assertTrue(new File(firstOutputDirectory, path).isFile());
+      Assert.assertTrue(new File(secondOutputDirectory, path).isFile());
+   }
+
+   @Test
+   public void testPregeneratedProxyClassServesBothKindsOfProxiesInClosedWorld() throws Exception
+   {
+      File outputDirectory = Files.createTempDirectory("proxies").toFile();
+      String proxyClassName = InterceptionUtils.writeProxyClass(Calculator.class, outputDirectory);
+      ClassLoader classLoader = new IsolatingClassLoader(outputDirectory, Calculator.class.getName(), proxyClassName);
+      Class<Object> calculatorClass = (Class<Object>) classLoader.loadClass(Calculator.class.getName());
+      MetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+      ClassMetadata<Object> calculatorClassMetadata = metadataCachingReader.getClassMetadata(calculatorClass);
+      InterceptionModelBuilder<ClassMetadata<?>, ?> builder = InterceptionModelBuilder.<ClassMetadata<?>>newBuilderFor(calculatorClassMetadata);
+      builder.interceptAroundInvoke(calculatorClass.getMethod("add", int.class, int.class)).with(metadataCachingReader.getInterceptorMetadata(FirstInterceptor.class));
+      InterceptorProxyCreatorImpl ipc = new InterceptorProxyCreatorImpl(new DirectClassInterceptorInstantiator(), new DefaultInvocationContextFactory(), builder.build());
+      ProxyClassCache.setClosedWorld(true);
+      try
+      {
+         Object subclassingProxy = ipc.createSubclassingProxy(calculatorClassMetadata, new Class<?>[0], new Object[0]);
+         Assert.assertEquals(proxyClassName, subclassingProxy.getClass().getName());
+         assertInterceptedAddition(subclassingProxy);
+
+         Object delegatingProxy = ipc.createDelegatingProxy(calculatorClass.newInstance(), calculatorClassMetadata);
+         Assert.assertEquals(proxyClassName, delegatingProxy.getClass().getName());
+         assertInterceptedAddition(delegatingProxy);
+
+         try
+         {
+            InterceptionUtils.createProxyClassWithHandler(calculatorClassMetadata, ipc.createMethodHandler(calculatorClass.newInstance(), calculatorClassMetadata));
+            Assert.fail("A proxy class bound to a method handler cannot be pregenerated");
+         }
+         catch (InterceptorException e)
+         {
+            // expected
+         }
+      }
+      finally
+      {
+         ProxyClassCache.setClosedWorld(false);
+      }
+   }
+
+   /**
+    * Invokes a method with an interceptor, then one without interceptors, which the proxy class overrides as well.
+    */
+   private static void assertInterceptedAddition(Object calculator) throws Exception
+   {
+      InterceptorTestLogger.reset();
+      Assert.assertEquals(5, calculator.getClass().getMethod("add", int.class, int.class).invoke(calculator, 2, 3));
+      Assert.assertEquals(Arrays.asList(FirstInterceptor.class.getName() + "_aroundInvokeBefore", FirstInterceptor.class.getName() + "_aroundInvokeAfter"),
+            InterceptorTestLogger.getLog());
+      try
+      {
+         calculator.getClass().getMethod("fail", String.class).invoke(calculator, "failure");
+         Assert.fail();
+      }
+      catch (InvocationTargetException e)
+      {
+         Assert.assertEquals("failure", e.getCause().getMessage());
+      }
+      Assert.assertEquals(2, InterceptorTestLogger.getLog().size());
+   }
+
+   @Test
+   public void testClosedWorldForbidsRuntimeGeneration() throws Exception
+   {
+      File outputDirectory = Files.createTempDirectory("proxies").toFile();
+      ClassLoader classLoader = new IsolatingClassLoader(outputDirectory, Calculator.class.getName());
+      Class<?> calculatorClass = classLoader.loadClass(Calculator.class.getName());
+      ProxyClassCache.setClosedWorld(true);
+      try
+      {
+         InterceptionUtils.createProxyClass(calculatorClass, true);
+         Assert.fail();
+      }
+      catch (InterceptorException e)
+      {
+         // expected
+      }
+      finally
+      {
+         ProxyClassCache.setClosedWorld(false);
+      }
+      Assert.assertTrue(calculatorClass.isAssignableFrom(InterceptionUtils.createProxyClass(calculatorClass, true)));
+   }
+}
@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptors.proxy;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.List;
+
+import javassist.util.proxy.MethodHandler;
+import javassist.util.proxy.ProxyObject;
+
+import org.jboss.interceptor.proxy.javassist.ProxyClassCache;
+import org.jboss.interceptor.util.InterceptionUtils;
+import org.jboss.interceptors.invoker.Calculator;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Marius Bogoevici
+ */
+public class ProxyClassDiskCacheTestCase
+{
+   @Test
+   public void testProxyClassIsDefinedFromCacheDirectory() throws Exception
+   {
+      File cacheDirectory = Files.createTempDirectory("proxy-cache").toFile();
+      File emptyDirectory = Files.createTempDirectory("classes").toFile();
+      ProxyClassCache.setCacheDirectory(cacheDirectory);
+      try
+      {
+         Class<?> calculatorClass = new IsolatingClassLoader(emptyDirectory, Calculator.class.getName()).loadClass(Calculator.class.getName());
+         Class<?> generatedProxyClass = InterceptionUtils.createProxyClass(calculatorClass, true);
+
+         File classListFile = new File(cacheDirectory, "classlist");
+         ProxyClassCache.writeClassList(classListFile);
+         List<String> cachedClassNames = Files.readAllLines(classListFile.toPath());
+         Assert.assertEquals(1, cachedClassNames.size());
+         String cachedClassName = cachedClassNames.get(0).replace('/', '.');
+         Assert.assertTrue(cachedClassName.startsWith(Calculator.class.getName() + "$$_jbossinterceptor_"));
+         Assert.assertFalse(cachedClassName.equals(generatedProxyClass.getName()));
+
+         // a later run, in which the class is loaded again
+         ClassLoader classLoader = new IsolatingClassLoader(emptyDirectory, Calculator.class.getName());
+         calculatorClass = classLoader.loadClass(Calculator.class.getName());
+         Class<?> cachedProxyClass = InterceptionUtils.createProxyClass(calculatorClass, true);
+         Assert.assertEquals(cachedClassName, cachedProxyClass.getName());
+         Assert.assertSame(classLoader, cachedProxyClass.getClassLoader());
+
+         Object proxy = cachedProxyClass.newInstance();
+         ((ProxyObject) proxy).setHandler(new MethodHandler()
+         {
+            public Object invoke(Object self, Method thisMethod, Method proceed, Object[] args) throws Throwable
+            {
+               return ((Integer) proceed.invoke(self, args)) * 10;
+            }
+         });
+         Assert.assertEquals(50, calculatorClass.getMethod("add", int.class, int.class).invoke(proxy, 2, 3));
+      }
+      finally
+      {
+         ProxyClassCache.setCacheDirectory(null);
+      }
+   }
+}
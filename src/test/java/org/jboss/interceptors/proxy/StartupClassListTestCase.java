@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptors.proxy;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.jboss.interceptor.builder.InterceptionModelBuilder;
+import org.jboss.interceptor.proxy.DefaultInvocationContextFactory;
+import org.jboss.interceptor.proxy.DirectClassInterceptorInstantiator;
+import org.jboss.interceptor.proxy.InterceptorProxyCreatorImpl;
+import org.jboss.interceptor.proxy.javassist.ProxyClassCache;
+import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.spi.model.InterceptionModel;
+import org.jboss.interceptor.util.StartupClassList;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Marius Bogoevici
+ */
+public class StartupClassListTestCase
+{
+   @Test
+   public void testRecordedClassesArePreloaded() throws Exception
+   {
+      File emptyDirectory = Files.createTempDirectory("classes").toFile();
+      File startupClassListFile = File.createTempFile("startup", ".classlist");
+      startupClassListFile.deleteOnExit();
+
+      // the training run
+      StartupClassList.startRecording();
+      Class<?> footballTeamClass = new IsolatingClassLoader(emptyDirectory, FootballTeam.class.getName()).loadClass(FootballTeam.class.getName());
+      createProxy(new DefaultMetadataCachingReader(), footballTeamClass);
+      StartupClassList recordedClassList = StartupClassList.stopRecording();
+      Assert.assertFalse(StartupClassList.isRecording());
+      List<String> entries = recordedClassList.getEntries();
+      Assert.assertTrue(entries.toString(), entries.contains("interceptor " + FirstInterceptor.class.getName()));
+      Assert.assertTrue(entries.toString(), entries.contains("interceptor " + SecondInterceptor.class.getName()));
+      Assert.assertTrue(entries.toString(), entries.contains("target " + FootballTeam.class.getName()));
+      Assert.assertTrue(entries.toString(), entries.get(entries.size() - 1).startsWith("proxy " + FootballTeam.class.getName() + " subclassing "));
+      recordedClassList.write(startupClassListFile);
+
+      // a later run, in which the classes are loaded again and preloaded before being used
+      StartupClassList startupClassList = StartupClassList.read(startupClassListFile);
+      Assert.assertEquals(entries, startupClassList.getEntries());
+      ClassLoader classLoader = new IsolatingClassLoader(emptyDirectory, FootballTeam.class.getName());
+      DefaultMetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+      startupClassList.preload(classLoader, metadataCachingReader, ForkJoinPool.commonPool()).get();
+      Assert.assertEquals(2, metadataCachingReader.getInterceptorMetadataStatistics().getLoadCount());
+      Assert.assertEquals(1, metadataCachingReader.getTargetClassInterceptorMetadataStatistics().getLoadCount());
+
+      // the proxy class was created by the preloading, so creating the proxy does not need to generate it
+      ProxyClassCache.setClosedWorld(true);
+      try
+      {
+         Object proxy = createProxy(metadataCachingReader, classLoader.loadClass(FootballTeam.class.getName()));
+         Assert.assertSame(classLoader, proxy.getClass().getClassLoader());
+      }
+      finally
+      {
+         ProxyClassCache.setClosedWorld(false);
+      }
+      Assert.assertEquals(2, metadataCachingReader.getInterceptorMetadataStatistics().getLoadCount());
+   }
+
+   @Test(expected = java.io.IOException.class)
+   public void testOtherFilesAreRejected() throws Exception
+   {
+      File file = File.createTempFile("startup", ".classlist");
+      file.deleteOnExit();
+      Files.write(file.toPath(), "not a class list\n".getBytes("UTF-8"));
+      StartupClassList.read(file);
+   }
+
+   private static Object createProxy(DefaultMetadataCachingReader metadataCachingReader, Class<?> footballTeamClass) throws Exception
+   {
+      ClassMetadata<?> footballTeamClassMetadata = metadataCachingReader.getClassMetadata(footballTeamClass);
+      InterceptionModelBuilder<ClassMetadata<?>, ?> builder = InterceptionModelBuilder.<ClassMetadata<?>>newBuilderFor(footballTeamClassMetadata);
+      builder.interceptAll().with(metadataCachingReader.getInterceptorMetadata(FirstInterceptor.class), metadataCachingReader.getInterceptorMetadata(SecondInterceptor.class));
+      InterceptionModel<ClassMetadata<?>, ?> interceptionModel = builder.build();
+      InterceptorProxyCreatorImpl ipc = new InterceptorProxyCreatorImpl(new DirectClassInterceptorInstantiator(), new DefaultInvocationContextFactory(), (InterceptionModel<ClassMetadata<?>, Object>) interceptionModel);
+      ipc.setMetadataCachingReader(metadataCachingReader);
+      return ipc.createSubclassingProxy(footballTeamClassMetadata, new Class<?>[]{String.class}, new Object[]{"Ajax Amsterdam"});
+   }
+}
@@ -0,0 +1,146 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.interceptors.proxy;
+
+import org.jboss.interceptor.builder.InterceptionModelBuilder;
+import org.jboss.interceptor.proxy.DefaultInvocationContextFactory;
+import org.jboss.interceptor.proxy.DirectClassInterceptorInstantiator;
+import org.jboss.interceptor.proxy.InterceptorProxyCreatorImpl;
+import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
+import org.jboss.interceptor.reader.cache.MetadataCachingReader;
+import org.jboss.interceptor.spi.metadata.ClassMetadata;
+import org.jboss.interceptor.spi.metadata.InterceptorMetadata;
+import org.jboss.interceptor.spi.model.InterceptionModel;
+import org.jboss.interceptor.util.InterceptionUtils;
+import org.jboss.interceptor.util.StartupProfile;
+import org.jboss.interceptor.util.StartupProfiler;
+import org.jboss.interceptor.util.StartupProfiler.Phase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Marius Bogoevici
+ */
+public class StartupProfilerTestCase
+{
+   private MetadataCachingReader metadataCachingReader = new DefaultMetadataCachingReader();
+
+   @Before
+   public void setUp()
+   {
+      StartupProfiler.reset();
+      StartupProfiler.setEnabled(true);
+      InterceptorTestLogger.reset();
+   }
+
+   @After
+   public void tearDown()
+   {
+      StartupProfiler.setEnabled(false);
+      StartupProfiler.reset();
+   }
+
+   @Test
+   public void testPhasesAreAttributedToClasses() throws Exception
+   {
+      FootballTeam proxy = createProxy();
+      InterceptionUtils.executePostConstruct(proxy);
+
+      StartupProfile profile = StartupProfiler.getProfile();
+      assertProfiled(profile, FirstInterceptor.class.getName(), Phase.METADATA_READING);
+      assertProfiled(profile, SecondInterceptor.class.getName(), Phase.METADATA_READING);
+      assertProfiled(profile, FootballTeam.class.getName(), Phase.METADATA_READING);
+      assertProfiled(profile, FootballTeam.class.getName(), Phase.MODEL_BUILDING);
+      assertProfiled(profile, FootballTeam.class.getName(), Phase.PROXY_CLASS_GENERATION);
+      assertProfiled(profile, FirstInterceptor.class.getName(), Phase.INTERCEPTOR_INSTANTIATION);
+      assertProfiled(profile, SecondInterceptor.class.getName(), Phase.INTERCEPTOR_INSTANTIATION);
+      assertProfiled(profile, FootballTeam.class.getName(), Phase.POST_CONSTRUCT);
+      Assert.assertEquals(1, profile.getCount(Phase.MODEL_BUILDING));
+      Assert.assertEquals(2, profile.getCount(Phase.INTERCEPTOR_INSTANTIATION));
+      Assert.assertEquals(1, profile.getCount(Phase.POST_CONSTRUCT));
+
+      long previousTime = Long.MAX_VALUE;
+      for (StartupProfile.Entry entry : profile.getEntries())
+      {
+         Assert.assertTrue(entry.getTime() >= 0);
+         Assert.assertTrue(entry.getTime() <= previousTime);
+         previousTime = entry.getTime();
+      }
+
+      Assert.assertTrue(profile.toString().contains(FootballTeam.class.getName()));
+      StringBuilder json = new StringBuilder();
+      profile.writeJson(json);
+      Assert.assertTrue(json.toString().startsWith("{\"phases\":[{\"phase\":\"METADATA_READING\""));
+      Assert.assertTrue(json.toString().contains("\"className\":\"" + FootballTeam.class.getName() + "\",\"phase\":\"POST_CONSTRUCT\",\"count\":1"));
+   }
+
+   @Test
+   public void testModelBuildingIncludesAddingInterceptors() throws Exception
+   {
+      ClassMetadata<FootballTeam> footballTeamClass = metadataCachingReader.getClassMetadata(FootballTeam.class);
+      InterceptorMetadata<?> firstInterceptor = metadataCachingReader.getInterceptorMetadata(FirstInterceptor.class);
+      InterceptorMetadata<?> secondInterceptor = metadataCachingReader.getInterceptorMetadata(SecondInterceptor.class);
+      StartupProfiler.reset();
+      InterceptionModelBuilder<ClassMetadata<?>, ?> builder = InterceptionModelBuilder.<ClassMetadata<?>>newBuilderFor(footballTeamClass);
+      builder.interceptAroundInvoke(FootballTeam.class.getMethod("getName")).with(firstInterceptor);
+      builder.interceptPostConstruct().with(secondInterceptor);
+
+      // measured before the model is built
+      StartupProfile profile = StartupProfiler.getProfile();
+      assertProfiled(profile, FootballTeam.class.getName(), Phase.MODEL_BUILDING);
+      Assert.assertEquals(1, profile.getCount(Phase.MODEL_BUILDING));
+
+      builder.build();
+      profile = StartupProfiler.getProfile();
+      Assert.assertEquals(1, profile.getCount(Phase.MODEL_BUILDING));
+      Assert.assertEquals(1, profile.getEntries().size());
+   }
+
+   @Test
+   public void testNothingIsRecordedWhenDisabled() throws Exception
+   {
+      StartupProfiler.setEnabled(false);
+      InterceptionUtils.executePostConstruct(createProxy());
+      Assert.assertTrue(StartupProfiler.getProfile().getEntries().isEmpty());
+   }
+
+   private FootballTeam createProxy() throws Exception
+   {
+      ClassMetadata<FootballTeam> footballTeamClass = metadataCachingReader.getClassMetadata(FootballTeam.class);
+      InterceptionModelBuilder<ClassMetadata<?>, ?> builder = InterceptionModelBuilder.<ClassMetadata<?>>newBuilderFor(footballTeamClass);
+      builder.interceptAll().with(metadataCachingReader.getInterceptorMetadata(FirstInterceptor.class), metadataCachingReader.getInterceptorMetadata(SecondInterceptor.class));
+      InterceptionModel<ClassMetadata<?>, ?> interceptionModel = builder.build();
+      InterceptorProxyCreatorImpl ipc = new InterceptorProxyCreatorImpl(new DirectClassInterceptorInstantiator(), new DefaultInvocationContextFactory(), (InterceptionModel<ClassMetadata<?>, Object>) interceptionModel);
+      return ipc.createSubclassingProxy(footballTeamClass, new Class<?>[]{String.class}, new Object[]{"Ajax Amsterdam"});
+   }
+
+   private static void assertProfiled(StartupProfile profile, String className, Phase phase)
+   {
+      for (StartupProfile.Entry entry : profile.getEntries())
+      {
+         if (entry.getClassName().equals(className) && entry.getPhase() == phase)
+         {
+            Assert.assertTrue(entry.getCount() > 0);
+            return;
+         }
+      }
+      Assert.fail(phase + " was not profiled for " + className + ":\n" + profile);
+   }
+}
@@ -30,6 +30,8 @@ import org.jboss.interceptor.proxy.DefaultInvocationContextFactory;
 import org.jboss.interceptor.proxy.DirectClassInterceptorInstantiator;
 import org.jboss.interceptor.proxy.InterceptorProxyCreatorImpl;
 import org.jboss.interceptor.proxy.javassist.CompositeHandler;
+import org.jboss.interceptor.proxy.javassist.InterceptedMethodFilter;
+import org.jboss.interceptor.reader.InterceptorMetadataUtils;
 import org.jboss.interceptor.reader.ReflectiveClassMetadata;
 import org.jboss.interceptor.reader.cache.DefaultMetadataCachingReader;
 import org.jboss.interceptor.reader.cache.MetadataCachingReader;
@@ -189,6 +191,30 @@ public class SubclassingInterceptionTestCase
       assertRawObject(proxy);
    }
 
+   @Test
+   public void testOnlyInterceptableMethodsAreOverridden() throws Exception
+   {
+      resetLogAndSetupClassesForMethod();
+      FootballTeam proxy = createAdvisedInstance(FootballTeam.class, TEAM_NAME);
+      Assert.assertEquals(FootballTeam.class, proxy.getClass().getMethod("getName").getDeclaringClass().getSuperclass());
+      // lifecycle callbacks cannot be intercepted, so they keep the original implementation
+      Assert.assertEquals(FootballTeam.class, proxy.getClass().getMethod("afterActivating").getDeclaringClass());
+      proxy.afterActivating();
+      Object[] logValues = InterceptorTestLogger.getLog().toArray();
+      Assert.assertArrayEquals(iterateAndDisplay(logValues), new String[]{"org.jboss.interceptors.proxy.FootballTeam_postActivating"}, logValues);
+   }
+
+   @Test
+   public void testProxyClassIsReused() throws Exception
+   {
+      resetLogAndSetupClassesForMethod();
+      FootballTeam proxy = createAdvisedInstance(FootballTeam.class, TEAM_NAME);
+      FootballTeam otherProxy = createAdvisedInstance(FootballTeam.class, TEAM_NAME);
+      Assert.assertSame(proxy.getClass(), otherProxy.getClass());
+      Assert.assertSame(proxy.getClass(), InterceptionUtils.createProxyClass(FootballTeam.class, true, new InterceptedMethodFilter(interceptionModelRegistry.get(FootballTeam.class), InterceptorMetadataUtils.readMetadataForTargetClass(metadataCachingReader.getClassMetadata(FootballTeam.class)))));
+      Assert.assertNotSame(proxy.getClass(), InterceptionUtils.createProxyClass(FootballTeam.class, true));
+   }
+
    @Test
    public void testInterceptionWithGlobalInterceptors() throws Exception
    {